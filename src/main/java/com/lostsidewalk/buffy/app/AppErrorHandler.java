@@ -24,7 +24,9 @@ import java.util.stream.Collectors;
 
 import static java.util.Optional.ofNullable;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
 import static org.springframework.http.HttpStatus.*;
+import static org.springframework.http.ResponseEntity.status;
 import static org.springframework.http.ResponseEntity.unprocessableEntity;
 
 @Slf4j
@@ -193,6 +195,22 @@ public class AppErrorHandler {
         return unprocessableEntity().build();
     }
     //
+    // service unavailable conditions:
+    //
+    @ExceptionHandler(ProxyCapacityException.class)
+    ResponseEntity<?> handleProxyCapacityException(ProxyCapacityException e, Authentication authentication) {
+        errorLogService.logProxyCapacityException(ofNullable(authentication).map(Authentication::getName).orElse(null), new Date(), e);
+        updateErrorCount(e);
+        return status(SERVICE_UNAVAILABLE).header(RETRY_AFTER, "5").build();
+    }
+
+    @ExceptionHandler(HostUnavailableException.class)
+    ResponseEntity<?> handleHostUnavailableException(HostUnavailableException e, Authentication authentication) {
+        errorLogService.logHostUnavailableException(ofNullable(authentication).map(Authentication::getName).orElse(null), new Date(), e);
+        updateErrorCount(e);
+        return status(SERVICE_UNAVAILABLE).header(RETRY_AFTER, String.valueOf(e.retryAfterSecs)).build();
+    }
+    //
     // utility methods
     //
     private static ResponseEntity<?> internalServerErrorResponse() {
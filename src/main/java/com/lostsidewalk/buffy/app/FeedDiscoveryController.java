@@ -1,9 +1,11 @@
 package com.lostsidewalk.buffy.app;
 
 import com.lostsidewalk.buffy.app.audit.AppLogService;
+import com.lostsidewalk.buffy.app.audit.HostUnavailableException;
 import com.lostsidewalk.buffy.app.discovery.FeedDiscoveryService;
 import com.lostsidewalk.buffy.app.model.error.UpstreamErrorDetails;
 import com.lostsidewalk.buffy.app.model.request.FeedDiscoveryRequest;
+import com.lostsidewalk.buffy.app.proxy.PostSanitizerService;
 import com.lostsidewalk.buffy.app.proxy.ProxyService;
 import com.lostsidewalk.buffy.app.resolution.FeedResolutionService;
 import com.lostsidewalk.buffy.discovery.FeedDiscoveryImageInfo;
@@ -52,6 +54,9 @@ public class FeedDiscoveryController {
     @Autowired
     ProxyService proxyService;
 
+    @Autowired
+    PostSanitizerService postSanitizerService;
+
     /**
      * Perform feed discovery on behalf of a user.  The feed discovery request consists of a URL, username, and password.
      * This method invokes the feed resolution and discovery services to gather information about the feed at the given URL.
@@ -60,7 +65,7 @@ public class FeedDiscoveryController {
      */
     @PostMapping("/discovery")
     @Secured({UNVERIFIED_ROLE})
-    public ResponseEntity<?> discoverFeed(@Valid @RequestBody FeedDiscoveryRequest feedDiscoveryRequest, Authentication authentication) {
+    public ResponseEntity<?> discoverFeed(@Valid @RequestBody FeedDiscoveryRequest feedDiscoveryRequest, Authentication authentication) throws HostUnavailableException {
         UserDetails userDetails = (UserDetails) authentication.getDetails();
         String username = userDetails.getUsername();
         log.info("discoverFeed for user={}, feedDiscoveryRequest={}", username, feedDiscoveryRequest);
@@ -131,7 +136,7 @@ public class FeedDiscoveryController {
         proxyService.secureFeedDiscoveryImageInfo(iconInfo);
         //
         List<StagingPost> sampleEntries = feedDiscoveryInfo.getSampleEntries();
-        proxyService.secureStagingPosts(sampleEntries);
+        postSanitizerService.secureStagingPosts(sampleEntries);
         //
         return ThumbnailedFeedDiscovery.from(
                 feedDiscoveryInfo,
@@ -1,46 +1,205 @@
 package com.lostsidewalk.buffy.app;
 
 import com.lostsidewalk.buffy.app.audit.ProxyUrlHashException;
+import com.lostsidewalk.buffy.app.proxy.ProxyCacheEntry;
+import com.lostsidewalk.buffy.app.proxy.ProxyFetchService;
 import com.lostsidewalk.buffy.app.proxy.ProxyService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpRange;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.util.List;
 
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.unwrap;
+import static java.lang.Boolean.TRUE;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.lang3.StringUtils.*;
 import static org.springframework.http.CacheControl.maxAge;
+import static org.springframework.http.HttpHeaders.*;
+import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
 import static org.springframework.http.ResponseEntity.ok;
+import static org.springframework.http.ResponseEntity.status;
 
 @Slf4j
 @RestController
 @Validated
 public class ProxyController {
 
+    // Tomcat sendfile request attributes (see org.apache.coyote.Constants)
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    // below this size, streaming from the channel is cheaper than setting up sendfile
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    private static final String X_CONTENT_TYPE_OPTIONS = "X-Content-Type-Options";
+
+    private static final String CONTENT_SECURITY_POLICY = "Content-Security-Policy";
+
 //    @Autowired
 //    AppLogService appLogService;
 
     @Autowired
     ProxyService proxyService;
 
+    @Autowired
+    ProxyFetchService proxyFetchService;
+
+    @Value("${newsgears.proxy.requestTimeoutMs}")
+    long requestTimeoutMs;
+
+    @Value("${newsgears.proxy.responseMaxAgeSecs}")
+    long responseMaxAgeSecs;
+
+    /**
+     * Serves the proxied image asynchronously: the request thread is released while the image is fetched, and the
+     * response is completed from the fetch thread (or by the container on timeout).
+     */
     @GetMapping("/proxy/unsecured/{hash}/")
-    public ResponseEntity<byte[]> proxy(@Valid @Size(max = 1024, message = "{proxy.error.hash-too-long}") @PathVariable String hash, @Valid @Size(max = 1024) @RequestParam String url) throws IOException, ProxyUrlHashException {
-        log.debug("proxy for hash={}, url={}", hash, url);
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> proxy(@Valid @Size(max = 1024, message = "{proxy.error.hash-too-long}") @PathVariable String hash, @Valid @Size(max = 1024) @RequestParam String url, @RequestParam(name = "w", required = false) Integer width, HttpServletRequest request) throws ProxyUrlHashException {
+        log.debug("proxy for hash={}, url={}, width={}", hash, url, width);
 //        StopWatch stopWatch = StopWatch.createStarted();
         proxyService.validateImageUrl(url, hash);
-        byte[] image = proxyService.fetch(url);
-//        appLogService.logProxyFetch(hash, stopWatch, url);
-        return ok()
-                .contentType(APPLICATION_OCTET_STREAM)
-                .cacheControl(maxAge(60, MINUTES))
-                .body(image);
+        DeferredResult<ResponseEntity<StreamingResponseBody>> deferredResult = new DeferredResult<>(requestTimeoutMs);
+        deferredResult.onTimeout(() -> {
+            log.warn("Image proxy request timed out, url={}, requestTimeoutMs={}", url, requestTimeoutMs);
+            deferredResult.setResult(status(GATEWAY_TIMEOUT).build());
+        });
+        proxyFetchService.fetchCachedAsync(url, width == null ? 0 : width).whenComplete((image, t) -> {
+//            appLogService.logProxyFetch(hash, stopWatch, url);
+            if (t != null) {
+                // handled by AppErrorHandler
+                deferredResult.setErrorResult(unwrap(t));
+            } else {
+                deferredResult.setResult(buildProxyResponse(image, request));
+            }
+        });
+
+        return deferredResult;
+    }
+
+    private ResponseEntity<StreamingResponseBody> buildProxyResponse(ProxyCacheEntry image, HttpServletRequest request) {
+        if (image == null) {
+            return ok()
+                    .contentType(APPLICATION_OCTET_STREAM)
+                    .cacheControl(maxAge(60, MINUTES))
+                    .build();
+        }
+        boolean isEncoded = image.getContentEncoding() != null;
+        // gzip is decoded for clients that don't accept it (other encodings are passed through regardless)
+        boolean isDecoded = image.isGzipped() && !containsIgnoreCase(request.getHeader(ACCEPT_ENCODING), image.getContentEncoding());
+        // (strong ETag, one per representation)
+        String eTag = "\"" + image.getContentHash() + (isDecoded ? "-identity" : EMPTY) + "\"";
+        if (isNoneMatch(request.getHeader(IF_NONE_MATCH), eTag)) {
+            return imageHeaders(status(NOT_MODIFIED), image, eTag, isEncoded).build();
+        }
+        if (isDecoded) {
+            return imageHeaders(ok(), image, eTag, true).body(image::transferDecodedTo);
+        }
+        if (isEncoded) {
+            // pass the body through as the origin encoded it; ranges aren't served here
+            return sendContent(imageHeaders(ok(), image, eTag, true).header(CONTENT_ENCODING, image.getContentEncoding()),
+                    image, 0, image.getContentLength(), request);
+        }
+        long contentLength = image.getContentLength();
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(request.getHeader(RANGE));
+        } catch (IllegalArgumentException e) {
+            ranges = List.of(); // malformed, so ignored
+        }
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            long start, end;
+            try {
+                start = range.getRangeStart(contentLength);
+                end = range.getRangeEnd(contentLength);
+            } catch (IllegalArgumentException e) {
+                return status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(CONTENT_RANGE, "bytes */" + contentLength)
+                        .build();
+            }
+            return sendContent(imageHeaders(status(PARTIAL_CONTENT), image, eTag, false)
+                            .header(CONTENT_RANGE, "bytes " + start + "-" + end + "/" + contentLength),
+                    image, start, end - start + 1, request);
+        }
+        // (multiple ranges are answered with the whole image)
+        return sendContent(imageHeaders(ok(), image, eTag, false), image, 0, contentLength, request);
+    }
+
+    /**
+     * Proxied images are served as immutable, and locked down in case they're opened directly (e.g., SVG with script).
+     */
+    private ResponseEntity.BodyBuilder imageHeaders(ResponseEntity.BodyBuilder responseBuilder, ProxyCacheEntry image, String eTag, boolean isEncoded) {
+        responseBuilder
+                .contentType(getContentType(image))
+                .eTag(eTag)
+                .cacheControl(maxAge(responseMaxAgeSecs, SECONDS).cachePublic().immutable())
+                .header(X_CONTENT_TYPE_OPTIONS, "nosniff")
+                .header(CONTENT_SECURITY_POLICY, "default-src 'none'; style-src 'unsafe-inline'; sandbox");
+        if (isEncoded) {
+            responseBuilder.header(VARY, ACCEPT_ENCODING);
+        }
+        return responseBuilder;
+    }
+
+    private static MediaType getContentType(ProxyCacheEntry image) {
+        if (image.getContentType() != null) {
+            try {
+                return MediaType.parseMediaType(image.getContentType());
+            } catch (InvalidMediaTypeException ignored) {}
+        }
+        return APPLICATION_OCTET_STREAM;
+    }
+
+    private static boolean isNoneMatch(String ifNoneMatch, String eTag) {
+        if (isBlank(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : split(ifNoneMatch, ',')) {
+            candidate = strip(candidate);
+            // (weak comparison, per RFC 9110)
+            if (candidate.equals("*") || removeStart(candidate, "W/").equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<StreamingResponseBody> sendContent(ResponseEntity.BodyBuilder responseBuilder, ProxyCacheEntry image,
+                                                                     long start, long count, HttpServletRequest request)
+    {
+        responseBuilder
+                .contentLength(count)
+                .header(ACCEPT_RANGES, "bytes");
+        if (image.getPath() != null && count >= SENDFILE_MIN_BYTES && TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // hand the file to the container, which writes it to the socket without copying it through the JVM
+            request.setAttribute(SENDFILE_FILENAME_ATTR, image.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            return responseBuilder.build();
+        }
+        return responseBuilder.body(outputStream -> image.transferTo(outputStream, start, count));
     }
 }
@@ -5,6 +5,7 @@ import com.lostsidewalk.buffy.DataAccessException;
 import com.lostsidewalk.buffy.DataConflictException;
 import com.lostsidewalk.buffy.DataUpdateException;
 import com.lostsidewalk.buffy.app.audit.AppLogService;
+import com.lostsidewalk.buffy.app.cache.ContentFingerprintService;
 import com.lostsidewalk.buffy.app.feed.QueueDefinitionService;
 import com.lostsidewalk.buffy.app.model.request.FeedStatusUpdateRequest;
 import com.lostsidewalk.buffy.app.model.request.QueueConfigRequest;
@@ -39,6 +40,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -60,6 +62,7 @@ import static org.apache.commons.collections4.MapUtils.size;
 import static org.apache.commons.lang3.ArrayUtils.getLength;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.springframework.http.CacheControl.noCache;
 import static org.springframework.http.ResponseEntity.ok;
 
 @Slf4j
@@ -82,6 +85,9 @@ public class QueueDefinitionController {
     @Autowired
     ThumbnailService thumbnailService;
 
+    @Autowired
+    ContentFingerprintService contentFingerprintService;
+
     @Autowired
     OpmlService opmlService;
 
@@ -107,10 +113,14 @@ public class QueueDefinitionController {
     //
     @GetMapping("/queues")
     @Secured({UNVERIFIED_ROLE})
-    public ResponseEntity<QueueFetchResponse> getQueues(Authentication authentication) throws DataAccessException {
+    public ResponseEntity<QueueFetchResponse> getQueues(Authentication authentication, WebRequest webRequest) throws DataAccessException {
         UserDetails userDetails = (UserDetails) authentication.getDetails();
         String username = userDetails.getUsername();
         log.debug("getFeeds for user={}", username);
+        String eTag = contentFingerprintService.getQueuesETag(username);
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null; // 304 Not Modified
+        }
         StopWatch stopWatch = StopWatch.createStarted();
         // subscription definitions
         List<SubscriptionDefinition> allSubscriptionDefinitions = subscriptionDefinitionService.findByUsername(username);
@@ -136,15 +146,16 @@ public class QueueDefinitionController {
         //
         appLogService.logFeedFetch(username, stopWatch, size(queueDefinitions), size(subscriptionDefinitionsByQueueId));
         //
-        return ok(
-                QueueFetchResponse.from(
+        return ok()
+                .eTag(eTag)
+                .cacheControl(noCache().cachePrivate())
+                .body(QueueFetchResponse.from(
                         queueDefinitions,
                         subscriptionDefinitionsByQueueId,
                         metricsBySubscriptionDefinitionId,
                         queueImportRuleSets,
                         subscriptionImportRuleSets
-                )
-        );
+                ));
     }
     //
     // create feed definitions
@@ -480,15 +491,8 @@ public class QueueDefinitionController {
 
     private byte[] buildThumbnail(QueueDefinition f) throws DataAccessException {
         if (isNotBlank(f.getQueueImgSrc())) {
-            String transportIdent = f.getQueueImgTransportIdent();
-            byte[] image = ofNullable(thumbnailService.getThumbnail(transportIdent)).map(RenderedThumbnail::getImage).orElse(null);
-            if (image == null) {
-                image = ofNullable(thumbnailService.refreshThumbnailFromSrc(transportIdent, f.getQueueImgSrc()))
-                        .map(RenderedThumbnail::getImage)
-                        .orElse(null);
-            }
-
-            return image;
+            // (null until rendered; the user is notified with the image once it's ready, see ChangeNotificationService)
+            return ofNullable(thumbnailService.findOrQueueThumbnail(f)).map(RenderedThumbnail::getImage).orElse(null);
         }
 
         return null;
@@ -1,34 +1,57 @@
 package com.lostsidewalk.buffy.app;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lostsidewalk.buffy.DataAccessException;
 import com.lostsidewalk.buffy.DataUpdateException;
 import com.lostsidewalk.buffy.app.audit.AppLogService;
+import com.lostsidewalk.buffy.app.cache.ContentFingerprintService;
+import com.lostsidewalk.buffy.app.model.request.PostBulkStatusUpdateRequest;
 import com.lostsidewalk.buffy.app.model.request.PostStatusUpdateRequest;
+import com.lostsidewalk.buffy.app.model.response.PostBulkStatusUpdateResponse;
 import com.lostsidewalk.buffy.app.model.response.PostFetchResponse;
+import com.lostsidewalk.buffy.app.model.response.PostPageResponse;
+import com.lostsidewalk.buffy.app.model.response.PostSyncResponse;
+import com.lostsidewalk.buffy.app.model.response.QueuePostCountsResponse;
 import com.lostsidewalk.buffy.app.model.response.ThumbnailedPostResponse;
+import com.lostsidewalk.buffy.app.post.QueuePostCounts;
+import com.lostsidewalk.buffy.app.post.StagingPostChanges;
+import com.lostsidewalk.buffy.app.post.StagingPostPage;
 import com.lostsidewalk.buffy.app.post.StagingPostService;
+import com.lostsidewalk.buffy.app.proxy.ProxyFetchService;
 import com.lostsidewalk.buffy.app.proxy.ProxyService;
+import com.lostsidewalk.buffy.app.proxy.SecuredPostService;
 import com.lostsidewalk.buffy.post.StagingPost;
 import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
 import static com.lostsidewalk.buffy.app.ResponseMessageUtils.buildResponseMessage;
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.getPrefetchPriority;
 import static com.lostsidewalk.buffy.app.user.UserRoles.UNVERIFIED_ROLE;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static org.apache.commons.collections4.CollectionUtils.size;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.springframework.http.CacheControl.noCache;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.ResponseEntity.ok;
 
 @Slf4j
@@ -42,25 +65,138 @@ public class StagingPostController {
     @Autowired
     StagingPostService stagingPostService;
 
+    @Autowired
+    ContentFingerprintService contentFingerprintService;
+
     @Autowired
     ProxyService proxyService;
+
+    @Autowired
+    ProxyFetchService proxyFetchService;
+
+    @Autowired
+    SecuredPostService securedPostService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${newsgears.proxy.thumbnailImageWidth}")
+    int thumbnailImageWidth;
     //
     // get staging posts
     //
     @GetMapping("/staging")
     @Secured({UNVERIFIED_ROLE})
-    public ResponseEntity<PostFetchResponse> getStagingPosts(@RequestParam(required = false) List<Long> queueIds, Authentication authentication) throws DataAccessException {
+    public ResponseEntity<PostFetchResponse> getStagingPosts(@RequestParam(required = false) List<Long> queueIds, Authentication authentication, WebRequest webRequest) throws DataAccessException {
         UserDetails userDetails = (UserDetails) authentication.getDetails();
         String username = userDetails.getUsername();
             log.debug("getStagingPosts for user={}, queueIds={}", username, isEmpty(queueIds) ? "all" : queueIds);
+        String eTag = contentFingerprintService.getStagingPostsETag(username, queueIds);
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null; // 304 Not Modified
+        }
         StopWatch stopWatch = StopWatch.createStarted();
         List<ThumbnailedPostResponse> stagingPosts =
                 addThumbnails(
-                        proxyService.secureStagingPosts(
+                        securedPostService.secureStagingPosts(
                                 stagingPostService.getStagingPosts(username, queueIds)));
         stopWatch.stop();
         appLogService.logStagingPostFetch(username, stopWatch, size(queueIds), size(stagingPosts));
-        return ok(PostFetchResponse.from(stagingPosts));
+        return ok()
+                .eTag(eTag)
+                .cacheControl(noCache().cachePrivate())
+                .body(PostFetchResponse.from(stagingPosts));
+    }
+
+    //
+    // get staging posts (streamed; same response shape as GET /staging)
+    //
+    @GetMapping("/staging/stream")
+    @Secured({UNVERIFIED_ROLE})
+    public ResponseEntity<StreamingResponseBody> streamStagingPosts(@RequestParam(required = false) List<Long> queueIds, Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getDetails();
+        String username = userDetails.getUsername();
+        log.debug("streamStagingPosts for user={}, queueIds={}", username, isEmpty(queueIds) ? "all" : queueIds);
+        StreamingResponseBody responseBody = outputStream -> {
+            StopWatch stopWatch = StopWatch.createStarted();
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("stagingPosts");
+                int postCt = stagingPostService.streamStagingPosts(username, queueIds, page -> {
+                    for (StagingPost stagingPost : securedPostService.secureStagingPosts(page)) {
+                        generator.writeObject(addThumbnail(stagingPost));
+                    }
+                    generator.flush();
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+                stopWatch.stop();
+                appLogService.logStagingPostFetch(username, stopWatch, size(queueIds), postCt);
+            } catch (DataAccessException e) {
+                throw new IOException(e);
+            }
+        };
+        return ok().contentType(APPLICATION_JSON).body(responseBody);
+    }
+    //
+    // get staging posts (keyset-paged, newest first)
+    //
+    @GetMapping("/staging/page")
+    @Secured({UNVERIFIED_ROLE})
+    public ResponseEntity<PostPageResponse> getStagingPostPage(@RequestParam(required = false) List<Long> queueIds,
+                                                               @Valid @Size(max = 256) @RequestParam(required = false) String cursor,
+                                                               @RequestParam(required = false) Integer limit,
+                                                               Authentication authentication) throws DataAccessException {
+        UserDetails userDetails = (UserDetails) authentication.getDetails();
+        String username = userDetails.getUsername();
+        log.debug("getStagingPostPage for user={}, queueIds={}, cursor={}, limit={}", username, isEmpty(queueIds) ? "all" : queueIds, cursor, limit);
+        StopWatch stopWatch = StopWatch.createStarted();
+        StagingPostPage page = stagingPostService.getStagingPostPage(username, queueIds, cursor, limit);
+        List<ThumbnailedPostResponse> stagingPosts =
+                addThumbnails(
+                        securedPostService.secureStagingPosts(page.getStagingPosts()));
+        String nextCursor = page.getNextCursor() == null ? null : page.getNextCursor().encode();
+        stopWatch.stop();
+        appLogService.logStagingPostPageFetch(username, stopWatch, size(queueIds), size(stagingPosts), nextCursor != null);
+        return ok(PostPageResponse.from(stagingPosts, nextCursor));
+    }
+
+    //
+    // get staging posts created, modified, archived or deleted since the given watermark
+    //
+    @GetMapping("/staging/changes")
+    @Secured({UNVERIFIED_ROLE})
+    public ResponseEntity<PostSyncResponse> getStagingPostChanges(@RequestParam(required = false) List<Long> queueIds,
+                                                                  @Valid @Size(max = 256) @RequestParam(required = false) String since,
+                                                                  @RequestParam(required = false) Integer limit,
+                                                                  Authentication authentication) throws DataAccessException {
+        UserDetails userDetails = (UserDetails) authentication.getDetails();
+        String username = userDetails.getUsername();
+        log.debug("getStagingPostChanges for user={}, queueIds={}, since={}, limit={}", username, isEmpty(queueIds) ? "all" : queueIds, since, limit);
+        StopWatch stopWatch = StopWatch.createStarted();
+        StagingPostChanges changes = stagingPostService.getStagingPostChanges(username, queueIds, since, limit);
+        List<ThumbnailedPostResponse> stagingPosts =
+                addThumbnails(
+                        securedPostService.secureStagingPosts(changes.getStagingPosts()));
+        stopWatch.stop();
+        appLogService.logStagingPostChangesFetch(username, stopWatch, size(queueIds), size(stagingPosts), size(changes.getTombstones()), changes.isHasMore());
+        return ok(PostSyncResponse.from(stagingPosts, changes.getTombstones(), changes.getReadWatermarks(), changes.getWatermark().encode(), changes.isHasMore()));
+    }
+
+    //
+    // get per-queue post counts (total, unread, read-later)
+    //
+    @GetMapping("/staging/counts")
+    @Secured({UNVERIFIED_ROLE})
+    public ResponseEntity<QueuePostCountsResponse> getQueuePostCounts(Authentication authentication) throws DataAccessException {
+        UserDetails userDetails = (UserDetails) authentication.getDetails();
+        String username = userDetails.getUsername();
+        log.debug("getQueuePostCounts for user={}", username);
+        StopWatch stopWatch = StopWatch.createStarted();
+        List<QueuePostCounts> queuePostCounts = stagingPostService.getQueuePostCounts(username);
+        stopWatch.stop();
+        appLogService.logQueuePostCountsFetch(username, stopWatch, size(queuePostCounts));
+        return ok(QueuePostCountsResponse.from(queuePostCounts));
     }
 
     /**
@@ -82,6 +218,29 @@ public class StagingPostController {
         return ok().body(buildResponseMessage("Successfully updated post Id " + id));
     }
 
+    /**
+     * Same as above, applied to a list of posts in one statement.  The response lists which of the given post Ids
+     * were updated and which were not found.
+     */
+    @PutMapping("/staging/read-status/posts")
+    @Secured({UNVERIFIED_ROLE})
+    @Transactional
+    public ResponseEntity<PostBulkStatusUpdateResponse> updatePostReadStatus(@Valid @RequestBody PostBulkStatusUpdateRequest postBulkStatusUpdateRequest, Authentication authentication) throws DataUpdateException {
+        UserDetails userDetails = (UserDetails) authentication.getDetails();
+        String username = userDetails.getUsername();
+        log.debug("updatePostStatus for user={}, postBulkStatusUpdateRequest={}", username, postBulkStatusUpdateRequest);
+        StopWatch stopWatch = StopWatch.createStarted();
+        List<Long> updated = stagingPostService.updatePostReadStatus(username, postBulkStatusUpdateRequest);
+        Set<Long> updatedSet = new HashSet<>(updated);
+        List<Long> notFound = postBulkStatusUpdateRequest.getIds().stream()
+                .filter(id -> !updatedSet.contains(id))
+                .distinct()
+                .toList();
+        stopWatch.stop();
+        appLogService.logStagingPostBulkReadStatusUpdate(username, stopWatch, postBulkStatusUpdateRequest, size(updated));
+        return ok(PostBulkStatusUpdateResponse.from(updated, notFound));
+    }
+
     /**
      * READ -- mark the post as read (applies to non-published posts only)
      * READ_LATER -- mark the post as read-later (applies to non-published posts only)
@@ -90,14 +249,14 @@ public class StagingPostController {
     @PutMapping("/staging/read-status/queue/{id}")
     @Secured({UNVERIFIED_ROLE})
     @Transactional
-    public ResponseEntity<?> updateFeedReadStatus(@PathVariable Long id, @Valid @RequestBody PostStatusUpdateRequest postStatusUpdateRequest, Authentication authentication) throws DataAccessException, DataUpdateException {
+    public ResponseEntity<?> updateFeedReadStatus(@PathVariable Long id, @Valid @RequestBody PostStatusUpdateRequest postStatusUpdateRequest, Authentication authentication) throws DataUpdateException {
         UserDetails userDetails = (UserDetails) authentication.getDetails();
         String username = userDetails.getUsername();
         log.debug("updatePostStatus for user={}, postId={}, postStatusUpdateRequest={}", username, id, postStatusUpdateRequest);
         StopWatch stopWatch = StopWatch.createStarted();
-        stagingPostService.updateQueueReadStatus(username, id, postStatusUpdateRequest);
+        int rowsUpdated = stagingPostService.updateQueueReadStatus(username, id, postStatusUpdateRequest);
         stopWatch.stop();
-        appLogService.logFeedReadStatusUpdate(username, stopWatch, id, postStatusUpdateRequest, 1);
+        appLogService.logFeedReadStatusUpdate(username, stopWatch, id, postStatusUpdateRequest, rowsUpdated);
         return ok().body(buildResponseMessage("Successfully updated feed Id " + id));
     }
 
@@ -118,7 +277,8 @@ public class StagingPostController {
 
     private String buildThumbnailProxyUrl(StagingPost s) {
         if (isNotBlank(s.getPostImgUrl())) {
-            return proxyService.rewriteImageUrl(s.getPostImgUrl(), s.getPostUrl());
+            proxyFetchService.prefetchImage(s.getPostImgUrl(), s.getPostUrl(), thumbnailImageWidth, getPrefetchPriority(s));
+            return proxyService.rewriteImageUrl(s.getPostImgUrl(), s.getPostUrl(), thumbnailImageWidth);
         }
 
         return null;
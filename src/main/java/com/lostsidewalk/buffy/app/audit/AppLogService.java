@@ -1,6 +1,7 @@
 package com.lostsidewalk.buffy.app.audit;
 
 import com.lostsidewalk.buffy.app.model.request.FeedStatusUpdateRequest;
+import com.lostsidewalk.buffy.app.model.request.PostBulkStatusUpdateRequest;
 import com.lostsidewalk.buffy.app.model.request.PostStatusUpdateRequest;
 import com.lostsidewalk.buffy.app.model.request.QueueConfigRequest;
 import com.lostsidewalk.buffy.app.model.request.SettingsUpdateRequest;
@@ -97,10 +98,26 @@ public class AppLogService {
         auditLog("staging-post-fetch", "queueIdCt={}, stagingPostCt={}, queryMetricsCt={}", username, stopWatch, queueIdCt, stagingPostCt);
     }
 
+    public void logQueuePostCountsFetch(String username, StopWatch stopWatch, int queueCt) {
+        auditLog("queue-post-counts-fetch", "queueCt={}", username, stopWatch, queueCt);
+    }
+
+    public void logStagingPostPageFetch(String username, StopWatch stopWatch, int queueIdCt, int stagingPostCt, boolean hasNextPage) {
+        auditLog("staging-post-page-fetch", "queueIdCt={}, stagingPostCt={}, hasNextPage={}", username, stopWatch, queueIdCt, stagingPostCt, hasNextPage);
+    }
+
+    public void logStagingPostChangesFetch(String username, StopWatch stopWatch, int queueIdCt, int stagingPostCt, int tombstoneCt, boolean hasMore) {
+        auditLog("staging-post-changes-fetch", "queueIdCt={}, stagingPostCt={}, tombstoneCt={}, hasMore={}", username, stopWatch, queueIdCt, stagingPostCt, tombstoneCt, hasMore);
+    }
+
     public void logStagingPostReadStatusUpdate(String username, StopWatch stopWatch, Long id, PostStatusUpdateRequest postStatusUpdateRequest, int rowsUpdated) {
         auditLog("staging-post-read-status-update", "id={}, postStatusUpdateRequest={}, rowsUpdated={}", username, stopWatch, id, postStatusUpdateRequest, rowsUpdated);
     }
 
+    public void logStagingPostBulkReadStatusUpdate(String username, StopWatch stopWatch, PostBulkStatusUpdateRequest postBulkStatusUpdateRequest, int rowsUpdated) {
+        auditLog("staging-post-bulk-read-status-update", "postBulkStatusUpdateRequest={}, rowsUpdated={}", username, stopWatch, postBulkStatusUpdateRequest, rowsUpdated);
+    }
+
     public void logFeedReadStatusUpdate(String username, StopWatch stopWatch, Long id, PostStatusUpdateRequest postStatusUpdateRequest, int rowsUpdated) {
         auditLog("feed-read-status-update", "id={}, postStatusUpdateRequest={}, rowsUpdated={}", username, stopWatch, id, postStatusUpdateRequest, rowsUpdated);
     }
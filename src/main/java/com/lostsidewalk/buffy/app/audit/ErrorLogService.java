@@ -94,6 +94,14 @@ public class ErrorLogService {
     public void logProxyUrlHashException(String username, Date timestamp, ProxyUrlHashException e) {
         auditError("proxy-url-hash-exception", "message={}", username, timestamp, e.getMessage());
     }
+
+    public void logProxyCapacityException(String username, Date timestamp, ProxyCapacityException e) {
+        auditError("proxy-capacity-exception", "message={}", username, timestamp, e.getMessage());
+    }
+
+    public void logHostUnavailableException(String username, Date timestamp, HostUnavailableException e) {
+        auditError("host-unavailable-exception", "message={}", username, timestamp, e.getMessage());
+    }
     //
     private static void auditError(String logTag, String formatStr, String username, Date timestamp, Object... args) {
         String fullFormatStr = "eventType={}, username={}, timestamp={}";
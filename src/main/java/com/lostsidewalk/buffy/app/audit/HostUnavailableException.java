@@ -0,0 +1,11 @@
+package com.lostsidewalk.buffy.app.audit;
+
+public class HostUnavailableException extends Exception {
+
+    public final long retryAfterSecs;
+
+    public HostUnavailableException(String host, long retryAfterSecs) {
+        super(String.format("Host is unavailable (circuit open): host=%s, retryAfterSecs=%d", host, retryAfterSecs));
+        this.retryAfterSecs = retryAfterSecs;
+    }
+}
@@ -0,0 +1,8 @@
+package com.lostsidewalk.buffy.app.audit;
+
+public class ProxyCapacityException extends Exception {
+
+    public ProxyCapacityException(int maxQueuedFetches) {
+        super(String.format("Image proxy fetch queue is full: maxQueuedFetches=%d", maxQueuedFetches));
+    }
+}
@@ -68,6 +68,9 @@ public class BrokerHandler {
     @Value("${newsgears.brokerClaim}")
     String brokerClaim; // randomized secret value
 
+    @Value("${newsgears.brokerNotificationDestinationPrefix}")
+    String brokerNotificationDestinationPrefix; // per-user destination is this prefix + username
+
     @Autowired
     TokenService tokenService;
 
@@ -246,6 +249,21 @@ public class BrokerHandler {
         }
     }
 
+    /**
+     * Pushes a change notification to the user's notification destination.
+     *
+     * @return false if there's no broker session to send it on
+     */
+    public boolean sendNotification(String username, String notificationType, Object body) {
+        StompSession session = this.stompSession;
+        if (session == null || !session.isConnected()) {
+            log.debug("Unable to send notification, broker session is not connected, username={}, notificationType={}", username, notificationType);
+            return false;
+        }
+        session.send(brokerNotificationDestinationPrefix + username, buildResponseMessage(notificationType, body));
+        return true;
+    }
+
     private String buildToken() {
         Map<String, Object> claims = new HashMap<>();
         String serverValidationClaim = sha256(brokerClaim, defaultCharset());
@@ -0,0 +1,147 @@
+package com.lostsidewalk.buffy.app.broker;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.lostsidewalk.buffy.app.utils.TransactionHorizonSql.TRANSACTION_HORIZON_SQL;
+
+/**
+ * Finds staging posts and subscription metrics written since the last change notification, grouped by user.
+ */
+@Slf4j
+@Component
+public class ChangeNotificationDao {
+
+    static final String STAGING_POSTS_WATERMARK = "staging_posts";
+
+    static final String SUBSCRIPTION_METRICS_WATERMARK = "subscription_metrics";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${newsgears.transactionHorizon.writerRoles}")
+    String horizonWriterRoles;
+
+    @Value("${newsgears.transactionHorizon.maxLagSecs}")
+    int horizonMaxLagSecs;
+
+    private static final String FIND_WATERMARK_SQL = "select last_id from change_notification_watermarks where name = ?";
+
+    public Long findWatermark(String name) throws DataAccessException {
+        try {
+            List<Long> results = jdbcTemplate.queryForList(FIND_WATERMARK_SQL, Long.class, name);
+            return results.isEmpty() ? null : results.get(0);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findWatermark", e.getMessage(), name);
+        }
+    }
+
+    private static final String UPDATE_WATERMARK_SQL = "update change_notification_watermarks set last_id = ? where name = ? and last_id < ?";
+
+    public void updateWatermark(String name, long lastId) throws DataUpdateException {
+        try {
+            jdbcTemplate.update(UPDATE_WATERMARK_SQL, lastId, name, lastId);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "updateWatermark", e.getMessage(), name, lastId);
+        }
+    }
+
+    /**
+     * The highest Id visible in a table, and when it was read.  Ids are drawn before commit, so lower Ids may still
+     * show up later; but once every transaction that was in flight when the mark was taken has ended (i.e., the
+     * mark is before the transaction horizon), all of them are visible.
+     */
+    record IdMark(long id, Timestamp taken) {}
+
+    private static final RowMapper<IdMark> ID_MARK_ROW_MAPPER = (rs, rowNum) -> new IdMark(
+            rs.getLong("max_id"),
+            rs.getTimestamp("taken"));
+
+    public Timestamp findHorizon(int marginSecs) throws DataAccessException {
+        try {
+            return jdbcTemplate.queryForObject(TRANSACTION_HORIZON_SQL, Timestamp.class, horizonWriterRoles, horizonMaxLagSecs, marginSecs);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findHorizon", e.getMessage(), marginSecs);
+        }
+    }
+
+    private static final String FIND_MAX_POST_ID_SQL = "select coalesce(max(id), 0) as max_id, current_timestamp as taken from staging_posts";
+
+    public IdMark findMaxPostId() throws DataAccessException {
+        try {
+            return jdbcTemplate.queryForObject(FIND_MAX_POST_ID_SQL, ID_MARK_ROW_MAPPER);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findMaxPostId", e.getMessage());
+        }
+    }
+
+    private static final String FIND_NEW_POST_COUNTS_SQL = "select username, queue_id, count(*) as post_ct from staging_posts "
+            + "where id > ? and id <= ? group by username, queue_id";
+
+    /**
+     * @return the number of posts with Ids in (afterId, upToId] per queue, keyed by username
+     */
+    public Map<String, Map<Long, Integer>> findNewPostCounts(long afterId, long upToId) throws DataAccessException {
+        Map<String, Map<Long, Integer>> results = new HashMap<>();
+        try {
+            jdbcTemplate.query(FIND_NEW_POST_COUNTS_SQL, rs -> {
+                results.computeIfAbsent(rs.getString("username"), u -> new HashMap<>())
+                        .put(rs.getLong("queue_id"), rs.getInt("post_ct"));
+            }, afterId, upToId);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findNewPostCounts", e.getMessage(), afterId, upToId);
+        }
+
+        return results;
+    }
+
+    private static final String FIND_MAX_METRICS_ID_SQL = "select coalesce(max(id), 0) as max_id, current_timestamp as taken from subscription_metrics";
+
+    public IdMark findMaxMetricsId() throws DataAccessException {
+        try {
+            return jdbcTemplate.queryForObject(FIND_MAX_METRICS_ID_SQL, ID_MARK_ROW_MAPPER);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findMaxMetricsId", e.getMessage());
+        }
+    }
+
+    private static final String FIND_UPDATED_SUBSCRIPTIONS_SQL = "select distinct s.username, m.subscription_id from subscription_metrics m "
+            + "join subscription_definitions s on s.id = m.subscription_id "
+            + "where m.id > ? and m.id <= ?";
+
+    /**
+     * @return the Ids of subscriptions with metrics Ids in (afterId, upToId], keyed by username
+     */
+    public Map<String, List<Long>> findUpdatedSubscriptions(long afterId, long upToId) throws DataAccessException {
+        Map<String, List<Long>> results = new HashMap<>();
+        try {
+            jdbcTemplate.query(FIND_UPDATED_SUBSCRIPTIONS_SQL, rs -> {
+                results.computeIfAbsent(rs.getString("username"), u -> newArrayList())
+                        .add(rs.getLong("subscription_id"));
+            }, afterId, upToId);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findUpdatedSubscriptions", e.getMessage(), afterId, upToId);
+        }
+
+        return results;
+    }
+}
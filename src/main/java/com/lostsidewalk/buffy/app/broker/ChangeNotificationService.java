@@ -0,0 +1,152 @@
+package com.lostsidewalk.buffy.app.broker;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import com.lostsidewalk.buffy.LockDao;
+import com.lostsidewalk.buffy.app.audit.ErrorLogService;
+import com.lostsidewalk.buffy.app.broker.ChangeNotificationDao.IdMark;
+import com.lostsidewalk.buffy.app.thumbnail.ThumbnailRenderedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static com.lostsidewalk.buffy.app.broker.ChangeNotificationDao.STAGING_POSTS_WATERMARK;
+import static com.lostsidewalk.buffy.app.broker.ChangeNotificationDao.SUBSCRIPTION_METRICS_WATERMARK;
+import static java.util.UUID.randomUUID;
+import static org.apache.commons.codec.binary.Base64.encodeBase64String;
+
+/**
+ * Pushes per-user change notifications (new staging posts, new subscription metrics, finished subscription
+ * creation, rendered queue thumbnails) over the broker, so that clients don't have to poll GET /queues/metrics and
+ * GET /staging.
+ * <p>
+ * Notifications are hints: clients follow up with GET /staging/changes or GET /staging/counts for the details.
+ * <p>
+ * Ids are drawn before commit, so the scans don't go up to max(id) right away: each scan marks max(id) for the next
+ * one, and a mark is only scanned up to once every transaction that was in flight when it was taken has ended.
+ */
+@Slf4j
+@Service
+public class ChangeNotificationService {
+
+    static final String NEW_STAGING_POSTS = "NEW_STAGING_POSTS";
+
+    static final String UPDATED_SUBSCRIPTION_METRICS = "UPDATED_SUBSCRIPTION_METRICS";
+
+    static final String CREATED_SUBSCRIPTION_DEFINITIONS = "CREATED_SUBSCRIPTION_DEFINITIONS";
+
+    static final String RENDERED_QUEUE_THUMBNAIL = "RENDERED_QUEUE_THUMBNAIL";
+
+    private static final String LOCK_KEY = "changeNotifications";
+
+    private final String lockValue = randomUUID().toString(); // identifies this instance as the lock holder
+
+    @Autowired
+    ErrorLogService errorLogService;
+
+    @Autowired
+    ChangeNotificationDao changeNotificationDao;
+
+    @Autowired
+    LockDao lockDao;
+
+    @Autowired
+    BrokerHandler brokerHandler;
+
+    @Value("${newsgears.notifications.horizonMarginSecs}")
+    int horizonMarginSecs;
+
+    private IdMark pendingPostMark; // (only touched by the scheduled scan)
+
+    private IdMark pendingMetricsMark;
+
+    /**
+     * One instance at a time scans for posts and metrics written since the last scan, and notifies their owners.
+     */
+    @Scheduled(fixedDelay = 10_000, initialDelay = 60_000)
+    public void pushChangeNotifications() {
+        if (!lockDao.acquireLock(LOCK_KEY, lockValue)) {
+            return;
+        }
+        try {
+            Timestamp horizon = changeNotificationDao.findHorizon(horizonMarginSecs);
+            pushNewStagingPosts(horizon);
+            pushUpdatedSubscriptionMetrics(horizon);
+        } catch (DataAccessException e) {
+            errorLogService.logDataAccessException("sys", new Date(), e);
+        } catch (DataUpdateException e) {
+            errorLogService.logDataUpdateException("sys", new Date(), e);
+        } finally {
+            if (!lockDao.releaseLock(LOCK_KEY, lockValue)) {
+                log.warn("Unable to release change notification lock, lockKey={}, lockValue={}", LOCK_KEY, lockValue);
+            }
+        }
+    }
+
+    private void pushNewStagingPosts(Timestamp horizon) throws DataAccessException, DataUpdateException {
+        // (otherwise still waiting on transactions that might hold lower Ids)
+        if (pendingPostMark != null && pendingPostMark.taken().before(horizon)) {
+            pushNewStagingPosts(pendingPostMark.id());
+            pendingPostMark = null;
+        }
+        if (pendingPostMark == null) {
+            pendingPostMark = changeNotificationDao.findMaxPostId();
+        }
+    }
+
+    private void pushNewStagingPosts(long upToId) throws DataAccessException, DataUpdateException {
+        Long afterId = changeNotificationDao.findWatermark(STAGING_POSTS_WATERMARK);
+        if (afterId == null || upToId <= afterId) {
+            return;
+        }
+        Map<String, Map<Long, Integer>> newPostCounts = changeNotificationDao.findNewPostCounts(afterId, upToId);
+        newPostCounts.forEach((username, postCtByQueueId) ->
+                brokerHandler.sendNotification(username, NEW_STAGING_POSTS, postCtByQueueId));
+        changeNotificationDao.updateWatermark(STAGING_POSTS_WATERMARK, upToId);
+        log.debug("Pushed new staging post notifications: afterId={}, upToId={}, userCt={}", afterId, upToId, newPostCounts.size());
+    }
+
+    private void pushUpdatedSubscriptionMetrics(Timestamp horizon) throws DataAccessException, DataUpdateException {
+        if (pendingMetricsMark != null && pendingMetricsMark.taken().before(horizon)) {
+            pushUpdatedSubscriptionMetrics(pendingMetricsMark.id());
+            pendingMetricsMark = null;
+        }
+        if (pendingMetricsMark == null) {
+            pendingMetricsMark = changeNotificationDao.findMaxMetricsId();
+        }
+    }
+
+    private void pushUpdatedSubscriptionMetrics(long upToId) throws DataAccessException, DataUpdateException {
+        Long afterId = changeNotificationDao.findWatermark(SUBSCRIPTION_METRICS_WATERMARK);
+        if (afterId == null || upToId <= afterId) {
+            return;
+        }
+        Map<String, List<Long>> updatedSubscriptions = changeNotificationDao.findUpdatedSubscriptions(afterId, upToId);
+        updatedSubscriptions.forEach((username, subscriptionIds) ->
+                brokerHandler.sendNotification(username, UPDATED_SUBSCRIPTION_METRICS, subscriptionIds));
+        changeNotificationDao.updateWatermark(SUBSCRIPTION_METRICS_WATERMARK, upToId);
+        log.debug("Pushed subscription metrics notifications: afterId={}, upToId={}, userCt={}", afterId, upToId, updatedSubscriptions.size());
+    }
+
+    public void pushCreatedSubscriptions(String username, Long queueId, List<Long> subscriptionIds) {
+        brokerHandler.sendNotification(username, CREATED_SUBSCRIPTION_DEFINITIONS, Map.of("queueId", queueId, "subscriptionIds", subscriptionIds));
+    }
+
+    /**
+     * Sends a queue thumbnail that was rendered in the background to the user that asked for it (as queueImgSrc, in
+     * the same form as QueueConfigResponse).
+     */
+    @EventListener
+    public void onThumbnailRendered(ThumbnailRenderedEvent event) {
+        brokerHandler.sendNotification(event.getUsername(), RENDERED_QUEUE_THUMBNAIL,
+                Map.of("queueId", event.getQueueId(), "queueImgSrc", encodeBase64String(event.getImage())));
+    }
+}
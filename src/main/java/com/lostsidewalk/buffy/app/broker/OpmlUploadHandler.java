@@ -26,6 +26,7 @@ import org.springframework.stereotype.Component;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -83,7 +84,8 @@ public class OpmlUploadHandler implements MessageHandler<List<QueueConfigRespons
         // deserialize payload into a List<QueueConfigRequest>
         List<QueueConfigRequest> queueConfigRequests = GSON.fromJson(payload, LIST_OF_QUEUE_CONFIG_REQUESTS);
         //
-        List<QueueConfigResponse> queueConfigResponses = newArrayList();
+        List<QueueDefinition> queueDefinitions = newArrayList();
+        List<List<ThumbnailedSubscriptionDefinition>> queueSubscriptionDefinitions = newArrayList();
         // for ea. feed config request
         for (QueueConfigRequest queueConfigRequest : queueConfigRequests) {
             // create the feed
@@ -99,14 +101,20 @@ public class OpmlUploadHandler implements MessageHandler<List<QueueConfigRespons
                 }
             }
             // re-fetch this feed definition
-            QueueDefinition queueDefinition = queueDefinitionService.findByQueueId(username, queueId);
+            queueDefinitions.add(queueDefinitionService.findByQueueId(username, queueId));
             // re-fetch query definitions for this feed
-            List<ThumbnailedSubscriptionDefinition> subscriptionDefinitions = addThumbnails(subscriptionDefinitionService.findByQueueId(username, queueId));
-            // build feed config responses to return the front-end
+            queueSubscriptionDefinitions.add(addThumbnails(subscriptionDefinitionService.findByQueueId(username, queueId)));
+        }
+        // thumbnail the feeds (in one batch)
+        Map<String, RenderedThumbnail> thumbnails = thumbnailService.findOrQueueThumbnails(queueDefinitions);
+        // build feed config responses to return the front-end
+        List<QueueConfigResponse> queueConfigResponses = newArrayListWithCapacity(queueDefinitions.size());
+        for (int i = 0; i < queueDefinitions.size(); i++) {
+            QueueDefinition queueDefinition = queueDefinitions.get(i);
             queueConfigResponses.add(QueueConfigResponse.from(
                     queueDefinition,
-                    subscriptionDefinitions,
-                    buildThumbnail(queueDefinition))
+                    queueSubscriptionDefinitions.get(i),
+                    buildThumbnail(queueDefinition, thumbnails))
             );
         }
         return queueConfigResponses;
@@ -139,17 +147,10 @@ public class OpmlUploadHandler implements MessageHandler<List<QueueConfigRespons
         return null;
     }
 
-    private byte[] buildThumbnail(QueueDefinition queueDefinition) throws DataAccessException {
+    private static byte[] buildThumbnail(QueueDefinition queueDefinition, Map<String, RenderedThumbnail> thumbnails) {
         if (isNotBlank(queueDefinition.getQueueImgSrc())) {
-            String transportIdent = queueDefinition.getQueueImgTransportIdent();
-            byte[] image = ofNullable(thumbnailService.getThumbnail(transportIdent)).map(RenderedThumbnail::getImage).orElse(null);
-            if (image == null) {
-                image = ofNullable(thumbnailService.refreshThumbnailFromSrc(transportIdent, queueDefinition.getQueueImgSrc()))
-                        .map(RenderedThumbnail::getImage)
-                        .orElse(null);
-            }
-
-            return image;
+            // (null until rendered; the user is notified with the image once it's ready, see ChangeNotificationService)
+            return ofNullable(thumbnails.get(queueDefinition.getQueueImgTransportIdent())).map(RenderedThumbnail::getImage).orElse(null);
         }
 
         return null;
@@ -80,6 +80,9 @@ public class SubscriptionCreationTaskQueueProcessor implements DisposableBean, R
     @Autowired
     PostImporter postImporter;
 
+    @Autowired
+    ChangeNotificationService changeNotificationService;
+
     private volatile boolean isEnabled = true;
 
     private Thread thread;
@@ -173,6 +176,9 @@ public class SubscriptionCreationTaskQueueProcessor implements DisposableBean, R
                     postImporter.doImport(createdSubscriptions, ImmutableMap.copyOf(discoveryCache));
                 }
                 stompSession.send(creationTask.destination, buildResponseMessage("CREATED_SUBSCRIPTION_DEFINITIONS", createdSubscriptions));
+                // also tell the user's other clients (the response destination above is the requesting client's)
+                changeNotificationService.pushCreatedSubscriptions(creationTask.username, creationTask.queueId,
+                        createdSubscriptions == null ? List.of() : createdSubscriptions.stream().map(SubscriptionDefinition::getId).toList());
             } catch (DataAccessException | DataUpdateException | DataConflictException e) {
                 log.error("Unable to create query due to: {}", e.getMessage());
             } catch (InterruptedException e) {
@@ -23,12 +23,6 @@ public class CacheConfig {
         log.trace("Feed collection discovery cache cleared");
     }
 
-    @CacheEvict(allEntries = true, value = {"proxyCache"})
-    @Scheduled(fixedDelay=10_000, initialDelay=480_000)
-    public void clearProxyCache() {
-        log.trace("Proxy cache cleared");
-    }
-
     @CacheEvict(value = {"thumbnailRefreshCache"})
     @Scheduled(fixedDelay=10_000, initialDelay=480_000)
     public void clearThumbnailRefreshCache() {
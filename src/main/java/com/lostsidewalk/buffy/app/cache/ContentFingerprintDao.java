@@ -0,0 +1,65 @@
+package com.lostsidewalk.buffy.app.cache;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.nCopies;
+import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
+
+/**
+ * Computes cheap per-user version fingerprints (row counts, max Ids and max modification times) over the tables
+ * that back GET /queues and GET /staging.
+ */
+@Slf4j
+@Component
+public class ContentFingerprintDao {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private static final String QUEUES_FINGERPRINT_SQL = "select concat_ws('|', "
+            + "(select concat_ws(':', count(*), max(id), max(coalesce(last_modified, created))) from queue_definitions where username = ?), "
+            + "(select concat_ws(':', count(*), max(id), max(coalesce(last_modified, created))) from subscription_definitions where username = ?), "
+            + "(select concat_ws(':', count(*), max(m.id)) from subscription_metrics m join subscription_definitions s on s.id = m.subscription_id where s.username = ?), "
+            + "(select concat_ws(':', count(*), max(id), max(coalesce(last_modified, created))) from rule_set_definitions where username = ?), "
+            + "(select concat_ws(':', count(*), max(r.id)) from queue_import_rule_sets r join queue_definitions q on q.id = r.queue_id where q.username = ?), "
+            + "(select concat_ws(':', count(*), max(r.id)) from subscription_import_rule_sets r join subscription_definitions s on s.id = r.subscription_id where s.username = ?)"
+            + ")";
+
+    public String findQueuesFingerprint(String username) throws DataAccessException {
+        try {
+            return jdbcTemplate.queryForObject(QUEUES_FINGERPRINT_SQL, String.class, username, username, username, username, username, username);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findQueuesFingerprint", e.getMessage(), username);
+        }
+    }
+
+    public String findStagingPostsFingerprint(String username, List<Long> queueIds) throws DataAccessException {
+        StringBuilder sql = new StringBuilder("select concat_ws('|', "
+                + "(select concat_ws(':', count(*), max(id), max(coalesce(last_modified, created))) from staging_posts where username = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(username);
+        if (isNotEmpty(queueIds)) {
+            sql.append(" and queue_id in (").append(String.join(",", nCopies(queueIds.size(), "?"))).append(")");
+            args.addAll(queueIds);
+        }
+        sql.append("), (select max(id) from staging_post_tombstones where username = ?)");
+        args.add(username);
+        // read watermarks (and overrides of them, which touch last_modified above) change effective read status
+        sql.append(", (select concat_ws(':', count(*), max(marked_at)) from queue_read_watermarks where username = ?))");
+        args.add(username);
+        try {
+            return jdbcTemplate.queryForObject(sql.toString(), String.class, args.toArray());
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findStagingPostsFingerprint", e.getMessage(), username, queueIds);
+        }
+    }
+}
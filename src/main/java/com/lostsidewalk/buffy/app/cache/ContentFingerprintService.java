@@ -0,0 +1,53 @@
+package com.lostsidewalk.buffy.app.cache;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.app.proxy.PostSanitizerService;
+import com.lostsidewalk.buffy.app.thumbnail.ThumbnailService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+import static com.lostsidewalk.buffy.app.auth.HashingUtils.sha256;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.collections4.CollectionUtils.isEmpty;
+
+/**
+ * Builds ETags for GET /queues and GET /staging from database fingerprints, so that an unchanged response
+ * can be answered with 304 Not Modified before any of it is built.
+ */
+@Service
+public class ContentFingerprintService {
+
+    @Autowired
+    ContentFingerprintDao contentFingerprintDao;
+
+    @Autowired
+    PostSanitizerService postSanitizerService;
+
+    @Autowired
+    ThumbnailService thumbnailService;
+
+    /**
+     * @return the ETag for this user's GET /queues response, or null if there shouldn't be one (i.e., while queue
+     * thumbnails the user asked for are still rendering, since the fingerprint doesn't cover them)
+     */
+    public String getQueuesETag(String username) throws DataAccessException {
+        if (thumbnailService.isRenderPending(username)) {
+            return null;
+        }
+        String fingerprint = contentFingerprintDao.findQueuesFingerprint(username);
+        return fingerprint == null ? null : toETag("queues", username, fingerprint);
+    }
+
+    public String getStagingPostsETag(String username, List<Long> queueIds) throws DataAccessException {
+        String fingerprint = contentFingerprintDao.findStagingPostsFingerprint(username, queueIds);
+        String queueSet = isEmpty(queueIds) ? "all" : queueIds.stream().sorted().distinct().toList().toString();
+        return fingerprint == null ? null : toETag("staging", username, queueSet + "|" + fingerprint);
+    }
+
+    private String toETag(String resource, String username, String fingerprint) {
+        // the secured version covers output changes due to the sanitizer or the image proxy URL template
+        return "\"" + sha256(resource + "|" + username + "|" + postSanitizerService.getSecuredVersion() + "|" + fingerprint, UTF_8) + "\"";
+    }
+}
@@ -0,0 +1,227 @@
+package com.lostsidewalk.buffy.app.circuit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.Math.max;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.HOURS;
+
+/**
+ * Per-host circuit breaker for outbound fetches (image proxy, feed discovery).  After failureThreshold consecutive
+ * connect/read failures a host is 'open' (fetches fail fast) for openMillis; then a single probe is let through
+ * ('half-open'), which either closes the circuit or opens it again.
+ * <p>
+ * Exposed as the hostCircuitBreaker.openHosts gauge (hosts not closed) and the hostCircuitBreaker.rejected counter.
+ * Each host whose circuit is open or half-open also gets a hostCircuitBreaker.hostState gauge, tagged by host (1 for
+ * open, 2 for half-open), which is removed when the circuit closes or the host is forgotten; at most maxHostGauges of
+ * these exist at once, to keep metric cardinality bounded (the rest only show up in openHosts and the logs).
+ */
+@Slf4j
+@Component
+public class HostCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Value("${newsgears.circuitBreaker.failureThreshold}")
+    int failureThreshold;
+
+    @Value("${newsgears.circuitBreaker.openMillis}")
+    long openMillis;
+
+    @Value("${newsgears.circuitBreaker.maxHostGauges}")
+    int maxHostGauges;
+
+    // host -> state; hosts that haven't been fetched from in an hour are forgotten
+    private final Cache<String, HostState> hostStates = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(1, HOURS)
+            .<String, HostState>removalListener(this::onHostRemoved)
+            .build();
+
+    // host -> its hostState gauge, for hosts whose circuit isn't closed
+    private final Map<String, Gauge> hostGauges = new ConcurrentHashMap<>();
+
+    private Counter rejections;
+
+    @PostConstruct
+    void postConstruct() {
+        log.info("Starting host circuit breaker, failureThreshold={}, openMillis={}, maxHostGauges={}", failureThreshold, openMillis, maxHostGauges);
+        this.rejections = Metrics.counter("hostCircuitBreaker.rejected");
+        Metrics.gauge("hostCircuitBreaker.openHosts", this, HostCircuitBreaker::getOpenHostCt);
+    }
+
+    double getOpenHostCt() {
+        return hostStates.asMap().values().stream().filter(s -> s.getState() != State.CLOSED).count();
+    }
+
+    int getHostGaugeCt() {
+        return hostGauges.size();
+    }
+
+    /**
+     * @return true if a fetch from this host may go ahead; the outcome must then be reported with recordSuccess or
+     * recordFailure
+     */
+    public boolean allowRequest(String host) {
+        if (host == null) {
+            return true;
+        }
+        HostState hostState = hostStates.getIfPresent(host);
+        if (hostState == null || hostState.allowRequest(openMillis)) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * The host answered (whatever the HTTP status).
+     */
+    public void recordSuccess(String host) {
+        if (host != null) {
+            HostState hostState = hostStates.getIfPresent(host);
+            if (hostState != null && hostState.recordSuccess()) {
+                log.info("Host circuit closed, host={}", host);
+                removeHostGauge(host);
+            }
+        }
+    }
+
+    /**
+     * The host couldn't be connected to or read from.
+     */
+    public void recordFailure(String host) {
+        if (host != null) {
+            HostState hostState = hostStates.asMap().computeIfAbsent(host, h -> new HostState());
+            if (hostState.recordFailure(failureThreshold)) {
+                log.warn("Host circuit opened, host={}, openMillis={}", host, openMillis);
+                addHostGauge(host, hostState);
+            }
+        }
+    }
+
+    private void addHostGauge(String host, HostState hostState) {
+        // (best-effort cap; a few over is harmless)
+        if (hostGauges.size() < maxHostGauges) {
+            hostGauges.computeIfAbsent(host, h -> Gauge.builder("hostCircuitBreaker.hostState", hostState, s -> s.getState().ordinal())
+                    .tag("host", h)
+                    .strongReference(true)
+                    .register(Metrics.globalRegistry));
+        }
+    }
+
+    private void removeHostGauge(String host) {
+        Gauge gauge = hostGauges.remove(host);
+        if (gauge != null) {
+            Metrics.globalRegistry.remove(gauge);
+        }
+    }
+
+    private void onHostRemoved(RemovalNotification<String, HostState> notification) {
+        removeHostGauge(notification.getKey());
+    }
+
+    /**
+     * @return the number of seconds until this host will be probed again
+     */
+    public long getRetryAfterSecs(String host) {
+        HostState hostState = host == null ? null : hostStates.getIfPresent(host);
+        return hostState == null ? 0L : max(1L, (hostState.getOpenedAt() + openMillis - currentTimeMillis() + 999L) / 1_000L);
+    }
+
+    /**
+     * @return the (lower-cased) host of this URL, or null if it hasn't got one
+     */
+    public static String getHost(String url) {
+        try {
+            String host = URI.create(url.strip().replace(" ", "+")).getHost();
+            return host == null ? null : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class HostState {
+
+        private State state = State.CLOSED;
+
+        private int consecutiveFailures;
+
+        private long openedAt;
+
+        private long probedAt;
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized long getOpenedAt() {
+            return openedAt;
+        }
+
+        synchronized boolean allowRequest(long openMillis) {
+            long now = currentTimeMillis();
+            switch (state) {
+                case OPEN -> {
+                    if (now - openedAt < openMillis) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probedAt = now;
+                    return true;
+                }
+                case HALF_OPEN -> {
+                    // one probe at a time (unless the last one never reported back)
+                    if (now - probedAt < openMillis) {
+                        return false;
+                    }
+                    probedAt = now;
+                    return true;
+                }
+                default -> {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if this closed the circuit
+         */
+        synchronized boolean recordSuccess() {
+            consecutiveFailures = 0;
+            boolean wasOpen = state != State.CLOSED;
+            state = State.CLOSED;
+            return wasOpen;
+        }
+
+        /**
+         * @return true if this opened the circuit
+         */
+        synchronized boolean recordFailure(int failureThreshold) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = currentTimeMillis();
+                return true;
+            } else if (state == State.OPEN) {
+                openedAt = currentTimeMillis(); // (a fetch that was already in flight when the circuit opened)
+            }
+            return false;
+        }
+    }
+}
@@ -1,25 +1,96 @@
 package com.lostsidewalk.buffy.app.discovery;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lostsidewalk.buffy.app.audit.HostUnavailableException;
+import com.lostsidewalk.buffy.app.circuit.HostCircuitBreaker;
 import com.lostsidewalk.buffy.discovery.FeedDiscoveryInfo;
 import com.lostsidewalk.buffy.discovery.FeedDiscoveryInfo.FeedDiscoveryException;
+import com.lostsidewalk.buffy.discovery.FeedDiscoveryInfo.FeedDiscoveryExceptionType;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import static com.lostsidewalk.buffy.app.circuit.HostCircuitBreaker.getHost;
 import static com.lostsidewalk.buffy.rss.RssDiscovery.discoverUrl;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 @Slf4j
 @Service
 public class FeedDiscoveryService {
 
+    @Autowired
+    HostCircuitBreaker hostCircuitBreaker;
+
     @Value("${newsgears.userAgent}")
     String feedGearsUserAgent;
+
+    @Value("${newsgears.discovery.negativeCacheTtlSecs}")
+    long negativeCacheTtlSecs;
+
+    // URL -> the network failure from the last attempt to discover it
+    private Cache<String, RecentFailure> negativeCache;
+
+    /**
+     * What is kept of a network failure (i.e., not the exception itself, whose cause chain may hold anything), so that
+     * each caller can be given a fresh FeedDiscoveryException.
+     */
+    private record RecentFailure(String feedUrl, String message, FeedDiscoveryExceptionType exceptionType) {
+
+        static RecentFailure from(FeedDiscoveryException e) {
+            return new RecentFailure(e.feedUrl, e.getMessage(), e.exceptionType);
+        }
+
+        FeedDiscoveryException toException() {
+            return new FeedDiscoveryException(feedUrl, message, exceptionType);
+        }
+    }
+
+    @PostConstruct
+    void postConstruct() {
+        this.negativeCache = CacheBuilder.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(negativeCacheTtlSecs, SECONDS)
+                .build();
+    }
     //
     // INDIVIDUAL URL DISCOVERY
     //
     @Cacheable(value="feedDiscoveryCache")
-    public FeedDiscoveryInfo performDiscovery(String url, String username, String password) throws FeedDiscoveryException {
-        return discoverUrl(url, username, password, feedGearsUserAgent);
+    public FeedDiscoveryInfo performDiscovery(String url, String username, String password) throws FeedDiscoveryException, HostUnavailableException {
+        RecentFailure recentFailure = negativeCache.getIfPresent(url);
+        if (recentFailure != null) {
+            throw recentFailure.toException();
+        }
+        String host = getHost(url);
+        if (!hostCircuitBreaker.allowRequest(host)) {
+            throw new HostUnavailableException(host, hostCircuitBreaker.getRetryAfterSecs(host));
+        }
+        try {
+            FeedDiscoveryInfo feedDiscoveryInfo = discoverUrl(url, username, password, feedGearsUserAgent);
+            hostCircuitBreaker.recordSuccess(host);
+            return feedDiscoveryInfo;
+        } catch (FeedDiscoveryException e) {
+            if (isNetworkFailure(e)) {
+                hostCircuitBreaker.recordFailure(host);
+                negativeCache.put(url, RecentFailure.from(e));
+            } else {
+                hostCircuitBreaker.recordSuccess(host); // (the host answered)
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isNetworkFailure(FeedDiscoveryException e) {
+        if (e.exceptionType == null) {
+            return false;
+        }
+        return switch (e.exceptionType) {
+            case UNKNOWN_HOST_EXCEPTION, CONNECT_EXCEPTION, SOCKET_TIMEOUT_EXCEPTION, SOCKET_EXCEPTION -> true;
+            default -> false;
+        };
     }
 }
@@ -0,0 +1,18 @@
+package com.lostsidewalk.buffy.app.model.request;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PostBulkStatusUpdateRequest {
+
+    @NotEmpty(message = "{post.status.bulk-update.error.post-ids-is-empty}")
+    @Size(max = 1000, message = "{post.status.bulk-update.error.too-many-post-ids}")
+    List<Long> ids;
+
+    @Size(max = 64, message = "{post.status.update.error.new-status-too-long}")
+    String newStatus; // may be null
+}
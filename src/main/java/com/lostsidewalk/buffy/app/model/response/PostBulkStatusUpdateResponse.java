@@ -0,0 +1,22 @@
+package com.lostsidewalk.buffy.app.model.response;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PostBulkStatusUpdateResponse {
+
+    List<Long> updated;
+
+    List<Long> notFound; // unknown to this user, or otherwise not updated
+
+    private PostBulkStatusUpdateResponse(List<Long> updated, List<Long> notFound) {
+        this.updated = updated;
+        this.notFound = notFound;
+    }
+
+    public static PostBulkStatusUpdateResponse from(List<Long> updated, List<Long> notFound) {
+        return new PostBulkStatusUpdateResponse(updated, notFound);
+    }
+}
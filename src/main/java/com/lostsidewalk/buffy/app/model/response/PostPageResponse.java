@@ -0,0 +1,26 @@
+package com.lostsidewalk.buffy.app.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+@Data
+@JsonInclude(NON_NULL)
+public class PostPageResponse {
+
+    List<ThumbnailedPostResponse> stagingPosts;
+
+    String nextCursor; // absent on the last page
+
+    private PostPageResponse(List<ThumbnailedPostResponse> stagingPosts, String nextCursor) {
+        this.stagingPosts = stagingPosts;
+        this.nextCursor = nextCursor;
+    }
+
+    public static PostPageResponse from(List<ThumbnailedPostResponse> stagingPosts, String nextCursor) {
+        return new PostPageResponse(stagingPosts, nextCursor);
+    }
+}
@@ -0,0 +1,32 @@
+package com.lostsidewalk.buffy.app.model.response;
+
+import com.lostsidewalk.buffy.app.post.QueueReadWatermark;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PostSyncResponse {
+
+    List<ThumbnailedPostResponse> stagingPosts; // created or modified since the previous watermark (may repeat recent changes; upsert by Id)
+
+    List<Long> tombstones; // Ids of posts archived or deleted since the previous watermark (may repeat recent deletes)
+
+    List<QueueReadWatermark> readWatermarks; // apply these to previously synced posts in the same queues
+
+    String watermark; // pass this back as 'since' on the next call
+
+    boolean hasMore;
+
+    private PostSyncResponse(List<ThumbnailedPostResponse> stagingPosts, List<Long> tombstones, List<QueueReadWatermark> readWatermarks, String watermark, boolean hasMore) {
+        this.stagingPosts = stagingPosts;
+        this.tombstones = tombstones;
+        this.readWatermarks = readWatermarks;
+        this.watermark = watermark;
+        this.hasMore = hasMore;
+    }
+
+    public static PostSyncResponse from(List<ThumbnailedPostResponse> stagingPosts, List<Long> tombstones, List<QueueReadWatermark> readWatermarks, String watermark, boolean hasMore) {
+        return new PostSyncResponse(stagingPosts, tombstones, readWatermarks, watermark, hasMore);
+    }
+}
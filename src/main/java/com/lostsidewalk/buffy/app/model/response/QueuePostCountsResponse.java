@@ -0,0 +1,20 @@
+package com.lostsidewalk.buffy.app.model.response;
+
+import com.lostsidewalk.buffy.app.post.QueuePostCounts;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class QueuePostCountsResponse {
+
+    List<QueuePostCounts> queuePostCounts; // queues without posts may be absent
+
+    private QueuePostCountsResponse(List<QueuePostCounts> queuePostCounts) {
+        this.queuePostCounts = queuePostCounts;
+    }
+
+    public static QueuePostCountsResponse from(List<QueuePostCounts> queuePostCounts) {
+        return new QueuePostCountsResponse(queuePostCounts);
+    }
+}
@@ -0,0 +1,26 @@
+package com.lostsidewalk.buffy.app.post;
+
+import lombok.Data;
+
+@Data
+public class QueuePostCounts {
+
+    final Long queueId;
+
+    final int totalCt; // live (non-archived) posts
+
+    final int unreadCt;
+
+    final int readLaterCt;
+
+    private QueuePostCounts(Long queueId, int totalCt, int unreadCt, int readLaterCt) {
+        this.queueId = queueId;
+        this.totalCt = totalCt;
+        this.unreadCt = unreadCt;
+        this.readLaterCt = readLaterCt;
+    }
+
+    public static QueuePostCounts from(Long queueId, int totalCt, int unreadCt, int readLaterCt) {
+        return new QueuePostCounts(queueId, totalCt, unreadCt, readLaterCt);
+    }
+}
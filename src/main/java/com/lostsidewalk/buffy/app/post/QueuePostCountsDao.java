@@ -0,0 +1,89 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Reads the queue_post_counts table (kept current by triggers on staging_posts), and recomputes it from
+ * staging_posts when a queue's read watermark moves or on the periodic reconciliation.
+ */
+@Slf4j
+@Component
+public class QueuePostCountsDao {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private static final RowMapper<QueuePostCounts> QUEUE_POST_COUNTS_ROW_MAPPER = (rs, rowNum) -> QueuePostCounts.from(
+            rs.getLong("queue_id"),
+            rs.getInt("total_ct"),
+            rs.getInt("unread_ct"),
+            rs.getInt("read_later_ct")
+    );
+
+    private static final String FIND_BY_USER_SQL = "select * from queue_post_counts where username = ?";
+
+    public List<QueuePostCounts> findByUser(String username) throws DataAccessException {
+        try {
+            return jdbcTemplate.query(FIND_BY_USER_SQL, QUEUE_POST_COUNTS_ROW_MAPPER, username);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findByUser", e.getMessage(), username);
+        }
+    }
+
+    private static final String RECONCILE_SQL_TEMPLATE = "insert into queue_post_counts (queue_id, username, total_ct, unread_ct, read_later_ct, reconciled) "
+            + "select q.id, q.username, "
+            + "count(s.id), "
+            + "count(s.id) filter (where s.effective_read_status is null), "
+            + "count(s.id) filter (where s.effective_read_status = 'READ_LATER'), "
+            + "current_timestamp "
+            + "from queue_definitions q "
+            + "left join ("
+            + "select s.id, s.queue_id, "
+            + "case when w.queue_id is not null and not s.is_published "
+            + "and coalesce(s.import_timestamp, s.created) <= w.read_before "
+            + "and (s.post_read_status_modified is null or s.post_read_status_modified <= w.marked_at) "
+            + "then w.post_read_status else s.post_read_status end as effective_read_status "
+            + "from staging_posts s "
+            + "left join queue_read_watermarks w on w.queue_id = s.queue_id "
+            + "where not s.is_archived %s"
+            + ") s on s.queue_id = q.id "
+            + "%s "
+            + "group by q.id, q.username "
+            + "on conflict (queue_id) do update set "
+            + "username = excluded.username, total_ct = excluded.total_ct, unread_ct = excluded.unread_ct, "
+            + "read_later_ct = excluded.read_later_ct, reconciled = excluded.reconciled";
+
+    private static final String RECONCILE_ALL_SQL = String.format(RECONCILE_SQL_TEMPLATE, "", "");
+
+    private static final String RECONCILE_QUEUE_SQL = String.format(RECONCILE_SQL_TEMPLATE, "and s.queue_id = ?", "where q.id = ? and q.username = ?");
+
+    private static final String PURGE_ORPHANS_SQL = "delete from queue_post_counts c where not exists (select 1 from queue_definitions q where q.id = c.queue_id)";
+
+    public int reconcileQueue(String username, Long queueId) throws DataUpdateException {
+        try {
+            return jdbcTemplate.update(RECONCILE_QUEUE_SQL, queueId, queueId, username);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "reconcileQueue", e.getMessage(), username, queueId);
+        }
+    }
+
+    public int reconcileAll() throws DataUpdateException {
+        try {
+            jdbcTemplate.update(PURGE_ORPHANS_SQL);
+            return jdbcTemplate.update(RECONCILE_ALL_SQL);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "reconcileAll", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost.PostReadStatus;
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+public class QueueReadWatermark {
+
+    final Long queueId;
+
+    final Date readBefore; // posts imported at or before this time take postReadStatus
+
+    final PostReadStatus postReadStatus; // may be null (i.e., UNREAD)
+
+    final Date markedAt; // per-post statuses set after this time override the watermark
+
+    private QueueReadWatermark(Long queueId, Date readBefore, PostReadStatus postReadStatus, Date markedAt) {
+        this.queueId = queueId;
+        this.readBefore = readBefore;
+        this.postReadStatus = postReadStatus;
+        this.markedAt = markedAt;
+    }
+
+    static QueueReadWatermark from(Long queueId, Date readBefore, PostReadStatus postReadStatus, Date markedAt) {
+        return new QueueReadWatermark(queueId, readBefore, postReadStatus, markedAt);
+    }
+}
@@ -0,0 +1,89 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+
+import java.util.*;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * A user's queue read watermarks.  A post imported at or before the watermark on its queue takes the watermark's
+ * read status, unless the post's own read status was set after the watermark was (an override).
+ */
+public class QueueReadWatermarks {
+
+    static final QueueReadWatermarks NONE = new QueueReadWatermarks(emptyMap());
+
+    private final Map<Long, QueueReadWatermark> watermarksByQueueId;
+
+    private QueueReadWatermarks(Map<Long, QueueReadWatermark> watermarksByQueueId) {
+        this.watermarksByQueueId = watermarksByQueueId;
+    }
+
+    static QueueReadWatermarks from(List<QueueReadWatermark> watermarks) {
+        Map<Long, QueueReadWatermark> watermarksByQueueId = new HashMap<>();
+        for (QueueReadWatermark w : watermarks) {
+            watermarksByQueueId.put(w.getQueueId(), w);
+        }
+        return new QueueReadWatermarks(watermarksByQueueId);
+    }
+
+    boolean isEmpty() {
+        return watermarksByQueueId.isEmpty();
+    }
+
+    List<QueueReadWatermark> getWatermarks(List<Long> queueIds) {
+        if (queueIds == null || queueIds.isEmpty()) {
+            return new ArrayList<>(watermarksByQueueId.values());
+        }
+        List<QueueReadWatermark> watermarks = new ArrayList<>();
+        for (Long queueId : queueIds) {
+            QueueReadWatermark w = watermarksByQueueId.get(queueId);
+            if (w != null) {
+                watermarks.add(w);
+            }
+        }
+        return watermarks;
+    }
+
+    /**
+     * @return the Ids of those of the given posts that fall under a watermark (i.e., the only ones that an override
+     * could matter for)
+     */
+    List<Long> findCoveredPostIds(List<StagingPost> stagingPosts) {
+        List<Long> ids = new ArrayList<>();
+        if (stagingPosts != null && !isEmpty()) {
+            for (StagingPost p : stagingPosts) {
+                if (isCovered(p)) {
+                    ids.add(p.getId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces the stored read status of each post with its effective read status.
+     *
+     * @param overriddenPostIds the Ids of the posts whose own read status was set after the watermark on their queue
+     */
+    void applyTo(List<StagingPost> stagingPosts, Set<Long> overriddenPostIds) {
+        if (stagingPosts == null || isEmpty()) {
+            return;
+        }
+        for (StagingPost p : stagingPosts) {
+            if (isCovered(p) && !overriddenPostIds.contains(p.getId())) {
+                p.setPostReadStatus(watermarksByQueueId.get(p.getQueueId()).getPostReadStatus());
+            }
+        }
+    }
+
+    private boolean isCovered(StagingPost p) {
+        QueueReadWatermark w = watermarksByQueueId.get(p.getQueueId());
+        if (w == null || p.isPublished()) {
+            return false;
+        }
+        Date imported = p.getImportTimestamp() == null ? p.getCreated() : p.getImportTimestamp();
+        return imported != null && !imported.after(w.getReadBefore());
+    }
+}
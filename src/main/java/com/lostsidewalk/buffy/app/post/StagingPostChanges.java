@@ -0,0 +1,32 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class StagingPostChanges {
+
+    final List<StagingPost> stagingPosts; // created or modified, and still live
+
+    final List<Long> tombstones; // Ids of archived or deleted posts
+
+    final List<QueueReadWatermark> readWatermarks; // current read watermarks on the requested queues
+
+    final StagingPostSyncToken watermark;
+
+    final boolean hasMore;
+
+    private StagingPostChanges(List<StagingPost> stagingPosts, List<Long> tombstones, List<QueueReadWatermark> readWatermarks, StagingPostSyncToken watermark, boolean hasMore) {
+        this.stagingPosts = stagingPosts;
+        this.tombstones = tombstones;
+        this.readWatermarks = readWatermarks;
+        this.watermark = watermark;
+        this.hasMore = hasMore;
+    }
+
+    static StagingPostChanges from(List<StagingPost> stagingPosts, List<Long> tombstones, List<QueueReadWatermark> readWatermarks, StagingPostSyncToken watermark, boolean hasMore) {
+        return new StagingPostChanges(stagingPosts, tombstones, readWatermarks, watermark, hasMore);
+    }
+}
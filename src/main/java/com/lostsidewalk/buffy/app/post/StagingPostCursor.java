@@ -0,0 +1,60 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import jakarta.validation.ValidationException;
+import lombok.Data;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Date;
+
+import static java.lang.Long.parseLong;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.codec.binary.Base64.decodeBase64;
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Position of the last post on a page, in (import_timestamp, id) order.  Clients receive this as an opaque token.
+ */
+@Data
+public class StagingPostCursor {
+
+    final Timestamp importTimestamp;
+
+    final Long id;
+
+    private StagingPostCursor(Timestamp importTimestamp, Long id) {
+        this.importTimestamp = importTimestamp;
+        this.id = id;
+    }
+
+    static StagingPostCursor after(StagingPost stagingPost) {
+        Date importTimestamp = stagingPost.getImportTimestamp() != null ? stagingPost.getImportTimestamp() : stagingPost.getCreated();
+        return new StagingPostCursor(toTimestamp(importTimestamp), stagingPost.getId());
+    }
+
+    static Timestamp toTimestamp(Date d) {
+        return d instanceof Timestamp t ? t : new Timestamp(d.getTime());
+    }
+
+    public String encode() {
+        Instant i = importTimestamp.toInstant();
+        return encodeBase64URLSafeString((i.getEpochSecond() + ":" + i.getNano() + ":" + id).getBytes(UTF_8));
+    }
+
+    public static StagingPostCursor decode(String token) {
+        if (isBlank(token)) {
+            return null;
+        }
+        try {
+            String[] parts = new String(decodeBase64(token), UTF_8).split(":");
+            if (parts.length == 3) {
+                Instant i = Instant.ofEpochSecond(parseLong(parts[0]), parseLong(parts[1]));
+                return new StagingPostCursor(Timestamp.from(i), parseLong(parts[2]));
+            }
+        } catch (NumberFormatException | ArithmeticException ignored) {}
+
+        throw new ValidationException("Invalid page cursor.");
+    }
+}
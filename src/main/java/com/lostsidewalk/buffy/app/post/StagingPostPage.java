@@ -0,0 +1,23 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class StagingPostPage {
+
+    final List<StagingPost> stagingPosts;
+
+    final StagingPostCursor nextCursor; // null on the last page
+
+    private StagingPostPage(List<StagingPost> stagingPosts, StagingPostCursor nextCursor) {
+        this.stagingPosts = stagingPosts;
+        this.nextCursor = nextCursor;
+    }
+
+    static StagingPostPage from(List<StagingPost> stagingPosts, StagingPostCursor nextCursor) {
+        return new StagingPostPage(stagingPosts, nextCursor);
+    }
+}
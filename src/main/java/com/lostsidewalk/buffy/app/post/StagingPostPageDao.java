@@ -0,0 +1,202 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import com.lostsidewalk.buffy.post.*;
+import com.lostsidewalk.buffy.post.StagingPost.PostPubStatus;
+import com.lostsidewalk.buffy.post.StagingPost.PostReadStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.lostsidewalk.buffy.app.utils.TransactionHorizonSql.TRANSACTION_HORIZON_SQL;
+import static java.util.Collections.nCopies;
+import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Keyset-paged reads of the staging_posts table: newest-first on (import_timestamp, id) for browsing, and
+ * oldest-first on (coalesce(last_modified, created), id) for incremental sync.
+ */
+@Slf4j
+@Component
+public class StagingPostPageDao {
+
+    private static final Gson GSON = new Gson();
+
+    private static final Type LIST_OF_CONTENT_OBJECTS = new TypeToken<ArrayList<ContentObject>>() {}.getType();
+
+    private static final Type LIST_OF_POST_URLS = new TypeToken<ArrayList<PostUrl>>() {}.getType();
+
+    private static final Type LIST_OF_POST_PERSONS = new TypeToken<ArrayList<PostPerson>>() {}.getType();
+
+    private static final Type LIST_OF_STRINGS = new TypeToken<ArrayList<String>>() {}.getType();
+
+    private static final Type LIST_OF_POST_ENCLOSURES = new TypeToken<ArrayList<PostEnclosure>>() {}.getType();
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${newsgears.transactionHorizon.writerRoles}")
+    String horizonWriterRoles;
+
+    @Value("${newsgears.transactionHorizon.maxLagSecs}")
+    int horizonMaxLagSecs;
+
+    static final String IMPORT_ORDER_EXPR = "coalesce(import_timestamp, created)";
+
+    static final String MODIFIED_ORDER_EXPR = "coalesce(last_modified, created)";
+
+    /**
+     * Maps staging_posts rows the same way as StagingPostDao does; timestamps are kept as Timestamps, so that keyset
+     * positions built from them keep their microsecond precision.
+     */
+    final RowMapper<StagingPost> STAGING_POST_ROW_MAPPER = (rs, rowNum) -> {
+        StagingPost p = StagingPost.from(
+                rs.getString("importer_id"),
+                rs.getLong("queue_id"),
+                rs.getString("importer_desc"),
+                rs.getLong("subscription_id"),
+                fromJson(rs.getString("post_title"), ContentObject.class),
+                fromJson(rs.getString("post_desc"), ContentObject.class),
+                fromJson(rs.getString("post_contents"), LIST_OF_CONTENT_OBJECTS),
+                fromJson(rs.getString("post_media"), PostMedia.class),
+                fromJson(rs.getString("post_itunes"), PostITunes.class),
+                rs.getString("post_url"),
+                fromJson(rs.getString("post_urls"), LIST_OF_POST_URLS),
+                rs.getString("post_img_url"),
+                rs.getTimestamp("import_timestamp"),
+                rs.getString("post_hash"),
+                rs.getString("username"),
+                rs.getString("post_comment"),
+                rs.getString("post_rights"),
+                fromJson(rs.getString("contributors"), LIST_OF_POST_PERSONS),
+                fromJson(rs.getString("authors"), LIST_OF_POST_PERSONS),
+                fromJson(rs.getString("post_categories"), LIST_OF_STRINGS),
+                rs.getTimestamp("publish_timestamp"),
+                rs.getTimestamp("expiration_timestamp"),
+                fromJson(rs.getString("enclosures"), LIST_OF_POST_ENCLOSURES),
+                rs.getTimestamp("last_updated_timestamp")
+        );
+        p.setId(rs.getLong("id"));
+        p.setPostImgTransportIdent(rs.getString("post_img_transport_ident"));
+        p.setPublished(rs.getBoolean("is_published"));
+        String postReadStatus = rs.getString("post_read_status");
+        if (isNotBlank(postReadStatus)) {
+            p.setPostReadStatus(PostReadStatus.valueOf(postReadStatus));
+        }
+        String postPubStatus = rs.getString("post_pub_status");
+        if (isNotBlank(postPubStatus)) {
+            p.setPostPubStatus(PostPubStatus.valueOf(postPubStatus));
+        }
+        p.setCreated(rs.getTimestamp("created"));
+        p.setLastModified(rs.getTimestamp("last_modified"));
+        p.setArchived(rs.getBoolean("is_archived"));
+
+        return p;
+    };
+
+    private static <T> T fromJson(String json, Type type) {
+        return json == null ? null : GSON.fromJson(json, type);
+    }
+
+    private static void appendQueueIdFilter(StringBuilder sql, List<Object> args, List<Long> queueIds) {
+        if (isNotEmpty(queueIds)) {
+            sql.append(" and queue_id in (").append(String.join(",", nCopies(queueIds.size(), "?"))).append(")");
+            args.addAll(queueIds);
+        }
+    }
+
+    public List<StagingPost> findPageByUser(String username, List<Long> queueIds, StagingPostCursor after, int limit) throws DataAccessException {
+        StringBuilder sql = new StringBuilder("select * from staging_posts where username = ? and is_archived is false");
+        List<Object> args = new ArrayList<>();
+        args.add(username);
+        appendQueueIdFilter(sql, args, queueIds);
+        if (after != null) {
+            sql.append(" and (").append(IMPORT_ORDER_EXPR).append(", id) < (?, ?)");
+            args.add(after.getImportTimestamp());
+            args.add(after.getId());
+        }
+        sql.append(" order by ").append(IMPORT_ORDER_EXPR).append(" desc, id desc limit ?");
+        args.add(limit);
+        try {
+            return jdbcTemplate.query(sql.toString(), STAGING_POST_ROW_MAPPER, args.toArray());
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findPageByUser", e.getMessage(), username, queueIds, after, limit);
+        }
+    }
+
+    public List<StagingPost> findModifiedSince(String username, List<Long> queueIds, StagingPostSyncToken since, int limit) throws DataAccessException {
+        StringBuilder sql = new StringBuilder("select * from staging_posts where username = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(username);
+        appendQueueIdFilter(sql, args, queueIds);
+        sql.append(" and (").append(MODIFIED_ORDER_EXPR).append(", id) > (?, ?)");
+        args.add(since.getModified());
+        args.add(since.getPostId());
+        sql.append(" order by ").append(MODIFIED_ORDER_EXPR).append(", id limit ?");
+        args.add(limit);
+        try {
+            return jdbcTemplate.query(sql.toString(), STAGING_POST_ROW_MAPPER, args.toArray());
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findModifiedSince", e.getMessage(), username, queueIds, since, limit);
+        }
+    }
+
+    final RowMapper<StagingPostTombstone> TOMBSTONE_ROW_MAPPER = (rs, rowNum) -> StagingPostTombstone.from(
+            rs.getLong("id"),
+            rs.getLong("post_id"),
+            rs.getLong("queue_id"),
+            rs.getTimestamp("deleted")
+    );
+
+    public List<StagingPostTombstone> findTombstonesSince(String username, List<Long> queueIds, StagingPostSyncToken since, int limit) throws DataAccessException {
+        StringBuilder sql = new StringBuilder("select * from staging_post_tombstones where username = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(username);
+        appendQueueIdFilter(sql, args, queueIds);
+        sql.append(" and (deleted, id) > (?, ?) order by deleted, id limit ?");
+        args.add(since.getDeleted());
+        args.add(since.getTombstoneId());
+        args.add(limit);
+        try {
+            return jdbcTemplate.query(sql.toString(), TOMBSTONE_ROW_MAPPER, args.toArray());
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findTombstonesSince", e.getMessage(), username, queueIds, since, limit);
+        }
+    }
+
+    public Timestamp findSyncHorizon(int marginSecs) throws DataAccessException {
+        try {
+            return jdbcTemplate.queryForObject(TRANSACTION_HORIZON_SQL, Timestamp.class, horizonWriterRoles, horizonMaxLagSecs, marginSecs);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findSyncHorizon", e.getMessage(), marginSecs);
+        }
+    }
+
+    private static final String PURGE_TOMBSTONES_SQL = "delete from staging_post_tombstones where deleted < ?";
+
+    public int purgeTombstones(Date cutoff) throws DataUpdateException {
+        try {
+            return jdbcTemplate.update(PURGE_TOMBSTONES_SQL, new Timestamp(cutoff.getTime()));
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "purgeTombstones", e.getMessage(), cutoff);
+        }
+    }
+}
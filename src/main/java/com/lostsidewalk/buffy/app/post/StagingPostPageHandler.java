@@ -0,0 +1,12 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+
+import java.io.IOException;
+import java.util.List;
+
+@FunctionalInterface
+public interface StagingPostPageHandler {
+
+    void handlePage(List<StagingPost> stagingPosts) throws IOException;
+}
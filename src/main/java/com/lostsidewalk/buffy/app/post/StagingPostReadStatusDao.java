@@ -0,0 +1,119 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import com.lostsidewalk.buffy.post.StagingPost.PostReadStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.sql.Types.VARCHAR;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Set-based read-status writes against the staging_posts table, and the per-queue read watermarks that stand in
+ * for marking a whole queue read row-by-row.
+ * <p>
+ * Note that marking a queue read doesn't touch staging_posts.post_read_status, so that column alone is no longer a
+ * post's read status: anything reading staging_posts directly has to resolve it against queue_read_watermarks (see
+ * QueueReadWatermarks, and staging_posts_effective_read_status() on the database side).
+ */
+@Slf4j
+@Component
+public class StagingPostReadStatusDao {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private static final String UPDATE_POST_READ_STATUS_BY_IDS_SQL =
+            "update staging_posts set post_read_status = ? where username = ? and id = any(?) returning id";
+
+    /**
+     * @return the Ids of the posts that were actually updated
+     */
+    public List<Long> updatePostReadStatus(String username, List<Long> ids, PostReadStatus newStatus) throws DataUpdateException {
+        try {
+            return jdbcTemplate.query(UPDATE_POST_READ_STATUS_BY_IDS_SQL,
+                    ps -> {
+                        if (newStatus == null) {
+                            ps.setNull(1, VARCHAR);
+                        } else {
+                            ps.setString(1, newStatus.name());
+                        }
+                        ps.setString(2, username);
+                        ps.setArray(3, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+                    },
+                    (rs, rowNum) -> rs.getLong("id"));
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "updatePostReadStatus", e.getMessage(), username, ids, newStatus);
+        }
+    }
+
+    private static final String UPSERT_QUEUE_READ_WATERMARK_SQL = "insert into queue_read_watermarks (queue_id, username, read_before, post_read_status, marked_at) "
+            + "select id, username, current_timestamp, ?, current_timestamp from queue_definitions where id = ? and username = ? "
+            + "on conflict (queue_id) do update set read_before = excluded.read_before, post_read_status = excluded.post_read_status, marked_at = excluded.marked_at";
+
+    /**
+     * Marks every post currently in the queue with the given read status, in a single-row write.
+     *
+     * @return the number of watermarks written (0 if the queue doesn't belong to the user)
+     */
+    public int upsertQueueReadWatermark(String username, Long queueId, PostReadStatus newStatus) throws DataUpdateException {
+        try {
+            return jdbcTemplate.update(UPSERT_QUEUE_READ_WATERMARK_SQL, newStatus == null ? null : newStatus.name(), queueId, username);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "upsertQueueReadWatermark", e.getMessage(), username, queueId, newStatus);
+        }
+    }
+
+    private static final String FIND_QUEUE_READ_WATERMARKS_SQL = "select * from queue_read_watermarks where username = ?";
+
+    public List<QueueReadWatermark> findQueueReadWatermarks(String username) throws DataAccessException {
+        try {
+            return jdbcTemplate.query(FIND_QUEUE_READ_WATERMARKS_SQL, (rs, rowNum) -> {
+                String postReadStatus = rs.getString("post_read_status");
+                return QueueReadWatermark.from(
+                        rs.getLong("queue_id"),
+                        rs.getTimestamp("read_before"),
+                        isNotBlank(postReadStatus) ? PostReadStatus.valueOf(postReadStatus) : null,
+                        rs.getTimestamp("marked_at"));
+            }, username);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findQueueReadWatermarks", e.getMessage(), username);
+        }
+    }
+
+    private static final String FIND_WATERMARK_OVERRIDES_SQL = "select s.id from staging_posts s "
+            + "join queue_read_watermarks w on w.queue_id = s.queue_id "
+            + "where w.username = ? and s.id = any(?) and s.post_read_status_modified > w.marked_at";
+
+    /**
+     * @return the Ids of those of the given posts whose own read status was set after the watermark on their queue
+     */
+    public Set<Long> findWatermarkOverrides(String username, List<Long> ids) throws DataAccessException {
+        Set<Long> results = new HashSet<>();
+        try {
+            jdbcTemplate.query(FIND_WATERMARK_OVERRIDES_SQL,
+                    ps -> {
+                        ps.setString(1, username);
+                        ps.setArray(2, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+                    },
+                    rs -> {
+                        results.add(rs.getLong("id"));
+                    });
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findWatermarkOverrides", e.getMessage(), username, ids);
+        }
+
+        return results;
+    }
+}
@@ -2,25 +2,65 @@ package com.lostsidewalk.buffy.app.post;
 
 import com.lostsidewalk.buffy.DataAccessException;
 import com.lostsidewalk.buffy.DataUpdateException;
+import com.lostsidewalk.buffy.app.audit.ErrorLogService;
+import com.lostsidewalk.buffy.app.model.request.PostBulkStatusUpdateRequest;
 import com.lostsidewalk.buffy.app.model.request.PostStatusUpdateRequest;
 import com.lostsidewalk.buffy.post.StagingPost;
 import com.lostsidewalk.buffy.post.StagingPost.PostReadStatus;
 import com.lostsidewalk.buffy.post.StagingPostDao;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.currentTimeMillis;
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.DAYS;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
+import static org.apache.commons.collections4.CollectionUtils.size;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+@Slf4j
 @Service
 public class StagingPostService {
 
+    @Autowired
+    ErrorLogService errorLogService;
+
     @Autowired
     StagingPostDao stagingPostDao;
 
+    @Autowired
+    StagingPostPageDao stagingPostPageDao;
+
+    @Autowired
+    StagingPostReadStatusDao stagingPostReadStatusDao;
+
+    @Autowired
+    QueuePostCountsDao queuePostCountsDao;
+
+    @Value("${newsgears.staging.defaultPageSize}")
+    int defaultPageSize;
+
+    @Value("${newsgears.staging.maxPageSize}")
+    int maxPageSize;
+
+    @Value("${newsgears.staging.tombstoneRetentionDays}")
+    int tombstoneRetentionDays;
+
+    @Value("${newsgears.staging.syncHorizonMarginSecs}")
+    int syncHorizonMarginSecs;
+
     public List<StagingPost> getStagingPosts(String username, List<Long> queueIds) throws DataAccessException {
         List<StagingPost> list;
         if (isEmpty(queueIds)) {
@@ -28,12 +68,154 @@ public class StagingPostService {
         } else {
             list = stagingPostDao.findByUserAndQueueIds(username, queueIds);
         }
+        if (list != null) {
+            applyReadWatermarks(username, findReadWatermarks(username), list);
+            return list;
+        }
+        return emptyList();
+    }
+
+    public StagingPostPage getStagingPostPage(String username, List<Long> queueIds, String cursor, Integer limit) throws DataAccessException {
+        StagingPostCursor after = StagingPostCursor.decode(cursor);
+        int pageSize = toPageSize(limit);
+        // fetch one extra row to find out whether there is a next page
+        List<StagingPost> list = stagingPostPageDao.findPageByUser(username, queueIds, after, pageSize + 1);
+        if (list == null) {
+            return StagingPostPage.from(emptyList(), null);
+        }
+        QueueReadWatermarks readWatermarks = findReadWatermarks(username);
+        if (list.size() > pageSize) {
+            List<StagingPost> page = list.subList(0, pageSize);
+            applyReadWatermarks(username, readWatermarks, page);
+            return StagingPostPage.from(page, StagingPostCursor.after(page.get(pageSize - 1)));
+        }
+        applyReadWatermarks(username, readWatermarks, list);
+        return StagingPostPage.from(list, null);
+    }
+
+    /**
+     * Walks all of the user's (live) staging posts one keyset page at a time, so that only a single page is held in memory.
+     *
+     * @return the number of posts handled
+     */
+    public int streamStagingPosts(String username, List<Long> queueIds, StagingPostPageHandler handler) throws DataAccessException, IOException {
+        QueueReadWatermarks readWatermarks = findReadWatermarks(username);
+        int postCt = 0;
+        StagingPostCursor after = null;
+        do {
+            List<StagingPost> page = stagingPostPageDao.findPageByUser(username, queueIds, after, defaultPageSize);
+            if (isEmpty(page)) {
+                break;
+            }
+            after = page.size() < defaultPageSize ? null : StagingPostCursor.after(page.get(page.size() - 1));
+            applyReadWatermarks(username, readWatermarks, page);
+            handler.handlePage(page);
+            postCt += page.size();
+        } while (after != null);
+
+        return postCt;
+    }
+
+    public StagingPostChanges getStagingPostChanges(String username, List<Long> queueIds, String since, Integer limit) throws DataAccessException {
+        StagingPostSyncToken sinceToken = StagingPostSyncToken.decode(since);
+        int pageSize = toPageSize(limit);
+        // (taken before the reads, so that anything stamped before it that commits in the meantime is still seen)
+        Timestamp horizon = stagingPostPageDao.findSyncHorizon(syncHorizonMarginSecs);
+        // fetch one extra row (of each kind) to find out whether there are more changes to pick up
+        List<StagingPost> modified = stagingPostPageDao.findModifiedSince(username, queueIds, sinceToken, pageSize + 1);
+        List<StagingPostTombstone> deleted = stagingPostPageDao.findTombstonesSince(username, queueIds, sinceToken, pageSize + 1);
+        boolean morePosts = size(modified) > pageSize;
+        if (morePosts) {
+            modified = modified.subList(0, pageSize);
+        }
+        boolean moreTombstones = size(deleted) > pageSize;
+        if (moreTombstones) {
+            deleted = deleted.subList(0, pageSize);
+        }
+        StagingPostSyncToken watermark = sinceToken.advance(modified, deleted, horizon);
+        // only when the watermark made it to the end of a full page; otherwise the next call would just repeat this one
+        boolean hasMore = (morePosts && watermark.isPast(modified.get(pageSize - 1)))
+                || (moreTombstones && watermark.isPast(deleted.get(pageSize - 1)));
+        QueueReadWatermarks readWatermarks = findReadWatermarks(username);
+        applyReadWatermarks(username, readWatermarks, modified);
+        List<StagingPost> stagingPosts = new ArrayList<>();
+        List<Long> tombstones = new ArrayList<>();
+        if (modified != null) {
+            for (StagingPost p : modified) {
+                if (p.isArchived()) {
+                    tombstones.add(p.getId());
+                } else {
+                    stagingPosts.add(p);
+                }
+            }
+        }
+        if (deleted != null) {
+            for (StagingPostTombstone t : deleted) {
+                tombstones.add(t.getPostId());
+            }
+        }
+
+        return StagingPostChanges.from(stagingPosts, tombstones, readWatermarks.getWatermarks(queueIds), watermark, hasMore);
+    }
+
+    private QueueReadWatermarks findReadWatermarks(String username) throws DataAccessException {
+        List<QueueReadWatermark> watermarks = stagingPostReadStatusDao.findQueueReadWatermarks(username);
+        if (isEmpty(watermarks)) {
+            return QueueReadWatermarks.NONE;
+        }
+        return QueueReadWatermarks.from(watermarks);
+    }
+
+    /**
+     * Queue read watermarks aren't reflected in staging_posts.post_read_status, so every read path runs its posts
+     * through this to get their effective read status.  Overrides are only looked up for the posts that fall under
+     * a watermark.
+     */
+    private void applyReadWatermarks(String username, QueueReadWatermarks readWatermarks, List<StagingPost> stagingPosts) throws DataAccessException {
+        List<Long> coveredPostIds = readWatermarks.findCoveredPostIds(stagingPosts);
+        if (coveredPostIds.isEmpty()) {
+            return;
+        }
+        readWatermarks.applyTo(stagingPosts, stagingPostReadStatusDao.findWatermarkOverrides(username, coveredPostIds));
+    }
+
+    public List<QueuePostCounts> getQueuePostCounts(String username) throws DataAccessException {
+        List<QueuePostCounts> list = queuePostCountsDao.findByUser(username);
         if (list != null) {
             return list;
         }
         return emptyList();
     }
 
+    /**
+     * The counters are kept current by triggers on staging_posts; this corrects any drift (e.g., from concurrent
+     * watermark moves) and drops the counters of deleted queues.
+     */
+    @Scheduled(fixedDelay = 3_600_000, initialDelay = 600_000)
+    public void reconcileQueuePostCounts() {
+        try {
+            int queueCt = queuePostCountsDao.reconcileAll();
+            log.info("Reconciled queue post counts: queueCt={}", queueCt);
+        } catch (DataUpdateException e) {
+            errorLogService.logDataUpdateException("sys", new Date(), e);
+        }
+    }
+
+    private int toPageSize(Integer limit) {
+        return limit == null ? defaultPageSize : max(1, min(limit, maxPageSize));
+    }
+
+    @Scheduled(fixedDelay = 86_400_000, initialDelay = 480_000)
+    public void purgeTombstones() {
+        Date cutoff = new Date(currentTimeMillis() - DAYS.toMillis(tombstoneRetentionDays));
+        try {
+            int purgeCt = stagingPostPageDao.purgeTombstones(cutoff);
+            log.info("Purged staging post tombstones: cutoff={}, purgeCt={}", cutoff, purgeCt);
+        } catch (DataUpdateException e) {
+            errorLogService.logDataUpdateException("sys", new Date(), e);
+        }
+    }
+
     public void updatePostReadStatus(String username, Long id, PostStatusUpdateRequest postStatusUpdateRequest) throws DataAccessException, DataUpdateException {
         PostReadStatus newStatus = null;
         if (isNotBlank(postStatusUpdateRequest.getNewStatus())) {
@@ -45,7 +227,33 @@ public class StagingPostService {
         stagingPostDao.updatePostReadStatus(username, id, newStatus);
     }
 
-    public void updateQueueReadStatus(String username, Long id, PostStatusUpdateRequest postStatusUpdateRequest) throws DataAccessException, DataUpdateException {
+    /**
+     * Applies the same read status to all of the given posts in a single statement.
+     *
+     * @return the Ids of the posts that were updated; Ids that don't belong to the user are absent
+     */
+    public List<Long> updatePostReadStatus(String username, PostBulkStatusUpdateRequest postBulkStatusUpdateRequest) throws DataUpdateException {
+        PostReadStatus newStatus = null;
+        if (isNotBlank(postBulkStatusUpdateRequest.getNewStatus())) {
+            newStatus = PostReadStatus.valueOf(postBulkStatusUpdateRequest.getNewStatus());
+        }
+        List<Long> ids = postBulkStatusUpdateRequest.getIds().stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return emptyList();
+        }
+        //
+        // perform the update
+        //
+        return stagingPostReadStatusDao.updatePostReadStatus(username, ids, newStatus);
+    }
+
+    /**
+     * Applies the read status to every post currently in the queue by moving the queue's read watermark, rather than
+     * rewriting each post; statuses set on individual posts afterwards take precedence.
+     *
+     * @return the number of watermarks written (0 if the queue doesn't belong to the user)
+     */
+    public int updateQueueReadStatus(String username, Long id, PostStatusUpdateRequest postStatusUpdateRequest) throws DataUpdateException {
         PostReadStatus newStatus = null;
         if (isNotBlank(postStatusUpdateRequest.getNewStatus())) {
             newStatus = PostReadStatus.valueOf(postStatusUpdateRequest.getNewStatus());
@@ -53,6 +261,12 @@ public class StagingPostService {
         //
         // perform the update
         //
-        stagingPostDao.updateQueueReadStatus(username, id, newStatus);
+        int rowsUpdated = stagingPostReadStatusDao.upsertQueueReadWatermark(username, id, newStatus);
+        if (rowsUpdated > 0) {
+            // the watermark changes the effective status of many posts at once, so recount the queue
+            queuePostCountsDao.reconcileQueue(username, id);
+        }
+
+        return rowsUpdated;
     }
 }
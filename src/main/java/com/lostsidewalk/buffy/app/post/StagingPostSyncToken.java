@@ -0,0 +1,114 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import jakarta.validation.ValidationException;
+import lombok.Data;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import static com.lostsidewalk.buffy.app.post.StagingPostCursor.toTimestamp;
+import static java.lang.Long.parseLong;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.codec.binary.Base64.decodeBase64;
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Sync watermark: the last (coalesce(last_modified, created), id) position seen in staging_posts, plus the
+ * last (deleted, id) position seen in staging_post_tombstones.  Clients receive this as an opaque token.
+ * <p>
+ * Both positions are stamped with the start of the writing transaction, which may commit well after later-stamped
+ * rows do; so the watermark only ever moves past rows stamped before the sync horizon (i.e., before every transaction
+ * still in flight started).  Rows past the horizon are sent, but sent again on the next call.
+ */
+@Data
+public class StagingPostSyncToken {
+
+    static final StagingPostSyncToken INITIAL = new StagingPostSyncToken(new Timestamp(0L), 0L, new Timestamp(0L), 0L);
+
+    final Timestamp modified;
+
+    final Long postId;
+
+    final Timestamp deleted;
+
+    final Long tombstoneId;
+
+    private StagingPostSyncToken(Timestamp modified, Long postId, Timestamp deleted, Long tombstoneId) {
+        this.modified = modified;
+        this.postId = postId;
+        this.deleted = deleted;
+        this.tombstoneId = tombstoneId;
+    }
+
+    /**
+     * @return this watermark, moved past each of the given (position-ordered) posts and tombstones that were stamped
+     * before the horizon; it stops at the first one that wasn't
+     */
+    StagingPostSyncToken advance(List<StagingPost> posts, List<StagingPostTombstone> tombstones, Timestamp horizon) {
+        Timestamp modified = this.modified;
+        Long postId = this.postId;
+        if (posts != null) {
+            for (StagingPost p : posts) {
+                Timestamp t = toTimestamp(modifiedOf(p));
+                if (!t.before(horizon)) {
+                    break;
+                }
+                modified = t;
+                postId = p.getId();
+            }
+        }
+        Timestamp deleted = this.deleted;
+        Long tombstoneId = this.tombstoneId;
+        if (tombstones != null) {
+            for (StagingPostTombstone t : tombstones) {
+                Timestamp d = toTimestamp(t.getDeleted());
+                if (!d.before(horizon)) {
+                    break;
+                }
+                deleted = d;
+                tombstoneId = t.getId();
+            }
+        }
+        return new StagingPostSyncToken(modified, postId, deleted, tombstoneId);
+    }
+
+    boolean isPast(StagingPost post) {
+        return post != null && Objects.equals(postId, post.getId());
+    }
+
+    boolean isPast(StagingPostTombstone tombstone) {
+        return tombstone != null && Objects.equals(tombstoneId, tombstone.getId());
+    }
+
+    private static Date modifiedOf(StagingPost p) {
+        return p.getLastModified() != null ? p.getLastModified() : p.getCreated();
+    }
+
+    public String encode() {
+        Instant m = modified.toInstant();
+        Instant d = deleted.toInstant();
+        return encodeBase64URLSafeString((m.getEpochSecond() + ":" + m.getNano() + ":" + postId + ":"
+                + d.getEpochSecond() + ":" + d.getNano() + ":" + tombstoneId).getBytes(UTF_8));
+    }
+
+    public static StagingPostSyncToken decode(String token) {
+        if (isBlank(token)) {
+            return INITIAL;
+        }
+        try {
+            String[] parts = new String(decodeBase64(token), UTF_8).split(":");
+            if (parts.length == 6) {
+                Instant m = Instant.ofEpochSecond(parseLong(parts[0]), parseLong(parts[1]));
+                Instant d = Instant.ofEpochSecond(parseLong(parts[3]), parseLong(parts[4]));
+                return new StagingPostSyncToken(Timestamp.from(m), parseLong(parts[2]), Timestamp.from(d), parseLong(parts[5]));
+            }
+        } catch (NumberFormatException | ArithmeticException ignored) {}
+
+        throw new ValidationException("Invalid sync token.");
+    }
+}
@@ -0,0 +1,28 @@
+package com.lostsidewalk.buffy.app.post;
+
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+public class StagingPostTombstone {
+
+    final Long id;
+
+    final Long postId;
+
+    final Long queueId;
+
+    final Date deleted;
+
+    private StagingPostTombstone(Long id, Long postId, Long queueId, Date deleted) {
+        this.id = id;
+        this.postId = postId;
+        this.queueId = queueId;
+        this.deleted = deleted;
+    }
+
+    static StagingPostTombstone from(Long id, Long postId, Long queueId, Date deleted) {
+        return new StagingPostTombstone(id, postId, queueId, deleted);
+    }
+}
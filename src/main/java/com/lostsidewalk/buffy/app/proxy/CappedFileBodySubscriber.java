@@ -0,0 +1,199 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+import static java.lang.System.nanoTime;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
+
+/**
+ * Streams a response body into a temporary file, hashing it on the way, so that the body is never held on the heap.
+ * Gives up (and removes the file) once the body passes maxBytes, or if no part of it arrives for idleTimeoutMs.  The
+ * head of the body is kept to work out the content type, if the origin doesn't send an image type.
+ */
+@Slf4j
+class CappedFileBodySubscriber implements BodySubscriber<ProxyDownload> {
+
+    static class ContentTooLargeException extends IOException {
+
+        ContentTooLargeException(long maxBytes) {
+            super(String.format("Image exceeds the proxy size limit: maxBytes=%d", maxBytes));
+        }
+    }
+
+    private final Path dir;
+
+    private final long maxBytes;
+
+    private final long idleTimeoutMs;
+
+    private final long declaredLength; // -1 if not declared
+
+    private final String declaredContentType;
+
+    private final String contentEncoding;
+
+    private final ProxyValidators validators;
+
+    private final CompletableFuture<ProxyDownload> result = new CompletableFuture<>();
+
+    private final Hasher hasher = Hashing.sha256().newHasher();
+
+    private Flow.Subscription subscription;
+
+    private Path path;
+
+    private FileChannel fileChannel;
+
+    private long contentLength;
+
+    private final byte[] head = new byte[ImageContentTypes.SNIFF_BYTES];
+
+    private int headLength;
+
+    private volatile long lastReceived; // (nanoTime)
+
+    CappedFileBodySubscriber(Path dir, long maxBytes, long idleTimeoutMs, HttpHeaders headers, ProxyValidators validators) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.declaredLength = headers.firstValueAsLong("Content-Length").orElse(-1L);
+        this.declaredContentType = headers.firstValue("Content-Type").orElse(null);
+        this.contentEncoding = headers.firstValue("Content-Encoding").filter(e -> !equalsIgnoreCase(e, "identity")).orElse(null);
+        this.validators = validators;
+    }
+
+    @Override
+    public CompletionStage<ProxyDownload> getBody() {
+        return result;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (declaredLength > maxBytes) {
+            // don't bother reading a body that we already know we won't keep
+            subscription.cancel();
+            fail(new ContentTooLargeException(maxBytes));
+            return;
+        }
+        try {
+            this.path = Files.createTempFile(dir, "download-", ".tmp");
+            this.fileChannel = FileChannel.open(path, WRITE);
+        } catch (IOException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+        lastReceived = nanoTime();
+        scheduleIdleCheck(idleTimeoutMs);
+        subscription.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(List<ByteBuffer> items) {
+        if (result.isDone()) {
+            return;
+        }
+        lastReceived = nanoTime();
+        try {
+            for (ByteBuffer item : items) {
+                contentLength += item.remaining();
+                if (contentLength > maxBytes) {
+                    subscription.cancel();
+                    fail(new ContentTooLargeException(maxBytes));
+                    return;
+                }
+                hasher.putBytes(item.duplicate());
+                if (headLength < head.length) {
+                    int n = Math.min(head.length - headLength, item.remaining());
+                    item.duplicate().get(head, headLength, n);
+                    headLength += n;
+                }
+                while (item.hasRemaining()) {
+                    fileChannel.write(item);
+                }
+            }
+        } catch (IOException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        fail(t);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        String contentType = contentEncoding == null ?
+                ImageContentTypes.resolve(declaredContentType, head, headLength) :
+                ImageContentTypes.resolve(declaredContentType, head, 0); // (can't sniff an encoded body)
+        result.complete(ProxyDownload.from(path, hasher.hash().toString(), contentLength, contentType, contentEncoding, validators));
+    }
+
+    private void scheduleIdleCheck(long delayMs) {
+        delayedExecutor(delayMs, MILLISECONDS).execute(this::checkIdle);
+    }
+
+    private synchronized void checkIdle() {
+        if (result.isDone()) {
+            return;
+        }
+        long idleMs = NANOSECONDS.toMillis(nanoTime() - lastReceived);
+        if (idleMs < idleTimeoutMs) {
+            scheduleIdleCheck(idleTimeoutMs - idleMs);
+            return;
+        }
+        // (a stalled origin would otherwise hold its fetch slot and the file open indefinitely)
+        subscription.cancel();
+        fail(new HttpTimeoutException(String.format("Image download stalled: idleTimeoutMs=%d", idleTimeoutMs)));
+    }
+
+    private void fail(Throwable t) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to clean up partial image download, path={}, message={}", path, e.getMessage());
+        }
+        result.completeExceptionally(t);
+    }
+}
@@ -0,0 +1,56 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.apache.commons.lang3.StringUtils.*;
+
+/**
+ * Works out the media type of a proxied image, from the origin's Content-Type or failing that, the first bytes.
+ */
+class ImageContentTypes {
+
+    static final int SNIFF_BYTES = 256;
+
+    /**
+     * @return the declared type if it's an image type, else the type sniffed from the (unencoded) head of the body, else null
+     */
+    static String resolve(String declaredContentType, byte[] head, int headLength) {
+        if (startsWithIgnoreCase(strip(declaredContentType), "image/")) {
+            return strip(declaredContentType);
+        }
+        return sniff(head, headLength);
+    }
+
+    static String sniff(byte[] head, int n) {
+        if (startsWith(head, n, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        } else if (startsWith(head, n, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        } else if (startsWith(head, n, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        } else if (startsWith(head, n, 'R', 'I', 'F', 'F') && n >= 12 && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        } else if (n >= 12 && head[4] == 'f' && head[5] == 't' && head[6] == 'y' && head[7] == 'p' && head[8] == 'a' && head[9] == 'v' && head[10] == 'i') {
+            return "image/avif"; // (avif or avis)
+        } else if (startsWith(head, n, 0x00, 0x00, 0x01, 0x00)) {
+            return "image/x-icon";
+        } else if (startsWith(head, n, 'B', 'M')) {
+            return "image/bmp";
+        } else if (containsIgnoreCase(new String(head, 0, n, StandardCharsets.ISO_8859_1), "<svg")) {
+            return "image/svg+xml";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int n, int... magic) {
+        if (n < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static java.lang.Boolean.TRUE;
+import static java.lang.Math.max;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+
+/**
+ * Warms the proxy cache in the background with images that clients are about to ask for (i.e., those referenced by
+ * posts that were just served).  Holds at most maxQueued images, highest priority (newest post) first; when full, lower
+ * priority images give way to higher priority ones.  At most maxConcurrent prefetches run at once, so that warming
+ * never takes more than a slice of the origin fetch capacity.  Images queued in the last few minutes aren't queued
+ * again.
+ */
+@Slf4j
+class ImagePrefetchQueue {
+
+    private record Item(String url, int width, long priority, long seq) {
+
+        String key() {
+            return width + " " + url;
+        }
+    }
+
+    private static final Comparator<Item> ORDER = Comparator.comparingLong(Item::priority).reversed()
+            .thenComparingLong(Item::seq);
+
+    private final int maxQueued;
+
+    private final int maxConcurrent;
+
+    private final Executor executor;
+
+    private final BiFunction<String, Integer, CompletableFuture<?>> prefetcher;
+
+    private final TreeSet<Item> queue = new TreeSet<>(ORDER);
+
+    private final Map<String, Item> queuedByKey = new HashMap<>();
+
+    private final Cache<String, Boolean> recentlyQueued;
+
+    private long seq;
+
+    private int running;
+
+    private long dropped;
+
+    ImagePrefetchQueue(int maxQueued, int maxConcurrent, long recentTtlSecs, Executor executor,
+                       BiFunction<String, Integer, CompletableFuture<?>> prefetcher) {
+        this.maxQueued = maxQueued;
+        this.maxConcurrent = maxConcurrent;
+        this.executor = executor;
+        this.prefetcher = prefetcher;
+        this.recentlyQueued = CacheBuilder.newBuilder()
+                .maximumSize(max(maxQueued, 1) * 10L)
+                .expireAfterWrite(recentTtlSecs, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Queues the image at this URL (at this variant width, 0 for the original) for prefetch, unless it was queued
+     * recently, or the queue is full of higher priority images.
+     */
+    void offer(String url, int width, long priority) {
+        if (maxQueued <= 0) {
+            return;
+        }
+        synchronized (this) {
+            Item item = new Item(url, width, priority, seq++);
+            String key = item.key();
+            if (recentlyQueued.getIfPresent(key) != null || queuedByKey.containsKey(key)) {
+                return;
+            }
+            if (queue.size() >= maxQueued) {
+                Item last = queue.last();
+                if (ORDER.compare(item, last) > 0) {
+                    dropped++;
+                    return;
+                }
+                queue.pollLast();
+                queuedByKey.remove(last.key());
+                recentlyQueued.invalidate(last.key()); // (it was never fetched, so it may be queued again)
+                dropped++;
+            }
+            queue.add(item);
+            queuedByKey.put(key, item);
+            recentlyQueued.put(key, TRUE);
+        }
+        startNext();
+    }
+
+    private void startNext() {
+        Item item;
+        synchronized (this) {
+            if (running >= maxConcurrent || queue.isEmpty()) {
+                return;
+            }
+            item = queue.pollFirst();
+            queuedByKey.remove(item.key());
+            running++;
+        }
+        // (on the executor, so that cache hits don't recurse through startNext)
+        try {
+            executor.execute(() -> prefetch(item));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                running--;
+            }
+        }
+    }
+
+    private void prefetch(Item item) {
+        CompletableFuture<?> f;
+        try {
+            f = prefetcher.apply(item.url(), item.width());
+        } catch (RuntimeException e) {
+            f = failedFuture(e);
+        }
+        f.whenComplete((r, t) -> {
+            if (t != null) {
+                log.debug("Image prefetch failed: url={}, width={}, due to: {}", item.url(), item.width(), t.getMessage());
+            }
+            synchronized (this) {
+                running--;
+            }
+            startNext();
+        });
+    }
+
+    synchronized int getQueued() {
+        return queue.size();
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+}
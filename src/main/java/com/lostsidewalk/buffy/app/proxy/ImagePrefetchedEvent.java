@@ -0,0 +1,21 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import lombok.Data;
+
+/**
+ * Published when the image proxy has prefetched an image into its cache (see ProxyFetchService.prefetchImage), so that
+ * secured posts stored without its dimensions can be secured again.
+ */
+@Data
+public class ImagePrefetchedEvent {
+
+    final String url; // as queued for prefetch, i.e., resolved but not normalized
+
+    private ImagePrefetchedEvent(String url) {
+        this.url = url;
+    }
+
+    public static ImagePrefetchedEvent from(String url) {
+        return new ImagePrefetchedEvent(url);
+    }
+}
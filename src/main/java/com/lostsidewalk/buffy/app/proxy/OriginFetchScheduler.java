@@ -0,0 +1,127 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.app.audit.ProxyCapacityException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+
+/**
+ * Hands out slots for outbound image fetches: at most maxConcurrent in all, and at most maxPerHost to any one origin.
+ * Fetches that can't start right away wait in a per-host queue (without holding a thread), and hosts with waiting
+ * fetches are served round-robin as slots free up, so that one busy origin can't monopolize the fetch capacity.
+ * Prefetches queue against their own (maxQueuedPrefetches) budget, so that warming the cache never takes the queue
+ * slots that client requests need.
+ */
+class OriginFetchScheduler {
+
+    private static final String NO_HOST = "";
+
+    private final int maxConcurrent;
+
+    private final int maxPerHost;
+
+    private final int maxQueued;
+
+    private final int maxQueuedPrefetches;
+
+    private int running;
+
+    private final Map<String, Integer> runningByHost = new HashMap<>();
+
+    // host -> waiting fetches; iteration order is the round-robin order
+    private final LinkedHashMap<String, ArrayDeque<Waiter>> waitingByHost = new LinkedHashMap<>();
+
+    private int queued;
+
+    private int queuedPrefetches;
+
+    private record Waiter(CompletableFuture<Void> slot, boolean isPrefetch) {}
+
+    OriginFetchScheduler(int maxConcurrent, int maxPerHost, int maxQueued, int maxQueuedPrefetches) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+        this.maxQueued = maxQueued;
+        this.maxQueuedPrefetches = maxQueuedPrefetches;
+    }
+
+    /**
+     * @return a future that completes when a fetch from this host may start (every successful acquire must be followed
+     * by a release), or fails with ProxyCapacityException if too many fetches (of the same kind) are already waiting
+     */
+    CompletableFuture<Void> acquire(String host, boolean isPrefetch) {
+        host = Objects.toString(host, NO_HOST);
+        synchronized (this) {
+            boolean isHostWaiting = waitingByHost.containsKey(host); // (first come, first served within a host)
+            if (!isHostWaiting && running < maxConcurrent && runningByHost.getOrDefault(host, 0) < maxPerHost) {
+                start(host);
+                return completedFuture(null);
+            }
+            if (isPrefetch ? queuedPrefetches >= maxQueuedPrefetches : queued >= maxQueued) {
+                return failedFuture(new ProxyCapacityException(isPrefetch ? maxQueuedPrefetches : maxQueued));
+            }
+            CompletableFuture<Void> slot = new CompletableFuture<>();
+            waitingByHost.computeIfAbsent(host, h -> new ArrayDeque<>()).add(new Waiter(slot, isPrefetch));
+            if (isPrefetch) {
+                queuedPrefetches++;
+            } else {
+                queued++;
+            }
+            return slot;
+        }
+    }
+
+    void release(String host) {
+        host = Objects.toString(host, NO_HOST);
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        synchronized (this) {
+            running--;
+            runningByHost.computeIfPresent(host, (h, ct) -> ct > 1 ? ct - 1 : null);
+            //
+            // hand out the free slots round-robin across hosts with waiting fetches
+            //
+            boolean isProgress = true;
+            while (running < maxConcurrent && isProgress) {
+                isProgress = false;
+                for (String waitingHost : List.copyOf(waitingByHost.keySet())) {
+                    if (running >= maxConcurrent) {
+                        break;
+                    }
+                    if (runningByHost.getOrDefault(waitingHost, 0) >= maxPerHost) {
+                        continue;
+                    }
+                    ArrayDeque<Waiter> waiting = waitingByHost.remove(waitingHost);
+                    Waiter waiter = waiting.poll();
+                    started.add(waiter.slot());
+                    if (waiter.isPrefetch()) {
+                        queuedPrefetches--;
+                    } else {
+                        queued--;
+                    }
+                    start(waitingHost);
+                    if (!waiting.isEmpty()) {
+                        waitingByHost.put(waitingHost, waiting); // (to the back of the line)
+                    }
+                    isProgress = true;
+                }
+            }
+        }
+        // (outside the lock, as completing a slot starts the fetch)
+        started.forEach(slot -> slot.complete(null));
+    }
+
+    private void start(String host) {
+        running++;
+        runningByHost.merge(host, 1, Integer::sum);
+    }
+
+    synchronized int getRunning() {
+        return running;
+    }
+
+    synchronized int getQueued() {
+        return queued + queuedPrefetches;
+    }
+}
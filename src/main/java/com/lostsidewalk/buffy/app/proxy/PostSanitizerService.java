@@ -0,0 +1,424 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lostsidewalk.buffy.post.*;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import static com.lostsidewalk.buffy.app.auth.HashingUtils.sha256;
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.getPrefetchPriority;
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.normalizeUrl;
+import static com.lostsidewalk.buffy.app.proxy.ProxyService.resolveImageUrl;
+import static java.lang.Math.max;
+import static java.lang.Runtime.getRuntime;
+import static java.net.URI.create;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
+import static org.apache.commons.collections4.CollectionUtils.size;
+import static org.apache.commons.lang3.StringUtils.*;
+import static org.jsoup.safety.Safelist.relaxed;
+
+/**
+ * Secures staging post content for display: sanitizes post HTML, and points images (in the HTML, and in iTunes,
+ * enclosure and media metadata) at the image proxy.
+ */
+@Slf4j
+@Service
+public class PostSanitizerService {
+
+    @Autowired
+    ProxyService proxyService;
+
+    @Autowired
+    ProxyFetchService proxyFetchService;
+
+    @Value("${newsgears.imageProxyUrlTemplate}")
+    String imageProxyUrlTemplate;
+
+    @Value("${newsgears.proxy.sanitizedHtmlCacheMaxBytes}")
+    long sanitizedHtmlCacheMaxBytes;
+
+    @Value("${newsgears.proxy.sanitizerParallelism}")
+    int sanitizerParallelism; // 0 to size by available processors
+
+    @Value("${newsgears.proxy.sanitizerParallelThreshold}")
+    int sanitizerParallelThreshold; // secure smaller lists on the calling thread
+
+    @Value("${newsgears.proxy.inlineImageWidth}")
+    int inlineImageWidth; // for images in post HTML
+
+    /**
+     * Bump this whenever secureHtmlContent changes its output, so that previously sanitized HTML (cached or stored) is recomputed.
+     */
+    static final int SANITIZER_VERSION = 3;
+
+    private Cache<String, String> sanitizedHtmlCache;
+
+    private String securedVersion;
+
+    private ExecutorService sanitizerExecutor;
+
+    @PostConstruct
+    void postConstruct() {
+        this.securedVersion = SANITIZER_VERSION + "-" + sha256(imageProxyUrlTemplate + "|" + inlineImageWidth, UTF_8).substring(0, 16);
+        //
+        // setup the sanitized HTML cache (keyed by content hash, weighed by UTF-16 size in bytes)
+        //
+        log.info("Starting sanitized HTML cache, maxBytes={}", sanitizedHtmlCacheMaxBytes);
+        this.sanitizedHtmlCache = CacheBuilder.newBuilder()
+                .maximumWeight(sanitizedHtmlCacheMaxBytes)
+                .<String, String>weigher((k, v) -> 2 * (k.length() + v.length()))
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(Metrics.globalRegistry, sanitizedHtmlCache, "sanitizedHtmlCache");
+        //
+        // setup the post sanitizer pool
+        //
+        int parallelism = sanitizerParallelism > 0 ? sanitizerParallelism : max(1, getRuntime().availableProcessors() - 1);
+        log.info("Starting post sanitizer pool: parallelism={}, parallelThreshold={}", parallelism, sanitizerParallelThreshold);
+        this.sanitizerExecutor = newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("post-sanitizer-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    void preDestroy() {
+        this.sanitizerExecutor.shutdown();
+    }
+
+    /**
+     * Secures the given posts in place (list order is unchanged), one task per post on the sanitizer pool for large
+     * lists.
+     */
+    public List<StagingPost> secureStagingPosts(List<StagingPost> stagingPosts) {
+        secureStagingPosts(stagingPosts, new ConcurrentHashMap<>());
+        return stagingPosts;
+    }
+
+    /**
+     * Secures the given posts in place, as secureStagingPosts does.
+     *
+     * @return the (normalized) URLs of images queued for prefetch whose dimensions weren't known yet, by post Id; the
+     * secured content of these posts is complete except for those dimensions, and can be secured again once the images
+     * are in the proxy cache (see ImagePrefetchedEvent)
+     */
+    public Map<Long, Set<String>> secureStagingPostsForStorage(List<StagingPost> stagingPosts) {
+        Map<Long, Set<String>> pendingImageUrls = new ConcurrentHashMap<>();
+        secureStagingPosts(stagingPosts, pendingImageUrls);
+        return pendingImageUrls;
+    }
+
+    private void secureStagingPosts(List<StagingPost> stagingPosts, Map<Long, Set<String>> pendingImageUrls) {
+        if (size(stagingPosts) < sanitizerParallelThreshold) {
+            if (isNotEmpty(stagingPosts)) {
+                for (StagingPost stagingPost : stagingPosts) {
+                    addPendingImageUrls(stagingPost, secureStagingPost(stagingPost), pendingImageUrls);
+                }
+            }
+        } else {
+            List<CompletableFuture<Set<String>>> futures = new ArrayList<>(stagingPosts.size());
+            for (StagingPost stagingPost : stagingPosts) {
+                futures.add(supplyAsync(() -> secureStagingPost(stagingPost), sanitizerExecutor));
+            }
+            // (joined in list order; a failure is thrown once every post is done, so that nothing is still being
+            // secured in the background, and a partially secured list is never handed back)
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(t -> null).join();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    addPendingImageUrls(stagingPosts.get(i), futures.get(i).join(), pendingImageUrls);
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException r) {
+                        throw r;
+                    }
+                    throw new IllegalStateException("Post sanitization failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private static void addPendingImageUrls(StagingPost stagingPost, Set<String> pending, Map<Long, Set<String>> pendingImageUrls) {
+        if (!pending.isEmpty() && stagingPost.getId() != null) {
+            pendingImageUrls.put(stagingPost.getId(), pending);
+        }
+    }
+
+    /**
+     * Secures the given post in place.
+     *
+     * @return the URLs of images whose dimensions aren't known yet
+     */
+    private Set<String> secureStagingPost(StagingPost stagingPost) {
+        Set<String> pendingImageUrls = new HashSet<>();
+        secureStagingPost(stagingPost, pendingImageUrls);
+        return pendingImageUrls;
+    }
+
+    /**
+     * Secures the given post in place, adding the URLs of images whose dimensions aren't known yet to pendingImageUrls.
+     */
+    private void secureStagingPost(StagingPost stagingPost, Set<String> pendingImageUrls) {
+        String postUrl = stagingPost.getPostUrl();
+        long prefetchPriority = getPrefetchPriority(stagingPost);
+        // secure the post title HTML content
+        secureHtmlContent(stagingPost.getPostTitle(), postUrl, prefetchPriority, pendingImageUrls);
+        // secure the post description HTML content
+        secureHtmlContent(stagingPost.getPostDesc(), postUrl, prefetchPriority, pendingImageUrls);
+        // secure the post contents HTML content
+        List<ContentObject> postContents = stagingPost.getPostContents();
+        if (isNotEmpty(postContents)) {
+            for (ContentObject c : postContents) {
+                secureHtmlContent(c, postUrl, prefetchPriority, pendingImageUrls);
+            }
+        }
+        // secure the post iTunes contents
+        securePostITunes(stagingPost.getPostITunes(), postUrl);
+        // secure the post enclosures
+        List<PostEnclosure> postEnclosures = stagingPost.getEnclosures();
+        if (isNotEmpty(postEnclosures)) {
+            for (PostEnclosure e : postEnclosures) {
+                securePostEnclosure(e, postUrl);
+            }
+        }
+        // secure the post media contents
+        securePostMedia(stagingPost.getPostMedia(), postUrl);
+    }
+
+    /**
+     * Identifies the output of secureStagingPost; changes when the sanitizer or the proxy URL template changes.
+     */
+    public String getSecuredVersion() {
+        return securedVersion;
+    }
+
+    /**
+     * Sanitizes the HTML content of this object in place; images in newly sanitized content are queued for prefetch
+     * at the given priority, and those whose dimensions aren't known yet are added to pendingImageUrls.
+     */
+    private void secureHtmlContent(ContentObject obj, String baseUrl, long prefetchPriority, Set<String> pendingImageUrls) {
+        if (isHtmlContent(obj) && obj.getValue() != null) {
+            String rawHtml = obj.getValue();
+            String cacheKey = sanitizedHtmlCacheKey(SANITIZER_VERSION, rawHtml, baseUrl);
+            String securedHtml = sanitizedHtmlCache.getIfPresent(cacheKey);
+            if (securedHtml == null) {
+                SanitizedHtml sanitizedHtml = sanitizeHtml(rawHtml, baseUrl, prefetchPriority);
+                securedHtml = sanitizedHtml.html();
+                if (sanitizedHtml.pendingImageUrls().isEmpty()) {
+                    sanitizedHtmlCache.put(cacheKey, securedHtml);
+                } else {
+                    // (not cached, so that the dimensions are filled in when it's secured again)
+                    pendingImageUrls.addAll(sanitizedHtml.pendingImageUrls());
+                }
+            }
+            obj.setValue(securedHtml);
+        }
+    }
+
+    long getSanitizedHtmlCacheSize() {
+        return sanitizedHtmlCache.size();
+    }
+
+    private record SanitizedHtml(String html, Set<String> pendingImageUrls) {}
+
+    static String sanitizedHtmlCacheKey(int sanitizerVersion, String rawHtml, String baseUrl) {
+        return Hashing.sha256().newHasher()
+                .putInt(sanitizerVersion)
+                .putInt(length(baseUrl))
+                .putString(defaultString(baseUrl), UTF_8)
+                .putString(rawHtml, UTF_8)
+                .hash()
+                .toString();
+    }
+
+    private SanitizedHtml sanitizeHtml(String rawHtml, String baseUrl, long prefetchPriority) {
+        String cleanHtml = Jsoup.clean(rawHtml, relaxed()); // this must remove embed and object tags
+        Document document = Jsoup.parse(cleanHtml);
+        Set<String> pendingImageUrls = new HashSet<>();
+        for (Element e : document.getElementsByTag("img")) {
+            String imgUrl = e.attr("src");
+            e.attr("src", proxyService.rewriteImageUrl(imgUrl, baseUrl, inlineImageWidth));
+            String resolvedUrl = resolveImageUrl(imgUrl, baseUrl);
+            if (!addImageDimensions(e, resolvedUrl)) {
+                pendingImageUrls.add(normalizeUrl(resolvedUrl));
+            }
+            proxyFetchService.prefetchImage(imgUrl, baseUrl, inlineImageWidth, prefetchPriority);
+            // let the browser defer offscreen images, and decode off the main thread
+            e.attr("loading", "lazy");
+            e.attr("decoding", "async");
+            e.addClass("post-html-frame-img");
+            // get the existing style property value
+            String existingStyle = e.attr("style");
+            Map<String, String> styleMap = parseStyleAttribute(existingStyle);
+            // update or add the new style properties
+            styleMap.put("max-width", "650px");
+            styleMap.put("height", "auto");
+            styleMap.put("object-fit", "contain");
+            // reconstruct the style attribute
+            StringBuilder updatedStyle = new StringBuilder();
+            for (Map.Entry<String, String> entry : styleMap.entrySet()) {
+                updatedStyle.append(entry.getKey()).append(":").append(entry.getValue()).append(";");
+            }
+            e.attr("style", updatedStyle.toString());
+        }
+        document.getElementsByTag("a").forEach(e -> {
+            e.attr("target", "_blank");
+            e.attr("rel", "noopener");
+        });
+        //
+        return new SanitizedHtml(document.toString(), pendingImageUrls);
+    }
+
+    /**
+     * Sets the width and height attributes of this img element (unless the post already did) to the dimensions of the
+     * image as served, from the proxy cache metadata, so that browsers can lay out the post before the image loads.
+     * This runs once per post (secured posts are stored), not on every read.
+     *
+     * @return false if the image isn't in the proxy cache yet (and didn't just fail), i.e., its dimensions are pending
+     * a prefetch
+     */
+    private boolean addImageDimensions(Element e, String imgUrl) {
+        if (imgUrl == null || (e.hasAttr("width") && e.hasAttr("height"))) {
+            return true;
+        }
+        ProxyCacheIndexEntry metadata;
+        try {
+            metadata = proxyFetchService.peekCached(imgUrl);
+        } catch (IOException ex) {
+            log.debug("Unable to read proxy cache metadata, url={}, due to: {}", imgUrl, ex.getMessage());
+            return false;
+        }
+        if (metadata == null) {
+            return proxyFetchService.isRecentlyFailed(imgUrl);
+        }
+        if (metadata.hasDimensions()) {
+            int width = metadata.getWidth();
+            int height = metadata.getHeight();
+            int variantWidth = proxyFetchService.getVariantWidth(inlineImageWidth);
+            if (variantWidth > 0 && width > variantWidth) {
+                // (served scaled down, see ProxyFetchService.fetchCachedAsync)
+                height = max(1, Math.round((float) height * variantWidth / width));
+                width = variantWidth;
+            }
+            e.attr("width", Integer.toString(width));
+            e.attr("height", Integer.toString(height));
+        }
+        return true;
+    }
+
+    private static Map<String, String> parseStyleAttribute(String styleAttribute) {
+        Map<String, String> styleMap = new HashMap<>();
+
+        if (!styleAttribute.isEmpty()) {
+            String[] stylePairs = styleAttribute.split(";");
+            for (String stylePair : stylePairs) {
+                String[] propertyValue = stylePair.split(":");
+                if (propertyValue.length == 2) {
+                    String property = propertyValue[0].trim();
+                    String value = propertyValue[1].trim();
+                    styleMap.put(property, value);
+                }
+            }
+        }
+
+        return styleMap;
+    }
+
+    private static boolean isHtmlContent(ContentObject obj) {
+        return obj != null && containsIgnoreCase(obj.getType(), "html");
+    }
+
+    private void securePostITunes(PostITunes postITunes, String basesUrl) {
+        if (postITunes != null && postITunes.getImageUri() != null) {
+            postITunes.setImageUri(proxyService.rewriteImageUrl(postITunes.getImageUri(), basesUrl));
+        }
+    }
+
+    private void securePostEnclosure(PostEnclosure postEnclosure, String baseUrl) {
+        if (isImageEnclosure(postEnclosure)) {
+            postEnclosure.setUrl(proxyService.rewriteImageUrl(postEnclosure.getUrl(), baseUrl));
+        }
+    }
+
+    private static boolean isImageEnclosure(PostEnclosure enc) {
+        return enc != null && containsIgnoreCase(enc.getType(), "image");
+    }
+
+    private void securePostMedia(PostMedia postMedia, String baseUrl) {
+        if (postMedia != null) {
+            List<PostMediaContent> postMediaContents = postMedia.getPostMediaContents();
+            if (isNotEmpty(postMediaContents)) {
+                for (PostMediaContent c : postMediaContents) {
+                    securePostMediaContent(c, baseUrl);
+                }
+            }
+            PostMediaMetadata postMediaMetadata = postMedia.getPostMediaMetadata();
+            if (postMediaMetadata != null) {
+                securePostMediaMetadata(postMediaMetadata, baseUrl);
+            }
+            List<PostMediaGroup> postMediaGroups = postMedia.getPostMediaGroups();
+            for (PostMediaGroup g : postMediaGroups) {
+                securePostMediaMetadata(g.getPostMediaMetadata(), baseUrl);
+                for (PostMediaContent gc : g.getPostMediaContents()) {
+                    securePostMediaContent(gc, baseUrl);
+                }
+            }
+        }
+    }
+
+    private void securePostMediaContent(PostMediaContent content, String baseUrl) {
+        if (isImageContent(content)) {
+            securePostMediaReference(content.getReference(), baseUrl);
+        }
+    }
+
+    private static boolean isImageContent(PostMediaContent con) {
+        return con != null &&
+                (containsIgnoreCase(con.getType(), "image") || containsIgnoreCase(con.getMedium(), "image"));
+    }
+
+    private void securePostMediaReference(PostMediaReference reference, String baseUrl) {
+        if (reference != null) {
+            reference.setUri(create(proxyService.rewriteImageUrl(reference.getUri().toString(), baseUrl)));
+        }
+    }
+
+    private void securePostMediaMetadata(PostMediaMetadata metadata, String baseUrl) {
+        if (metadata != null) {
+            List<PostMediaThumbnail> postMediaThumbnails = metadata.getThumbnails();
+            if (isNotEmpty(postMediaThumbnails)) {
+                for (PostMediaThumbnail t : postMediaThumbnails) {
+                    securePostMediaThumbnail(t, baseUrl);
+                }
+            }
+        }
+    }
+
+    private void securePostMediaThumbnail(PostMediaThumbnail thumbnail, String baseUrl) {
+        if (thumbnail != null) {
+            thumbnail.setUrl(create(proxyService.rewriteImageUrl(thumbnail.getUrl().toString(), baseUrl)));
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static com.lostsidewalk.buffy.app.auth.HashingUtils.sha256;
+import static com.lostsidewalk.buffy.app.utils.ThumbnailUtils.getImageDimensions;
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
+
+/**
+ * Size-bounded, content-addressed cache of proxied images, in two tiers:
+ * <ul>
+ *     <li>an off-heap tier of direct buffers for small, recently used images;</li>
+ *     <li>a file-backed tier (one file per content hash) that survives restarts.</li>
+ * </ul>
+ * Both tiers evict least-recently-used first.  URLs are mapped to content hashes by small index files (which also keep
+ * the content type and encoding, the image dimensions, and the origin's validators, see ProxyCacheIndexEntry), so an image served under several URLs is
+ * stored once.
+ */
+@Slf4j
+@Component
+public class ProxyCache {
+
+    @Value("${newsgears.proxy.cacheDir}")
+    String cacheDir;
+
+    @Value("${newsgears.proxy.memoryCacheMaxBytes}")
+    long memoryCacheMaxBytes;
+
+    @Value("${newsgears.proxy.memoryCacheMaxEntryBytes}")
+    int memoryCacheMaxEntryBytes; // larger images are kept on disk only
+
+    @Value("${newsgears.proxy.diskCacheMaxBytes}")
+    long diskCacheMaxBytes;
+
+    @Value("${newsgears.proxy.evictedBlobGraceSecs}")
+    long evictedBlobGraceSecs; // evicted blobs stay on disk this long, for responses that were handed their path
+
+    private Path blobDir;
+
+    private Path urlDir;
+
+    // content hash -> off-heap content, in access order
+    private final LinkedHashMap<String, ByteBuffer> memoryTier = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long memoryTierBytes;
+
+    // content hash -> content length, in access order
+    private final LinkedHashMap<String, Long> diskTier = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long diskTierBytes;
+
+    // content hash -> when its blob may be deleted, for blobs evicted from the disk tier
+    private final Map<String, Long> evictedBlobs = new HashMap<>();
+
+    // URL hash -> index entry, in front of the index files
+    private final Cache<String, ProxyCacheIndexEntry> urlIndex = CacheBuilder.newBuilder().maximumSize(100_000).build();
+
+    private int nextIndexSweepDir; // the URL directory subdirectory that reapStaleIndexEntries sweeps next
+
+    private Counter memoryHits;
+
+    private Counter diskHits;
+
+    private Counter misses;
+
+    @PostConstruct
+    void postConstruct() throws IOException {
+        this.blobDir = Files.createDirectories(Path.of(cacheDir, "blobs"));
+        this.urlDir = Files.createDirectories(Path.of(cacheDir, "urls"));
+        //
+        // rebuild the disk tier from the blob directory, oldest first so that LRU order approximates access order
+        //
+        List<Path> blobs = findFilesDeletingTemp(blobDir);
+        List<Map.Entry<Path, FileTime>> byAge = new ArrayList<>(blobs.size());
+        for (Path p : blobs) {
+            byAge.add(Map.entry(p, Files.getLastModifiedTime(p)));
+        }
+        findFilesDeletingTemp(urlDir);
+        byAge.sort(Map.Entry.comparingByValue());
+        synchronized (this) {
+            for (Map.Entry<Path, FileTime> e : byAge) {
+                long size = Files.size(e.getKey());
+                diskTier.put(e.getKey().getFileName().toString(), size);
+                diskTierBytes += size;
+            }
+        }
+        evictDiskTier();
+        log.info("Started proxy cache, cacheDir={}, memoryMaxBytes={}, diskMaxBytes={}, diskEntryCt={}, diskBytes={}",
+                cacheDir, memoryCacheMaxBytes, diskCacheMaxBytes, diskTier.size(), diskTierBytes);
+        //
+        // metrics
+        //
+        this.memoryHits = Metrics.counter("proxyCache.requests", "result", "memory");
+        this.diskHits = Metrics.counter("proxyCache.requests", "result", "disk");
+        this.misses = Metrics.counter("proxyCache.requests", "result", "miss");
+        Metrics.gauge("proxyCache.memory.bytes", this, ProxyCache::getMemoryTierBytes);
+        Metrics.gauge("proxyCache.disk.bytes", this, ProxyCache::getDiskTierBytes);
+    }
+
+    /**
+     * @return the regular files under this cache directory, having deleted the temp files left behind by interrupted
+     * writes (downloads and variants in the blob directory, index entries in the URL directory)
+     */
+    private static List<Path> findFilesDeletingTemp(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(dir, 2)) {
+            files = s.filter(Files::isRegularFile).toList();
+        }
+        List<Path> results = new ArrayList<>(files.size());
+        for (Path p : files) {
+            if (p.getFileName().toString().endsWith(".tmp")) {
+                Files.deleteIfExists(p);
+            } else {
+                results.add(p);
+            }
+        }
+        return results;
+    }
+
+    synchronized long getMemoryTierBytes() {
+        return memoryTierBytes;
+    }
+
+    synchronized long getDiskTierBytes() {
+        return diskTierBytes;
+    }
+
+    /**
+     * @return the directory that downloads are streamed into before being stored (on the same file system as the blobs)
+     */
+    Path getDownloadDir() {
+        return blobDir;
+    }
+
+    /**
+     * @return the cached image for this URL (which may be stale, see ProxyValidators), or null on a miss
+     */
+    public ProxyCacheEntry get(String url) throws IOException {
+        String urlHash = sha256(url, UTF_8);
+        ProxyCacheIndexEntry indexEntry = findIndexEntry(urlHash);
+        if (indexEntry == null) {
+            misses.increment();
+            return null;
+        }
+        String contentHash = indexEntry.getContentHash();
+        Long size;
+        synchronized (this) {
+            ByteBuffer buffer = memoryTier.get(contentHash);
+            if (buffer != null) {
+                diskTier.get(contentHash); // keep the disk copy from aging out while it's hot
+                memoryHits.increment();
+                return ProxyCacheEntry.inMemory(indexEntry, buffer);
+            }
+            size = diskTier.get(contentHash);
+        }
+        Path blobPath = blobPath(contentHash);
+        if (size == null || !Files.exists(blobPath)) {
+            // the blob has been evicted; drop the stale index entry
+            urlIndex.invalidate(urlHash);
+            Files.deleteIfExists(urlPath(urlHash));
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        Files.setLastModifiedTime(blobPath, FileTime.fromMillis(currentTimeMillis())); // LRU order across restarts
+        if (size <= memoryCacheMaxEntryBytes) {
+            // promote to the memory tier
+            ByteBuffer buffer = readBlob(blobPath, size);
+            putMemoryTier(contentHash, buffer);
+            return ProxyCacheEntry.inMemory(indexEntry, buffer);
+        }
+
+        return ProxyCacheEntry.onDisk(indexEntry, size, blobPath);
+    }
+
+    /**
+     * Stores the image downloaded from this URL (moving the download file into the cache), and returns it as a cache entry.
+     */
+    public ProxyCacheEntry put(String url, ProxyDownload download) throws IOException {
+        return put(url, download, null);
+    }
+
+    private ProxyCacheEntry put(String url, ProxyDownload download, String sourceHash) throws IOException {
+        String urlHash = sha256(url, UTF_8);
+        String contentHash = download.getContentHash();
+        long contentLength = download.getContentLength();
+        Path blobPath = blobPath(contentHash);
+        boolean isStored;
+        synchronized (this) {
+            evictedBlobs.remove(contentHash); // (so that the reaper leaves the blob alone from here on)
+            isStored = diskTier.containsKey(contentHash);
+        }
+        if (isStored) {
+            Files.deleteIfExists(download.getPath());
+        } else {
+            Files.createDirectories(blobPath.getParent());
+            Files.move(download.getPath(), blobPath, ATOMIC_MOVE, REPLACE_EXISTING);
+            synchronized (this) {
+                Long prev = diskTier.put(contentHash, contentLength);
+                if (prev == null) {
+                    diskTierBytes += contentLength;
+                }
+            }
+            evictDiskTier();
+        }
+        Dimension dimension = readImageDimensions(blobPath, download.getContentEncoding());
+        ProxyCacheIndexEntry indexEntry = ProxyCacheIndexEntry.from(contentHash, download.getContentType(), download.getContentEncoding(),
+                dimension == null ? 0 : dimension.width, dimension == null ? 0 : dimension.height, download.getValidators(), sourceHash);
+        putIndexEntry(urlHash, indexEntry);
+        if (contentLength <= memoryCacheMaxEntryBytes) {
+            ByteBuffer buffer = readBlob(blobPath, contentLength);
+            putMemoryTier(contentHash, buffer);
+            return ProxyCacheEntry.inMemory(indexEntry, buffer);
+        }
+
+        return ProxyCacheEntry.onDisk(indexEntry, contentLength, blobPath);
+    }
+
+    /**
+     * Stores content derived from an image (e.g., a scaled variant) under the given key, and returns it as a cache entry;
+     * it takes the original's validators, and is tied to the original's content (see refreshed).
+     */
+    public ProxyCacheEntry put(String url, byte[] content, String contentType, ProxyCacheEntry original) throws IOException {
+        Path path = Files.createTempFile(getDownloadDir(), "variant-", ".tmp");
+        try {
+            Files.write(path, content);
+            String contentHash = Hashing.sha256().hashBytes(content).toString();
+            return put(url, ProxyDownload.from(path, contentHash, content.length, contentType, null, original.getValidators()), original.getContentHash());
+        } finally {
+            Files.deleteIfExists(path); // (already moved, unless put failed)
+        }
+    }
+
+    /**
+     * Maps a variant key (e.g., for a variant that would be no smaller) onto the original image, which is already
+     * cached, and returns it.
+     */
+    public ProxyCacheEntry putAlias(String url, ProxyCacheEntry original) throws IOException {
+        putIndexEntry(sha256(url, UTF_8), ProxyCacheIndexEntry.from(original.getContentHash(), original.getContentType(),
+                original.getContentEncoding(), original.getWidth(), original.getHeight(), original.getValidators(), original.getContentHash()));
+        return original;
+    }
+
+    /**
+     * Records that the origin confirmed (304) the cached image for this URL is still current, and returns it with the
+     * refreshed validators.
+     */
+    public ProxyCacheEntry revalidated(String url, ProxyCacheEntry entry, ProxyValidators notModified) throws IOException {
+        return refreshed(url, entry, entry.getValidators().refresh(notModified));
+    }
+
+    /**
+     * Re-stamps the cached image for this URL with the given validators (e.g., a variant whose original was found to be
+     * unchanged), and returns it with them.
+     */
+    public ProxyCacheEntry refreshed(String url, ProxyCacheEntry entry, ProxyValidators validators) throws IOException {
+        putIndexEntry(sha256(url, UTF_8), ProxyCacheIndexEntry.from(entry.getContentHash(), entry.getContentType(),
+                entry.getContentEncoding(), entry.getWidth(), entry.getHeight(), validators, entry.getSourceHash()));
+        return entry.withValidators(validators);
+    }
+
+    /**
+     * @return the metadata of the cached image for this URL (which may be stale, or evicted), or null if there is none;
+     * unlike get, this doesn't read the image itself
+     */
+    ProxyCacheIndexEntry peek(String url) throws IOException {
+        return findIndexEntry(sha256(url, UTF_8));
+    }
+
+    private ProxyCacheIndexEntry findIndexEntry(String urlHash) throws IOException {
+        ProxyCacheIndexEntry indexEntry = urlIndex.getIfPresent(urlHash);
+        if (indexEntry == null) {
+            Path urlPath = urlPath(urlHash);
+            if (Files.exists(urlPath)) {
+                indexEntry = ProxyCacheIndexEntry.parse(Files.readString(urlPath, UTF_8));
+                urlIndex.put(urlHash, indexEntry);
+            }
+        }
+        return indexEntry;
+    }
+
+    private synchronized void putIndexEntry(String urlHash, ProxyCacheIndexEntry indexEntry) throws IOException {
+        writeAtomically(urlPath(urlHash), ByteBuffer.wrap(indexEntry.format().getBytes(UTF_8)));
+        urlIndex.put(urlHash, indexEntry);
+    }
+
+    private static Dimension readImageDimensions(Path blobPath, String contentEncoding) {
+        try (InputStream inputStream = equalsIgnoreCase(contentEncoding, "gzip") ?
+                new GZIPInputStream(Files.newInputStream(blobPath)) : Files.newInputStream(blobPath)) {
+            return getImageDimensions(blobPath.toString(), inputStream);
+        } catch (IOException e) {
+            log.debug("Unable to read image dimensions, path={}, due to: {}", blobPath, e.getMessage());
+        }
+
+        return null;
+    }
+
+    private static ByteBuffer readBlob(Path blobPath, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (FileChannel fileChannel = FileChannel.open(blobPath, READ)) {
+            while (buffer.hasRemaining()) {
+                if (fileChannel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        }
+        return buffer.flip();
+    }
+
+    private synchronized void putMemoryTier(String contentHash, ByteBuffer buffer) {
+        ByteBuffer prev = memoryTier.put(contentHash, buffer);
+        if (prev != null) {
+            memoryTierBytes -= prev.capacity();
+        }
+        memoryTierBytes += buffer.capacity();
+        Iterator<Map.Entry<String, ByteBuffer>> it = memoryTier.entrySet().iterator();
+        while (memoryTierBytes > memoryCacheMaxBytes && it.hasNext()) {
+            Map.Entry<String, ByteBuffer> eldest = it.next();
+            memoryTierBytes -= eldest.getValue().capacity();
+            it.remove(); // the direct buffer is freed once in-flight responses let go of it
+        }
+    }
+
+    /**
+     * Drops the least recently used blobs until the disk tier is back under budget.  Their files aren't deleted right
+     * away, since responses (including sendfile) may have been handed their path but not opened it yet; the reaper
+     * deletes them once the grace period is up.  URL index files pointing at evicted blobs are dropped on their next
+     * lookup, or else by reapStaleIndexEntries.
+     */
+    private synchronized void evictDiskTier() {
+        long deleteAfter = currentTimeMillis() + evictedBlobGraceSecs * 1_000L;
+        Iterator<Map.Entry<String, Long>> it = diskTier.entrySet().iterator();
+        while (diskTierBytes > diskCacheMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            diskTierBytes -= eldest.getValue();
+            evictedBlobs.put(eldest.getKey(), deleteAfter);
+            it.remove();
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public synchronized void reapEvictedBlobs() {
+        long now = currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = evictedBlobs.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getValue() <= now) {
+                // (under the lock, so that a put of the same content can't move a fresh blob in underneath)
+                try {
+                    Files.deleteIfExists(blobPath(e.getKey()));
+                } catch (IOException ex) {
+                    log.warn("Unable to delete evicted proxy cache blob, contentHash={}, due to: {}", e.getKey(), ex.getMessage());
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes the URL index files that point at blobs no longer in the disk tier (i.e., those that haven't been looked up
+     * since their blob was evicted), so that the index doesn't grow with every URL ever proxied.  Sweeps one of the 256
+     * URL subdirectories per run.
+     */
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void reapStaleIndexEntries() {
+        Path dir;
+        synchronized (this) {
+            dir = urlDir.resolve(String.format("%02x", nextIndexSweepDir));
+            nextIndexSweepDir = (nextIndexSweepDir + 1) % 256;
+        }
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> stale = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                if (!p.getFileName().toString().endsWith(".tmp") && isStaleIndexEntry(p)) {
+                    stale.add(p);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to sweep proxy cache index, dir={}, due to: {}", dir, e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            for (Path p : stale) {
+                try {
+                    // (checked again under the lock, in case the entry was just rewritten to point at a stored blob)
+                    if (isStaleIndexEntry(p)) {
+                        Files.deleteIfExists(p);
+                        urlIndex.invalidate(p.getFileName().toString());
+                    }
+                } catch (IOException e) {
+                    log.warn("Unable to delete stale proxy cache index entry, path={}, due to: {}", p, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private boolean isStaleIndexEntry(Path urlPath) {
+        String contentHash;
+        try {
+            contentHash = ProxyCacheIndexEntry.parse(Files.readString(urlPath, UTF_8)).getContentHash();
+        } catch (IOException e) {
+            return false; // (e.g., already deleted)
+        }
+        synchronized (this) {
+            return !diskTier.containsKey(contentHash);
+        }
+    }
+
+    private Path blobPath(String contentHash) {
+        return blobDir.resolve(contentHash.substring(0, 2)).resolve(contentHash);
+    }
+
+    private Path urlPath(String urlHash) {
+        return urlDir.resolve(urlHash.substring(0, 2)).resolve(urlHash);
+    }
+
+    private static void writeAtomically(Path path, ByteBuffer content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileChannel fileChannel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                fileChannel.write(content);
+            }
+        }
+        Files.move(tmp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+}
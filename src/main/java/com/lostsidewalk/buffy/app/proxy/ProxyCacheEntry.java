@@ -0,0 +1,149 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
+
+/**
+ * A proxied image as held by ProxyCache: either an off-heap buffer (memory tier) or a file (disk tier).
+ */
+@Data
+public class ProxyCacheEntry {
+
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
+    final String contentHash;
+
+    final String contentType; // null if unknown
+
+    final String contentEncoding; // as sent by the origin (null for identity)
+
+    final long contentLength; // of the (possibly encoded) content
+
+    final int width; // of the decoded image, in pixels; 0 if unknown
+
+    final int height; // of the decoded image, in pixels; 0 if unknown
+
+    final ByteBuffer buffer; // read-only view; null for disk tier hits
+
+    final Path path; // null for memory tier hits
+
+    final ProxyValidators validators;
+
+    final String sourceHash; // content hash of the original, for variants; null for originals
+
+    private ProxyCacheEntry(String contentHash, String contentType, String contentEncoding, long contentLength, int width, int height,
+                            ByteBuffer buffer, Path path, ProxyValidators validators, String sourceHash) {
+        this.contentHash = contentHash;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.contentLength = contentLength;
+        this.width = width;
+        this.height = height;
+        this.buffer = buffer;
+        this.path = path;
+        this.validators = validators;
+        this.sourceHash = sourceHash;
+    }
+
+    static ProxyCacheEntry inMemory(ProxyCacheIndexEntry indexEntry, ByteBuffer buffer) {
+        return new ProxyCacheEntry(indexEntry.getContentHash(), indexEntry.getContentType(), indexEntry.getContentEncoding(),
+                buffer.remaining(), indexEntry.getWidth(), indexEntry.getHeight(), buffer.asReadOnlyBuffer(), null, indexEntry.getValidators(), indexEntry.getSourceHash());
+    }
+
+    static ProxyCacheEntry onDisk(ProxyCacheIndexEntry indexEntry, long contentLength, Path path) {
+        return new ProxyCacheEntry(indexEntry.getContentHash(), indexEntry.getContentType(), indexEntry.getContentEncoding(),
+                contentLength, indexEntry.getWidth(), indexEntry.getHeight(), null, path, indexEntry.getValidators(), indexEntry.getSourceHash());
+    }
+
+    ProxyCacheEntry withValidators(ProxyValidators validators) {
+        return new ProxyCacheEntry(contentHash, contentType, contentEncoding, contentLength, width, height, buffer, path, validators, sourceHash);
+    }
+
+    public boolean isGzipped() {
+        return equalsIgnoreCase(contentEncoding, "gzip");
+    }
+
+    /**
+     * Writes the content to the given stream without copying it onto the heap; disk tier entries go through
+     * FileChannel.transferTo.
+     */
+    public void transferTo(OutputStream outputStream) throws IOException {
+        transferTo(outputStream, 0, contentLength);
+    }
+
+    /**
+     * Writes count bytes of the content, starting at position start, to the given stream (i.e., serves a byte range).
+     */
+    public void transferTo(OutputStream outputStream, long start, long count) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        if (buffer != null) {
+            ByteBuffer b = buffer.duplicate();
+            b.position((int) start).limit((int) (start + count));
+            while (b.hasRemaining()) {
+                target.write(b);
+            }
+        } else {
+            try (FileChannel fileChannel = FileChannel.open(path, READ)) {
+                long position = start;
+                long end = start + count;
+                while (position < end) {
+                    position += fileChannel.transferTo(position, end - position, target);
+                }
+            }
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the gzip-decoded content to the given stream, through a small fixed buffer, for clients that don't accept
+     * the encoding the origin sent.
+     */
+    public void transferDecodedTo(OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = openDecodedStream()) {
+            inputStream.transferTo(outputStream);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * @return a stream over the content, gzip-decoded if need be
+     */
+    public InputStream openDecodedStream() throws IOException {
+        return isGzipped() ? new GZIPInputStream(openStream(), DECODE_BUFFER_SIZE) : openStream();
+    }
+
+    private InputStream openStream() throws IOException {
+        if (buffer == null) {
+            return Channels.newInputStream(FileChannel.open(path, READ));
+        }
+        ByteBuffer b = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return b.hasRemaining() ? (b.get() & 0xFF) : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int off, int len) {
+                if (!b.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, b.remaining());
+                b.get(bytes, off, n);
+                return n;
+            }
+        };
+    }
+}
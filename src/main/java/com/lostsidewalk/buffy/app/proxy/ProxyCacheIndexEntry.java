@@ -0,0 +1,101 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import lombok.Data;
+
+import static org.apache.commons.lang3.StringUtils.*;
+import static org.apache.commons.lang3.math.NumberUtils.toInt;
+import static org.apache.commons.lang3.math.NumberUtils.toLong;
+
+/**
+ * The content of a ProxyCache URL index file: the content hash of the image on the first line, followed by
+ * header-style lines for the content type and encoding, the image dimensions, the origin's validators, and (for
+ * variants) the content hash of the original image they were derived from.
+ */
+@Data
+class ProxyCacheIndexEntry {
+
+    final String contentHash;
+
+    final String contentType;
+
+    final String contentEncoding;
+
+    final int width; // in pixels, 0 if unknown
+
+    final int height; // in pixels, 0 if unknown
+
+    final ProxyValidators validators;
+
+    final String sourceHash; // content hash of the original, for variants; null for originals
+
+    private ProxyCacheIndexEntry(String contentHash, String contentType, String contentEncoding, int width, int height, ProxyValidators validators, String sourceHash) {
+        this.contentHash = contentHash;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.width = width;
+        this.height = height;
+        this.validators = validators;
+        this.sourceHash = sourceHash;
+    }
+
+    static ProxyCacheIndexEntry from(String contentHash, String contentType, String contentEncoding, int width, int height, ProxyValidators validators, String sourceHash) {
+        return new ProxyCacheIndexEntry(contentHash, contentType, contentEncoding, width, height, validators, sourceHash);
+    }
+
+    boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+
+    static ProxyCacheIndexEntry parse(String str) {
+        String[] lines = str.split("\n");
+        String contentType = null;
+        String contentEncoding = null;
+        int width = 0;
+        int height = 0;
+        String eTag = null;
+        String lastModified = null;
+        long expiresAt = 0L;
+        String sourceHash = null;
+        for (int i = 1; i < lines.length; i++) {
+            String name = strip(substringBefore(lines[i], ":"));
+            String value = trimToNull(substringAfter(lines[i], ":"));
+            switch (name) {
+                case "Content-Type" -> contentType = value;
+                case "Content-Encoding" -> contentEncoding = value;
+                case "Image-Width" -> width = toInt(value);
+                case "Image-Height" -> height = toInt(value);
+                case "ETag" -> eTag = value;
+                case "Last-Modified" -> lastModified = value;
+                case "Expires-At" -> expiresAt = toLong(value);
+                case "Source-Hash" -> sourceHash = value;
+                default -> {} // ignored
+            }
+        }
+        return new ProxyCacheIndexEntry(strip(lines[0]), contentType, contentEncoding, width, height, ProxyValidators.from(eTag, lastModified, expiresAt), sourceHash);
+    }
+
+    String format() {
+        StringBuilder sb = new StringBuilder(contentHash).append('\n');
+        if (contentType != null) {
+            sb.append("Content-Type: ").append(contentType).append('\n');
+        }
+        if (contentEncoding != null) {
+            sb.append("Content-Encoding: ").append(contentEncoding).append('\n');
+        }
+        if (hasDimensions()) {
+            sb.append("Image-Width: ").append(width).append('\n');
+            sb.append("Image-Height: ").append(height).append('\n');
+        }
+        if (validators.getETag() != null) {
+            sb.append("ETag: ").append(validators.getETag()).append('\n');
+        }
+        if (validators.getLastModified() != null) {
+            sb.append("Last-Modified: ").append(validators.getLastModified()).append('\n');
+        }
+        sb.append("Expires-At: ").append(validators.getExpiresAt()).append('\n');
+        if (sourceHash != null) {
+            sb.append("Source-Hash: ").append(sourceHash).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * An image body streamed from the origin into a temporary file, ready to be moved into ProxyCache; or, for a
+ * conditional fetch answered with 304, just the refreshed validators.
+ */
+@Data
+public class ProxyDownload {
+
+    final Path path; // null if not modified
+
+    final String contentHash; // SHA-256 of the body as received
+
+    final long contentLength;
+
+    final String contentType; // null if unknown
+
+    final String contentEncoding; // as sent by the origin (null for identity)
+
+    final ProxyValidators validators;
+
+    private ProxyDownload(Path path, String contentHash, long contentLength, String contentType, String contentEncoding, ProxyValidators validators) {
+        this.path = path;
+        this.contentHash = contentHash;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.validators = validators;
+    }
+
+    static ProxyDownload from(Path path, String contentHash, long contentLength, String contentType, String contentEncoding, ProxyValidators validators) {
+        return new ProxyDownload(path, contentHash, contentLength, contentType, contentEncoding, validators);
+    }
+
+    static ProxyDownload notModified(ProxyValidators validators) {
+        return new ProxyDownload(null, null, 0L, null, null, validators);
+    }
+
+    public boolean isNotModified() {
+        return path == null;
+    }
+}
@@ -0,0 +1,620 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lostsidewalk.buffy.app.audit.HostUnavailableException;
+import com.lostsidewalk.buffy.app.audit.ProxyCapacityException;
+import com.lostsidewalk.buffy.app.circuit.HostCircuitBreaker;
+import com.lostsidewalk.buffy.app.proxy.CappedFileBodySubscriber.ContentTooLargeException;
+import com.lostsidewalk.buffy.post.StagingPost;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lostsidewalk.buffy.app.circuit.HostCircuitBreaker.getHost;
+import static com.lostsidewalk.buffy.app.proxy.ProxyService.resolveImageUrl;
+import static com.lostsidewalk.buffy.app.utils.ThumbnailUtils.getScaledImage;
+import static java.lang.Boolean.TRUE;
+import static java.lang.Math.max;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.apache.commons.lang3.StringUtils.*;
+import static org.apache.commons.lang3.math.NumberUtils.toLong;
+
+/**
+ * The image proxy's fetch pipeline: serves images from the proxy cache, fetching (or revalidating) them from their
+ * origins on the proxy's own threads, scaling them down to variant widths, and warming the cache ahead of clients.
+ */
+@Slf4j
+@Service
+public class ProxyFetchService {
+
+    @Autowired
+    ProxyCache proxyCache;
+
+    @Autowired
+    HostCircuitBreaker hostCircuitBreaker;
+
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
+
+    @Value("${newsgears.userAgent}")
+    String feedGearsUserAgent;
+
+    @Value("${newsgears.proxy.fetchThreads}")
+    int fetchThreads;
+
+    @Value("${newsgears.proxy.fetchDeadlineSecs}")
+    long fetchDeadlineSecs; // overall limit on an origin fetch, body included
+
+    @Value("${newsgears.proxy.maxImageBytes}")
+    long maxImageBytes; // larger images are not proxied
+
+    @Value("${newsgears.proxy.defaultMaxAgeSecs}")
+    long defaultMaxAgeSecs; // for images the origin sends without a max-age
+
+    @Value("${newsgears.proxy.minMaxAgeSecs}")
+    long minMaxAgeSecs;
+
+    @Value("${newsgears.proxy.negativeCacheTtlSecs}")
+    long negativeCacheTtlSecs; // how long to wait before retrying a URL that failed
+
+    @Value("${newsgears.proxy.maxConcurrentFetches}")
+    int maxConcurrentFetches;
+
+    @Value("${newsgears.proxy.maxConcurrentFetchesPerHost}")
+    int maxConcurrentFetchesPerHost;
+
+    @Value("${newsgears.proxy.maxQueuedFetches}")
+    int maxQueuedFetches; // origin fetches beyond this are turned away rather than queued
+
+    @Value("${newsgears.proxy.variantWidths}")
+    int[] variantWidths; // requested widths are rounded up to one of these
+
+    @Value("${newsgears.proxy.scalerThreads}")
+    int scalerThreads;
+
+    @Value("${newsgears.proxy.scalerQueueSize}")
+    int scalerQueueSize; // images beyond this are served unscaled
+
+    @Value("${newsgears.proxy.scalerMaxPixels}")
+    long scalerMaxPixels; // larger images are served unscaled, rather than decoded
+
+    @Value("${newsgears.proxy.prefetchQueueSize}")
+    int prefetchQueueSize; // 0 to disable prefetch
+
+    @Value("${newsgears.proxy.prefetchConcurrency}")
+    int prefetchConcurrency;
+
+    @Value("${newsgears.proxy.prefetchRecentTtlSecs}")
+    long prefetchRecentTtlSecs; // images queued for prefetch within this long aren't queued again
+
+    private final ConcurrentHashMap<String, CompletableFuture<ProxyCacheEntry>> inFlightFetches = new ConcurrentHashMap<>();
+
+    private final Counter coalescedFetches = Metrics.counter("proxy.fetch.coalesced");
+
+    private final Counter rejectedFetches = Metrics.counter("proxy.fetch.rejected");
+
+    private final Counter notModifiedFetches = Metrics.counter("proxy.fetch.notModified");
+
+    private final Counter negativeCacheHits = Metrics.counter("proxy.fetch.negativeCacheHits");
+
+    private Cache<String, Boolean> negativeCache;
+
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(5);
+
+    private ExecutorService fetchExecutor;
+
+    private HttpClient httpClient;
+
+    private OriginFetchScheduler originFetchScheduler;
+
+    private ExecutorService scalerExecutor;
+
+    private final ConcurrentHashMap<String, CompletableFuture<ProxyCacheEntry>> inFlightVariants = new ConcurrentHashMap<>();
+
+    private ImagePrefetchQueue imagePrefetchQueue;
+
+    @PostConstruct
+    void postConstruct() {
+        //
+        // setup the image fetch client; it runs on its own threads so that slow origins can't tie up request threads
+        //
+        log.info("Starting image proxy fetch client: fetchThreads={}, maxConcurrentFetches={}, maxConcurrentFetchesPerHost={}, maxQueuedFetches={}",
+                fetchThreads, maxConcurrentFetches, maxConcurrentFetchesPerHost, maxQueuedFetches);
+        AtomicInteger fetchThreadCt = new AtomicInteger();
+        this.fetchExecutor = Executors.newFixedThreadPool(fetchThreads, r -> {
+            Thread t = new Thread(r, "proxy-fetch-" + fetchThreadCt.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .executor(fetchExecutor)
+                .followRedirects(HttpClient.Redirect.NEVER) // followed by hand, to cap the hop count
+                .connectTimeout(FETCH_TIMEOUT)
+                .build();
+        // (prefetches queue against their own budget; the prefetch queue never has more than prefetchConcurrency going)
+        this.originFetchScheduler = new OriginFetchScheduler(maxConcurrentFetches, maxConcurrentFetchesPerHost, maxQueuedFetches, prefetchConcurrency);
+        Metrics.gauge("proxy.fetch.running", originFetchScheduler, OriginFetchScheduler::getRunning);
+        Metrics.gauge("proxy.fetch.queued", originFetchScheduler, OriginFetchScheduler::getQueued);
+        this.negativeCache = CacheBuilder.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(negativeCacheTtlSecs, TimeUnit.SECONDS)
+                .build();
+        //
+        // setup the image scaler pool
+        //
+        Arrays.sort(variantWidths);
+        log.info("Starting image scaler pool: scalerThreads={}, scalerQueueSize={}, variantWidths={}", scalerThreads, scalerQueueSize, Arrays.toString(variantWidths));
+        AtomicInteger scalerThreadCt = new AtomicInteger();
+        this.scalerExecutor = new ThreadPoolExecutor(scalerThreads, scalerThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(scalerQueueSize), r -> {
+            Thread t = new Thread(r, "proxy-scaler-" + scalerThreadCt.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        //
+        // setup the image prefetch queue
+        //
+        log.info("Starting image prefetch queue: prefetchQueueSize={}, prefetchConcurrency={}", prefetchQueueSize, prefetchConcurrency);
+        this.imagePrefetchQueue = new ImagePrefetchQueue(prefetchQueueSize, prefetchConcurrency, prefetchRecentTtlSecs, fetchExecutor,
+                (url, width) -> fetchCachedAsync(url, width, true).thenAccept(entry -> {
+                    if (entry != null) {
+                        applicationEventPublisher.publishEvent(ImagePrefetchedEvent.from(url));
+                    }
+                }));
+        Metrics.gauge("proxy.prefetch.queued", imagePrefetchQueue, ImagePrefetchQueue::getQueued);
+        FunctionCounter.builder("proxy.prefetch.dropped", imagePrefetchQueue, ImagePrefetchQueue::getDropped).register(Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    void preDestroy() {
+        this.fetchExecutor.shutdown();
+        this.scalerExecutor.shutdown();
+    }
+
+    /**
+     * @return the image at this URL from the proxy cache, fetching and caching it on a miss (null if it can't be fetched),
+     * without blocking the calling thread on the origin.  Stale images are revalidated with the origin first.  URLs that
+     * recently failed aren't retried until negativeCacheTtlSecs have passed.  Completes exceptionally with
+     * ProxyCapacityException when too many origin fetches are already waiting.
+     */
+    public CompletableFuture<ProxyCacheEntry> fetchCachedAsync(String url) {
+        return fetchCachedAsync(url, false);
+    }
+
+    private CompletableFuture<ProxyCacheEntry> fetchCachedAsync(String url, boolean isPrefetch) {
+        String key = normalizeUrl(url);
+        ProxyCacheEntry cached;
+        try {
+            cached = proxyCache.get(key);
+            if (cached != null && !cached.getValidators().isStale()) {
+                return completedFuture(cached);
+            }
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+        if (negativeCache.getIfPresent(key) != null) {
+            negativeCacheHits.increment();
+            return completedFuture(cached); // (stale, or null)
+        }
+        //
+        // single-flight: the first caller to miss (or find a stale image) goes to the origin, concurrent callers for the
+        // same URL wait for it
+        //
+        CompletableFuture<ProxyCacheEntry> fetchFuture = new CompletableFuture<>();
+        CompletableFuture<ProxyCacheEntry> inFlight = inFlightFetches.putIfAbsent(key, fetchFuture);
+        if (inFlight != null) {
+            coalescedFetches.increment();
+            return inFlight;
+        }
+        supplyAsync(() -> {
+            try {
+                // re-check, in case a fetch for this URL completed between the lookup and the claim
+                return proxyCache.get(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, fetchExecutor).thenCompose(entry -> entry != null && !entry.getValidators().isStale() ?
+                completedFuture(entry) : fetchAndCache(url, key, entry, isPrefetch)
+        ).whenComplete((entry, t) -> {
+            inFlightFetches.remove(key, fetchFuture);
+            if (t != null) {
+                fetchFuture.completeExceptionally(unwrap(t));
+            } else {
+                fetchFuture.complete(entry);
+            }
+        });
+
+        return fetchFuture;
+    }
+
+    /**
+     * @return the image at this URL scaled down to (about) the given width, from the proxy cache, otherwise scaled from
+     * the original image on the scaler pool.  Images that can't be made smaller are served as they are.  A stale variant
+     * goes stale with its original; it is kept (rather than scaled again) if the original turns out to be unchanged.
+     */
+    public CompletableFuture<ProxyCacheEntry> fetchCachedAsync(String url, int width) {
+        return fetchCachedAsync(url, width, false);
+    }
+
+    private CompletableFuture<ProxyCacheEntry> fetchCachedAsync(String url, int width, boolean isPrefetch) {
+        int variantWidth = getVariantWidth(width);
+        if (variantWidth <= 0) {
+            return fetchCachedAsync(url, isPrefetch);
+        }
+        String key = normalizeUrl(url) + "#w=" + variantWidth; // (normalized URLs have no fragment)
+        ProxyCacheEntry variant;
+        try {
+            variant = proxyCache.get(key);
+            if (variant != null && !variant.getValidators().isStale()) {
+                return completedFuture(variant);
+            }
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+        return fetchCachedAsync(url, isPrefetch).thenCompose(original -> {
+            if (original == null) {
+                return completedFuture(null);
+            }
+            if (variant != null && StringUtils.equals(variant.getSourceHash(), original.getContentHash())) {
+                // the original hasn't changed (e.g., the origin answered 304), so neither has the variant
+                try {
+                    return completedFuture(proxyCache.refreshed(key, variant, original.getValidators()));
+                } catch (IOException e) {
+                    return failedFuture(e);
+                }
+            }
+            // single-flight, as for origin fetches
+            CompletableFuture<ProxyCacheEntry> scaleFuture = new CompletableFuture<>();
+            CompletableFuture<ProxyCacheEntry> inFlight = inFlightVariants.putIfAbsent(key, scaleFuture);
+            if (inFlight != null) {
+                return inFlight;
+            }
+            scaleAsync(url, key, original, variantWidth).whenComplete((variant, t) -> {
+                inFlightVariants.remove(key, scaleFuture);
+                if (t != null) {
+                    scaleFuture.completeExceptionally(unwrap(t));
+                } else {
+                    scaleFuture.complete(variant);
+                }
+            });
+            return scaleFuture;
+        });
+    }
+
+    /**
+     * @return the smallest variant width at least as wide as requested, or 0 to serve the original
+     */
+    int getVariantWidth(int width) {
+        if (width > 0) {
+            for (int w : variantWidths) {
+                if (w >= width) {
+                    return w;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private CompletableFuture<ProxyCacheEntry> scaleAsync(String url, String key, ProxyCacheEntry original, int variantWidth) {
+        String formatName = getScalerFormatName(original.getContentType());
+        try {
+            if (formatName == null) {
+                // (not a format we can scale, e.g. animated GIF or SVG)
+                return completedFuture(proxyCache.putAlias(key, original));
+            }
+            return supplyAsync(() -> {
+                try (InputStream inputStream = original.openDecodedStream()) {
+                    byte[] scaled = getScaledImage(url, inputStream, variantWidth, scalerMaxPixels, formatName);
+                    return scaled == null ?
+                            proxyCache.putAlias(key, original) :
+                            proxyCache.put(key, scaled, "image/" + formatName, original);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, scalerExecutor);
+        } catch (RejectedExecutionException e) {
+            log.debug("Image scaler pool is saturated, serving unscaled image, url={}", url);
+            return completedFuture(original);
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+    }
+
+    private static String getScalerFormatName(String contentType) {
+        if (startsWithIgnoreCase(contentType, "image/jpeg")) {
+            return "jpeg";
+        } else if (startsWithIgnoreCase(contentType, "image/png") || startsWithIgnoreCase(contentType, "image/bmp")) {
+            return "png";
+        }
+        return null;
+    }
+
+    /**
+     * Fetches the image from the origin into the cache; if a stale image is given, revalidates it with a conditional
+     * request instead, and falls back to it if the origin can't be reached.
+     */
+    private CompletableFuture<ProxyCacheEntry> fetchAndCache(String url, String key, ProxyCacheEntry stale, boolean isPrefetch) {
+        ProxyValidators validators = stale == null ? null : stale.getValidators();
+        return fetchAsync(url, 0, validators, isPrefetch).handle((download, t) -> {
+            Throwable cause = unwrap(t);
+            boolean isHostUnavailable = cause instanceof HostUnavailableException;
+            boolean isNotAttempted = isHostUnavailable || cause instanceof ProxyCapacityException;
+            if ((t != null && !isNotAttempted) || (t == null && download == null)) {
+                // (a host that is down altogether is left to the circuit breaker)
+                negativeCache.put(key, TRUE);
+            }
+            if (stale != null && (t != null || download == null)) {
+                log.warn("Image proxy revalidation failed, serving stale image, url={}", url);
+                return stale;
+            }
+            if (isHostUnavailable) {
+                return null;
+            }
+            if (t != null) {
+                throw new CompletionException(cause);
+            }
+            try {
+                if (download == null) {
+                    return null;
+                } else if (download.isNotModified()) {
+                    notModifiedFetches.increment();
+                    return stale == null ? null : proxyCache.revalidated(key, stale, download.getValidators());
+                }
+                return proxyCache.put(key, download);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Strips the CompletionException/UncheckedIOException wrappers that checked exceptions pick up inside futures.
+     */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof UncheckedIOException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * Cache and in-flight key for an image URL: as fetched (spaces encoded), with the scheme and host lower-cased and no fragment.
+     */
+    static String normalizeUrl(String url) {
+        String normalized = url.strip().replace(" ", "+");
+        try {
+            URI uri = new URI(normalized);
+            if (uri.getScheme() != null && uri.getRawAuthority() != null) {
+                // the fragment never reaches the origin
+                return uri.getScheme().toLowerCase() + "://" + uri.getRawAuthority().toLowerCase()
+                        + defaultString(uri.getRawPath())
+                        + (uri.getRawQuery() == null ? EMPTY : "?" + uri.getRawQuery());
+            }
+        } catch (URISyntaxException ignored) {}
+
+        return normalized;
+    }
+
+    /**
+     * Fetches the image from the origin, following up to two redirects, and streams it into a download file (still
+     * encoded as the origin sent it).  With validators, the request is conditional.
+     *
+     * @return the downloaded image (or just the refreshed validators, if not modified), or null if the origin doesn't
+     * serve one (or it is larger than maxImageBytes); completes exceptionally with HostUnavailableException if the
+     * origin's circuit is open
+     */
+    private CompletableFuture<ProxyDownload> fetchAsync(String url, int depth, ProxyValidators validators, boolean isPrefetch) {
+        String host = getHost(url);
+        if (!hostCircuitBreaker.allowRequest(host)) {
+            return failedFuture(new HostUnavailableException(host, hostCircuitBreaker.getRetryAfterSecs(host)));
+        }
+        HttpRequest request;
+        try {
+            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(new URI(url.replace(" ", "+")))
+                    .header("User-Agent", this.feedGearsUserAgent)
+                    .header("Accept-Encoding", "gzip")
+                    .timeout(FETCH_TIMEOUT)
+                    .GET();
+            if (validators != null && validators.getETag() != null) {
+                requestBuilder.header("If-None-Match", validators.getETag());
+            }
+            if (validators != null && validators.getLastModified() != null) {
+                requestBuilder.header("If-Modified-Since", validators.getLastModified());
+            }
+            request = requestBuilder.build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return failedFuture(new IOException("Invalid image URL: " + url, e));
+        }
+        BodyHandler<ProxyDownload> bodyHandler = responseInfo -> isSuccess(responseInfo.statusCode()) ?
+                new CappedFileBodySubscriber(proxyCache.getDownloadDir(), maxImageBytes, FETCH_TIMEOUT.toMillis(), responseInfo.headers(), getValidators(responseInfo.headers())) :
+                BodySubscribers.replacing(null);
+        CompletableFuture<Void> slot = originFetchScheduler.acquire(host, isPrefetch);
+        if (slot.isCompletedExceptionally() && !isPrefetch) {
+            rejectedFetches.increment();
+        }
+        return slot.thenCompose(s -> {
+            CompletableFuture<HttpResponse<ProxyDownload>> exchange;
+            try {
+                exchange = httpClient.sendAsync(request, bodyHandler);
+            } catch (RuntimeException e) {
+                originFetchScheduler.release(host);
+                throw e;
+            }
+            // (the request timeout only covers the wait for the response headers; this covers the body as well)
+            return exchange.copy().orTimeout(fetchDeadlineSecs, TimeUnit.SECONDS).whenComplete((response, t) -> {
+                originFetchScheduler.release(host);
+                if (unwrap(t) instanceof TimeoutException) {
+                    exchange.cancel(true);
+                    exchange.thenAccept(ProxyFetchService::discard); // (in case the body arrives anyway)
+                }
+            });
+        }).handle((response, t) -> {
+            Throwable cause = unwrap(t);
+            if (cause instanceof ProxyCapacityException p) {
+                throw new CompletionException(p);
+            }
+            if (cause instanceof TimeoutException) {
+                cause = new HttpTimeoutException(String.format("Image proxy fetch exceeded its deadline: fetchDeadlineSecs=%d", fetchDeadlineSecs));
+            }
+            if (t == null || cause instanceof ContentTooLargeException) {
+                hostCircuitBreaker.recordSuccess(host);
+            } else if (cause instanceof IOException) {
+                hostCircuitBreaker.recordFailure(host); // (couldn't connect, or timed out)
+            }
+            if (cause instanceof ContentTooLargeException) {
+                log.warn("Image proxy fetch exceeded size limit, url={}, maxImageBytes={}", url, maxImageBytes);
+                return null;
+            }
+            if (t != null) {
+                throw new CompletionException(cause);
+            }
+            return response;
+        }).thenCompose(response -> {
+            if (response == null) {
+                return completedFuture(null);
+            }
+            int statusCode = response.statusCode();
+            //
+            // (check to broken redirect setups, e.g. http://www.virtualr.net/feed)
+            if (isRedirect(statusCode)) {
+                if (depth > 2) {
+                    log.warn("Image proxy fetch exceeded recursion depth (2), url={}, statusCode={}", url, statusCode);
+                    return completedFuture(null);
+                }
+                // get the redirect location URL
+                String redirectUrl = response.headers().firstValue("Location").orElse(null);
+                if (isNotBlank(redirectUrl)) {
+                    return fetchAsync(request.uri().resolve(redirectUrl.replace(" ", "+")).toString(), depth + 1, validators, isPrefetch);
+                } else {
+                    log.warn("Image proxy fetch redirect location is blank, url={}, statusCode={}", url, statusCode);
+                    return completedFuture(null);
+                }
+            } else if (isNotModified(statusCode)) {
+                return completedFuture(ProxyDownload.notModified(getValidators(response.headers())));
+            } else if (!isSuccess(statusCode)) {
+                log.error("Image proxy fetch failed, url={}, statusCode={}", url, statusCode);
+                return completedFuture(null);
+            }
+
+            return completedFuture(response.body());
+        });
+    }
+
+    private static void discard(HttpResponse<ProxyDownload> response) {
+        ProxyDownload download = response.body();
+        if (download != null && download.getPath() != null) {
+            try {
+                Files.deleteIfExists(download.getPath());
+            } catch (IOException e) {
+                log.warn("Unable to clean up abandoned image download, path={}, message={}", download.getPath(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the validators sent by the origin, with an expiry per its Cache-Control header (bounded below by
+     * minMaxAgeSecs, to keep no-cache images from being revalidated on every view)
+     */
+    private ProxyValidators getValidators(HttpHeaders headers) {
+        long maxAgeSecs = defaultMaxAgeSecs;
+        for (String directive : split(headers.firstValue("Cache-Control").orElse(EMPTY), ',')) {
+            directive = strip(directive).toLowerCase();
+            if (directive.equals("no-cache") || directive.equals("no-store")) {
+                maxAgeSecs = 0L;
+                break;
+            } else if (directive.startsWith("max-age=")) {
+                maxAgeSecs = toLong(substringAfter(directive, "="), defaultMaxAgeSecs);
+            }
+        }
+        return ProxyValidators.from(
+                headers.firstValue("ETag").orElse(null),
+                headers.firstValue("Last-Modified").orElse(null),
+                currentTimeMillis() + 1_000L * max(maxAgeSecs, minMaxAgeSecs));
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return (isTermporaryRedirect(statusCode) || isPermanentRedirect(statusCode)
+                || statusCode == HttpURLConnection.HTTP_SEE_OTHER);
+    }
+
+    private static boolean isTermporaryRedirect(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_MOVED_TEMP;
+    }
+
+    private static boolean isPermanentRedirect(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_MOVED_PERM;
+    }
+
+    private static boolean isNotModified(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode == HttpURLConnection.HTTP_OK;
+    }
+
+    /**
+     * Queues the image at this URL for a background fetch into the proxy cache (scaled to the given width, if any),
+     * ahead of the client asking for it.  Higher priority images are fetched first; see getPrefetchPriority.  An
+     * ImagePrefetchedEvent is published once the image is in the cache.
+     */
+    public void prefetchImage(String imgUrl, String baseUrl, int width, long priority) {
+        imgUrl = resolveImageUrl(imgUrl, baseUrl);
+        if (imgUrl != null) {
+            imagePrefetchQueue.offer(imgUrl, width, priority);
+        }
+    }
+
+    /**
+     * @return the prefetch priority of images in this post, such that the newest posts are warmed first
+     */
+    public static long getPrefetchPriority(StagingPost stagingPost) {
+        Date timestamp = stagingPost.getImportTimestamp() != null ? stagingPost.getImportTimestamp() : stagingPost.getCreated();
+        return timestamp != null ? timestamp.getTime() : 0L;
+    }
+
+    /**
+     * @return the metadata of the cached image for this URL (see ProxyCache.peek), or null if there is none
+     */
+    ProxyCacheIndexEntry peekCached(String url) throws IOException {
+        return proxyCache.peek(normalizeUrl(url));
+    }
+
+    /**
+     * @return true if fetching the image at this URL recently failed (so that it won't be retried for a while)
+     */
+    boolean isRecentlyFailed(String url) {
+        return negativeCache.getIfPresent(normalizeUrl(url)) != null;
+    }
+}
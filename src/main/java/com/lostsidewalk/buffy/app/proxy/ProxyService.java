@@ -1,130 +1,126 @@
 package com.lostsidewalk.buffy.app.proxy;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.lostsidewalk.buffy.app.audit.ProxyUrlHashException;
 import com.lostsidewalk.buffy.discovery.FeedDiscoveryImageInfo;
-import com.lostsidewalk.buffy.post.*;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 import static com.lostsidewalk.buffy.app.auth.HashingUtils.sha256;
 import static java.net.URI.create;
 import static java.net.URLEncoder.encode;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
-import static org.apache.commons.collections4.CollectionUtils.isNotEmpty;
 import static org.apache.commons.lang3.StringUtils.*;
-import static org.jsoup.safety.Safelist.relaxed;
 
+/**
+ * Image proxy URLs: rewrites image URLs to go through the proxy, and validates the URLs the proxy is asked for.  See
+ * ProxyFetchService for the proxy itself, and PostSanitizerService for securing post content.
+ */
 @Slf4j
 @Service
 public class ProxyService {
 
-    @Value("${newsgears.userAgent}")
-    String feedGearsUserAgent;
-
     @Value("${newsgears.imageProxyUrlTemplate}")
     String imageProxyUrlTemplate;
 
-    @Cacheable(value="proxyCache", key="#url")
-    public byte[] fetch(String url) throws IOException {
-        return fetch(url, 0);
-    }
+    @Value("${newsgears.proxy.rewrittenUrlCacheSize}")
+    long rewrittenUrlCacheSize;
 
-    @Cacheable(value="proxyCache", key="#url")
-    public byte[] fetch(String url, int depth) throws IOException {
-        //
-        HttpURLConnection urlConnection = openConnection(url.replace(" ", "+"));
-        //
-        int statusCode = urlConnection.getResponseCode();
+    private Cache<RewriteKey, String> rewrittenUrlMemo;
+
+    private String[] proxyUrlTemplateParts; // the image proxy URL template, split around its two %s; null if it's not that simple
+
+    private int proxyUrlTemplateLength;
+
+    @PostConstruct
+    void postConstruct() {
         //
-        String statusMessage = urlConnection.getResponseMessage();
+        // setup the rewritten image URL memo (rewriting hashes and encodes the URL, for every image, on every request)
         //
-        // (check to broken redirect setups, e.g. http://www.virtualr.net/feed)
-        if (isRedirect(statusCode)) {
-            if (depth > 2) {
-                log.warn("Image proxy fetch exceeded recursion depth (2), url={}, statusCode={}, statusMessage={}", url, statusCode, statusMessage);
-                return null;
-            }
-            // get the redirect location URL
-            String redirectUrl = urlConnection.getHeaderField("Location");
-            if (isNotBlank(redirectUrl)) {
-                return fetch(redirectUrl, depth + 1);
-            } else {
-                log.warn("Image proxy fetch redirect location is blank, url={}, statusCode={}, statusMessage={}", url, statusCode, statusMessage);
-                return null;
-            }
-        } else if (!isSuccess(statusCode)) {
-            log.error("Image proxy fetch failed, url={}, statusCode={}, statusMessage={}", url, statusCode, statusMessage);
-            return null;
-        }
-
-        try (InputStream is = urlConnection.getInputStream()) {
-            InputStream toRead;
-            if (containsIgnoreCase(urlConnection.getContentEncoding(), "gzip")) {
-                toRead = new GZIPInputStream(is);
-            } else {
-                toRead = is;
-            }
-            return toRead.readAllBytes();
+        log.info("Starting rewritten image URL cache, maxSize={}", rewrittenUrlCacheSize);
+        this.rewrittenUrlMemo = CacheBuilder.newBuilder()
+                .maximumSize(rewrittenUrlCacheSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(Metrics.globalRegistry, rewrittenUrlMemo, "rewrittenUrlCache");
+        String[] templateParts = splitByWholeSeparatorPreserveAllTokens(imageProxyUrlTemplate, "%s");
+        if (templateParts.length == 3 && !contains(imageProxyUrlTemplate, "%%")) {
+            this.proxyUrlTemplateParts = templateParts;
+            this.proxyUrlTemplateLength = imageProxyUrlTemplate.length();
         }
     }
 
-    private HttpURLConnection openConnection(String url) throws IOException {
-        URL u = new URL(url);
-        HttpURLConnection urlConnection = (HttpURLConnection) u.openConnection();
-        urlConnection.setRequestProperty("User-Agent", this.feedGearsUserAgent);
-        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
-        urlConnection.setDoOutput(true);
-        urlConnection.setReadTimeout(5 * 1_000);
-        return urlConnection;
+    public String rewriteImageUrl(String imgUrl, String baseUrl) {
+        return rewriteImageUrl(imgUrl, baseUrl, 0);
     }
 
-    private static boolean isRedirect(int statusCode) {
-        return (isTermporaryRedirect(statusCode) || isPermanentRedirect(statusCode)
-                || statusCode == HttpURLConnection.HTTP_SEE_OTHER);
-    }
+    /**
+     * @return the proxy URL for this image, requesting a variant scaled down to the given width (if positive)
+     */
+    public String rewriteImageUrl(String imgUrl, String baseUrl, int width) {
+        if (imgUrl == null) {
+            return EMPTY;
+        }
+        // the base URL only matters for root-relative image URLs; leave it out of the key otherwise, so that the same
+        // image referenced from different posts is rewritten once
+        RewriteKey key = new RewriteKey(imgUrl, startsWith(imgUrl, "/") ? baseUrl : null, width);
+        String proxyUrl = rewrittenUrlMemo.getIfPresent(key);
+        if (proxyUrl == null) {
+            proxyUrl = buildProxyUrl(imgUrl, baseUrl, width);
+            rewrittenUrlMemo.put(key, proxyUrl);
+        }
 
-    private static boolean isTermporaryRedirect(int statusCode) {
-        return statusCode == HttpURLConnection.HTTP_MOVED_TEMP;
+        return proxyUrl;
     }
 
-    private static boolean isPermanentRedirect(int statusCode) {
-        return statusCode == HttpURLConnection.HTTP_MOVED_PERM;
-    }
+    private record RewriteKey(String imgUrl, String baseUrl, int width) {}
+
+    private String buildProxyUrl(String imgUrl, String baseUrl, int width) {
+        imgUrl = resolveImageUrl(imgUrl, baseUrl);
+        if (imgUrl != null) {
+            String imgToken = strip(encodeBase64URLSafeString(sha256(imgUrl, UTF_8).getBytes()), "="); // SHA-256 + B64 the URL
+            String encodedUrl = encode(imgUrl, UTF_8);
+            if (proxyUrlTemplateParts == null) {
+                String proxyUrl = String.format(this.imageProxyUrlTemplate, imgToken, encodedUrl);
+                return width > 0 ? proxyUrl + "&w=" + width : proxyUrl;
+            }
+            StringBuilder sb = new StringBuilder(proxyUrlTemplateLength + imgToken.length() + encodedUrl.length() + 8)
+                    .append(proxyUrlTemplateParts[0])
+                    .append(imgToken)
+                    .append(proxyUrlTemplateParts[1])
+                    .append(encodedUrl)
+                    .append(proxyUrlTemplateParts[2]);
+            if (width > 0) {
+                sb.append("&w=").append(width);
+            }
+            return sb.toString();
+        }
 
-    private static boolean isSuccess(int statusCode) {
-        return statusCode == HttpURLConnection.HTTP_OK;
+        return EMPTY;
     }
 
-    public String rewriteImageUrl(String imgUrl, String baseUrl) {
+    /**
+     * @return the absolute URL of this image (resolving root-relative URLs against the base URL), or null if it isn't
+     * an http(s) URL
+     */
+    static String resolveImageUrl(String imgUrl, String baseUrl) {
         if (startsWith(imgUrl, "/") && isNotBlank(baseUrl)) {
             try {
                 URI uri = create(baseUrl);
                 imgUrl = uri.resolve("/") + imgUrl;
             } catch (Exception ignored) {}
         }
-        if (startsWith(imgUrl, "http")) {
-            imgUrl = stripEnd(imgUrl, "/");
-            String imgToken = encodeBase64URLSafeString(sha256(imgUrl, UTF_8).getBytes()); // SHA-256 + B64 the URL
-            return String.format(this.imageProxyUrlTemplate, strip(imgToken, "="), encode(imgUrl, UTF_8));
-        }
 
-        return EMPTY;
+        return startsWith(imgUrl, "http") ? stripEnd(imgUrl, "/") : null;
     }
 
     public void validateImageUrl(String imgUrl, String hash) throws ProxyUrlHashException {
@@ -134,167 +130,6 @@ public class ProxyService {
         }
     }
 
-    //
-
-    public List<StagingPost> secureStagingPosts(List<StagingPost> stagingPosts) {
-        if (isNotEmpty(stagingPosts)) {
-            for (StagingPost stagingPost : stagingPosts) {
-                String postUrl = stagingPost.getPostUrl();
-                // secure the post title HTML content
-                secureHtmlContent(stagingPost.getPostTitle(), postUrl);
-                // secure the post description HTML content
-                secureHtmlContent(stagingPost.getPostDesc(), postUrl);
-                // secure the post contents HTML content
-                List<ContentObject> postContents = stagingPost.getPostContents();
-                if (isNotEmpty(postContents)) {
-                    for (ContentObject c : postContents) {
-                        secureHtmlContent(c, postUrl);
-                    }
-                }
-                // secure the post iTunes contents
-                securePostITunes(stagingPost.getPostITunes(), postUrl);
-                // secure the post enclosures
-                List<PostEnclosure> postEnclosures = stagingPost.getEnclosures();
-                if (isNotEmpty(postEnclosures)) {
-                    for (PostEnclosure e : postEnclosures) {
-                        securePostEnclosure(e, postUrl);
-                    }
-                }
-                // secure the post media contents
-                securePostMedia(stagingPost.getPostMedia(), postUrl);
-            }
-        }
-        return stagingPosts;
-    }
-
-    private void secureHtmlContent(ContentObject obj, String baseUrl) {
-        if (isHtmlContent(obj)) {
-            String rawHtml = obj.getValue();
-            String cleanHtml = Jsoup.clean(rawHtml, relaxed()); // this must remove embed and object tags
-            Document document = Jsoup.parse(cleanHtml);
-            document.getElementsByTag("img").forEach(e -> {
-                String imgUrl = e.attr("src");
-                e.attr("src", this.rewriteImageUrl(imgUrl, baseUrl));
-                e.addClass("post-html-frame-img");
-                // get the existing style property value
-                String existingStyle = e.attr("style");
-                Map<String, String> styleMap = parseStyleAttribute(existingStyle);
-                // update or add the new style properties
-                styleMap.put("max-width", "650px");
-                styleMap.put("height", "auto");
-                styleMap.put("object-fit", "contain");
-                // reconstruct the style attribute
-                StringBuilder updatedStyle = new StringBuilder();
-                for (Map.Entry<String, String> entry : styleMap.entrySet()) {
-                    updatedStyle.append(entry.getKey()).append(":").append(entry.getValue()).append(";");
-                }
-                e.attr("style", updatedStyle.toString());
-            });
-            document.getElementsByTag("a").forEach(e -> {
-                e.attr("target", "_blank");
-                e.attr("rel", "noopener");
-            });
-            //
-            obj.setValue(document.toString());
-        }
-    }
-
-    private static Map<String, String> parseStyleAttribute(String styleAttribute) {
-        Map<String, String> styleMap = new HashMap<>();
-
-        if (!styleAttribute.isEmpty()) {
-            String[] stylePairs = styleAttribute.split(";");
-            for (String stylePair : stylePairs) {
-                String[] propertyValue = stylePair.split(":");
-                if (propertyValue.length == 2) {
-                    String property = propertyValue[0].trim();
-                    String value = propertyValue[1].trim();
-                    styleMap.put(property, value);
-                }
-            }
-        }
-
-        return styleMap;
-    }
-
-    private static boolean isHtmlContent(ContentObject obj) {
-        return obj != null && containsIgnoreCase(obj.getType(), "html");
-    }
-
-    private void securePostITunes(PostITunes postITunes, String basesUrl) {
-        if (postITunes != null && postITunes.getImageUri() != null) {
-            postITunes.setImageUri(this.rewriteImageUrl(postITunes.getImageUri(), basesUrl));
-        }
-    }
-
-    private void securePostEnclosure(PostEnclosure postEnclosure, String baseUrl) {
-        if (isImageEnclosure(postEnclosure)) {
-            postEnclosure.setUrl(this.rewriteImageUrl(postEnclosure.getUrl(), baseUrl));
-        }
-    }
-
-    private static boolean isImageEnclosure(PostEnclosure enc) {
-        return enc != null && containsIgnoreCase(enc.getType(), "image");
-    }
-
-    private void securePostMedia(PostMedia postMedia, String baseUrl) {
-        if (postMedia != null) {
-            List<PostMediaContent> postMediaContents = postMedia.getPostMediaContents();
-            if (isNotEmpty(postMediaContents)) {
-                for (PostMediaContent c : postMediaContents) {
-                    securePostMediaContent(c, baseUrl);
-                }
-            }
-            PostMediaMetadata postMediaMetadata = postMedia.getPostMediaMetadata();
-            if (postMediaMetadata != null) {
-                securePostMediaMetadata(postMediaMetadata, baseUrl);
-            }
-            List<PostMediaGroup> postMediaGroups = postMedia.getPostMediaGroups();
-            for (PostMediaGroup g : postMediaGroups) {
-                securePostMediaMetadata(g.getPostMediaMetadata(), baseUrl);
-                for (PostMediaContent gc : g.getPostMediaContents()) {
-                    securePostMediaContent(gc, baseUrl);
-                }
-            }
-        }
-    }
-
-    private void securePostMediaContent(PostMediaContent content, String baseUrl) {
-        if (isImageContent(content)) {
-            securePostMediaReference(content.getReference(), baseUrl);
-        }
-    }
-
-    private static boolean isImageContent(PostMediaContent con) {
-        return con != null &&
-                (containsIgnoreCase(con.getType(), "image") || containsIgnoreCase(con.getMedium(), "image"));
-    }
-
-    private void securePostMediaReference(PostMediaReference reference, String baseUrl) {
-        if (reference != null) {
-            reference.setUri(create(this.rewriteImageUrl(reference.getUri().toString(), baseUrl)));
-        }
-    }
-
-    private void securePostMediaMetadata(PostMediaMetadata metadata, String baseUrl) {
-        if (metadata != null) {
-            List<PostMediaThumbnail> postMediaThumbnails = metadata.getThumbnails();
-            if (isNotEmpty(postMediaThumbnails)) {
-                for (PostMediaThumbnail t : postMediaThumbnails) {
-                    securePostMediaThumbnail(t, baseUrl);
-                }
-            }
-        }
-    }
-
-    private void securePostMediaThumbnail(PostMediaThumbnail thumbnail, String baseUrl) {
-        if (thumbnail != null) {
-            thumbnail.setUrl(create(this.rewriteImageUrl(thumbnail.getUrl().toString(), baseUrl)));
-        }
-    }
-
-    //
-
     public void secureFeedDiscoveryImageInfo(FeedDiscoveryImageInfo feedDiscoveryImageInfo) {
         if (feedDiscoveryImageInfo != null) {
             String originalUrl = feedDiscoveryImageInfo.getUrl();
@@ -0,0 +1,44 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import lombok.Data;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * The origin's validators for a cached image, and when it has to be revalidated with them.
+ */
+@Data
+public class ProxyValidators {
+
+    static final ProxyValidators NONE = new ProxyValidators(null, null, 0L);
+
+    final String eTag;
+
+    final String lastModified; // as sent by the origin
+
+    final long expiresAt; // epoch millis, per the origin's Cache-Control max-age
+
+    private ProxyValidators(String eTag, String lastModified, long expiresAt) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+    }
+
+    static ProxyValidators from(String eTag, String lastModified, long expiresAt) {
+        return new ProxyValidators(eTag, lastModified, expiresAt);
+    }
+
+    public boolean isStale() {
+        return currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * @return these validators, refreshed by a 304 response (which may leave out validators that haven't changed)
+     */
+    ProxyValidators refresh(ProxyValidators notModified) {
+        return new ProxyValidators(
+                notModified.eTag != null ? notModified.eTag : eTag,
+                notModified.lastModified != null ? notModified.lastModified : lastModified,
+                notModified.expiresAt);
+    }
+}
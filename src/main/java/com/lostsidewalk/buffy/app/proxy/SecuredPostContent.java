@@ -0,0 +1,46 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.post.*;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The parts of a staging post that secureStagingPost rewrites, as stored in staging_posts.secured_post.
+ */
+@Data
+public class SecuredPostContent {
+
+    ContentObject postTitle;
+
+    ContentObject postDesc;
+
+    List<ContentObject> postContents;
+
+    PostITunes postITunes;
+
+    List<PostEnclosure> enclosures;
+
+    PostMedia postMedia;
+
+    static SecuredPostContent from(StagingPost stagingPost) {
+        SecuredPostContent c = new SecuredPostContent();
+        c.postTitle = stagingPost.getPostTitle();
+        c.postDesc = stagingPost.getPostDesc();
+        c.postContents = stagingPost.getPostContents();
+        c.postITunes = stagingPost.getPostITunes();
+        c.enclosures = stagingPost.getEnclosures();
+        c.postMedia = stagingPost.getPostMedia();
+
+        return c;
+    }
+
+    void applyTo(StagingPost stagingPost) {
+        stagingPost.setPostTitle(postTitle);
+        stagingPost.setPostDesc(postDesc);
+        stagingPost.setPostContents(postContents);
+        stagingPost.setPostITunes(postITunes);
+        stagingPost.setEnclosures(enclosures);
+        stagingPost.setPostMedia(postMedia);
+    }
+}
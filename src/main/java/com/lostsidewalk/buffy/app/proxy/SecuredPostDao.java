@@ -0,0 +1,77 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.google.gson.Gson;
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the secured_post/secured_version columns of staging_posts.
+ */
+@Slf4j
+@Component
+public class SecuredPostDao {
+
+    private static final Gson GSON = new Gson();
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private static final String FIND_BY_IDS_SQL = "select id, secured_post from staging_posts where id = any(?) and secured_version = ?";
+
+    public Map<Long, SecuredPostContent> findByIds(List<Long> ids, String securedVersion) throws DataAccessException {
+        Map<Long, SecuredPostContent> results = new HashMap<>();
+        try {
+            jdbcTemplate.query(FIND_BY_IDS_SQL,
+                    ps -> {
+                        ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+                        ps.setString(2, securedVersion);
+                    },
+                    rs -> {
+                        String securedPost = rs.getString("secured_post");
+                        if (securedPost != null) {
+                            results.put(rs.getLong("id"), GSON.fromJson(securedPost, SecuredPostContent.class));
+                        }
+                    });
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataAccessException(getClass().getSimpleName(), "findByIds", e.getMessage(), ids, securedVersion);
+        }
+
+        return results;
+    }
+
+    private static final String UPDATE_SECURED_POST_SQL = "update staging_posts set secured_post = ?::json, secured_version = ? where id = ?";
+
+    public void updateSecuredPosts(Map<Long, SecuredPostContent> securedPosts, String securedVersion) throws DataUpdateException {
+        List<Object[]> batchArgs = new ArrayList<>(securedPosts.size());
+        securedPosts.forEach((id, c) -> batchArgs.add(new Object[] { GSON.toJson(c), securedVersion, id }));
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SECURED_POST_SQL, batchArgs);
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "updateSecuredPosts", e.getMessage(), securedPosts.keySet(), securedVersion);
+        }
+    }
+
+    // (bumps last_modified, which the trigger leaves alone for the secured columns, so that clients pick up the post
+    // again once it has been secured again)
+    private static final String CLEAR_SECURED_VERSION_SQL = "update staging_posts set secured_version = null, last_modified = current_timestamp where id = any(?) and secured_version is not null";
+
+    public void clearSecuredVersions(List<Long> ids) throws DataUpdateException {
+        try {
+            jdbcTemplate.update(CLEAR_SECURED_VERSION_SQL, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+        } catch (Exception e) {
+            log.error("Something horrible happened due to: {}", e.getMessage(), e);
+            throw new DataUpdateException(getClass().getSimpleName(), "clearSecuredVersions", e.getMessage(), ids);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.DataUpdateException;
+import com.lostsidewalk.buffy.app.audit.ErrorLogService;
+import com.lostsidewalk.buffy.post.StagingPost;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.normalizeUrl;
+import static java.util.Collections.emptyMap;
+import static org.apache.commons.collections4.CollectionUtils.isEmpty;
+import static org.apache.commons.collections4.MapUtils.isNotEmpty;
+
+/**
+ * Serves the secured representation of staging posts from staging_posts.secured_post, computing (and storing)
+ * it on first read, or when the stored copy was produced by a different sanitizer version.  Posts stored before their
+ * inline images were in the proxy cache (so without those images' dimensions) are secured again once the images have
+ * been prefetched.
+ */
+@Slf4j
+@Service
+public class SecuredPostService {
+
+    @Autowired
+    ErrorLogService errorLogService;
+
+    @Autowired
+    PostSanitizerService postSanitizerService;
+
+    @Autowired
+    SecuredPostDao securedPostDao;
+
+    @Value("${newsgears.proxy.pendingImageTtlSecs}")
+    long pendingImageTtlSecs; // how long to wait for an image prefetch before giving up on its dimensions
+
+    private Cache<String, Set<Long>> postIdsByPendingImageUrl;
+
+    private final Set<Long> resecurePostIds = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void postConstruct() {
+        this.postIdsByPendingImageUrl = CacheBuilder.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(pendingImageTtlSecs, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public List<StagingPost> secureStagingPosts(List<StagingPost> stagingPosts) {
+        if (isEmpty(stagingPosts)) {
+            return stagingPosts;
+        }
+        String securedVersion = postSanitizerService.getSecuredVersion();
+        // (1) apply the stored secured content, where it is current
+        Map<Long, SecuredPostContent> stored = findStored(stagingPosts, securedVersion);
+        List<StagingPost> misses = new ArrayList<>();
+        for (StagingPost stagingPost : stagingPosts) {
+            SecuredPostContent c = stored.get(stagingPost.getId());
+            if (c != null) {
+                c.applyTo(stagingPost);
+            } else {
+                misses.add(stagingPost);
+            }
+        }
+        // (2) compute the secured content for the rest, and store it for subsequent reads; posts with images that are
+        // still being fetched are stored without their dimensions, and secured again when the prefetch completes
+        if (!misses.isEmpty()) {
+            Map<Long, Set<String>> pendingImageUrls = postSanitizerService.secureStagingPostsForStorage(misses);
+            pendingImageUrls.forEach((id, urls) -> urls.forEach(url ->
+                    postIdsByPendingImageUrl.asMap().computeIfAbsent(url, u -> ConcurrentHashMap.newKeySet()).add(id)));
+            Map<Long, SecuredPostContent> computed = new HashMap<>();
+            for (StagingPost stagingPost : misses) {
+                if (stagingPost.getId() != null) {
+                    computed.put(stagingPost.getId(), SecuredPostContent.from(stagingPost));
+                }
+            }
+            store(computed, securedVersion);
+        }
+        log.debug("Secured staging posts: postCt={}, storedCt={}, computedCt={}", stagingPosts.size(), stored.size(), misses.size());
+
+        return stagingPosts;
+    }
+
+    @EventListener
+    public void handleImagePrefetchedEvent(ImagePrefetchedEvent event) {
+        Set<Long> postIds = postIdsByPendingImageUrl.asMap().remove(normalizeUrl(event.getUrl()));
+        if (postIds != null) {
+            resecurePostIds.addAll(postIds);
+        }
+    }
+
+    /**
+     * Clears the stored secured content of posts whose pending images have since been prefetched, in one batch, so that
+     * the next read secures them again (now with the images' dimensions).
+     */
+    @Scheduled(fixedDelay = 5_000, initialDelay = 5_000)
+    public void clearResecuredPosts() {
+        List<Long> ids = new ArrayList<>(resecurePostIds);
+        if (!ids.isEmpty()) {
+            ids.forEach(resecurePostIds::remove);
+            try {
+                securedPostDao.clearSecuredVersions(ids);
+                log.debug("Cleared secured content of posts with prefetched images, postCt={}", ids.size());
+            } catch (DataUpdateException e) {
+                errorLogService.logDataUpdateException("sys", new Date(), e);
+            }
+        }
+    }
+
+    private Map<Long, SecuredPostContent> findStored(List<StagingPost> stagingPosts, String securedVersion) {
+        List<Long> ids = stagingPosts.stream().map(StagingPost::getId).filter(Objects::nonNull).toList();
+        if (!ids.isEmpty()) {
+            try {
+                Map<Long, SecuredPostContent> stored = securedPostDao.findByIds(ids, securedVersion);
+                if (stored != null) {
+                    return stored;
+                }
+            } catch (DataAccessException e) {
+                errorLogService.logDataAccessException("sys", new Date(), e);
+            }
+        }
+        return emptyMap();
+    }
+
+    private void store(Map<Long, SecuredPostContent> computed, String securedVersion) {
+        if (isNotEmpty(computed)) {
+            try {
+                securedPostDao.updateSecuredPosts(computed, securedVersion);
+            } catch (DataUpdateException e) {
+                errorLogService.logDataUpdateException("sys", new Date(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.lostsidewalk.buffy.app.thumbnail;
+
+import lombok.Data;
+
+/**
+ * Published when a queue thumbnail that a user asked for (see ThumbnailService.findOrQueueThumbnail) has been rendered.
+ */
+@Data
+public class ThumbnailRenderedEvent {
+
+    final String username;
+
+    final Long queueId;
+
+    final String transportIdent;
+
+    final byte[] image;
+
+    private ThumbnailRenderedEvent(String username, Long queueId, String transportIdent, byte[] image) {
+        this.username = username;
+        this.queueId = queueId;
+        this.transportIdent = transportIdent;
+        this.image = image;
+    }
+
+    public static ThumbnailRenderedEvent from(String username, Long queueId, String transportIdent, byte[] image) {
+        return new ThumbnailRenderedEvent(username, queueId, transportIdent, image);
+    }
+}
@@ -1,19 +1,29 @@
 package com.lostsidewalk.buffy.app.thumbnail;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.lostsidewalk.buffy.DataAccessException;
 import com.lostsidewalk.buffy.model.RenderedThumbnailDao;
 import com.lostsidewalk.buffy.app.audit.ErrorLogService;
 import com.lostsidewalk.buffy.model.RenderedThumbnail;
+import com.lostsidewalk.buffy.queue.QueueDefinition;
 import com.lostsidewalk.buffy.thumbnail.ThumbnailDao;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.commons.codec.binary.Base64.decodeBase64;
 import static org.apache.commons.collections4.CollectionUtils.size;
@@ -30,14 +40,46 @@ public class ThumbnailService {
     @Autowired
     RenderedThumbnailDao renderedThumbnailDao; // for redis interaction
 
+    @Autowired
+    ApplicationEventPublisher applicationEventPublisher;
+
+    @Value("${newsgears.thumbnail.renderThreads}")
+    int renderThreads;
+
+    @Value("${newsgears.thumbnail.renderQueueSize}")
+    int renderQueueSize; // beyond this, renders are dropped (and queued again on the next request)
+
+    @Value("${newsgears.thumbnail.memoryCacheMaxBytes}")
+    long memoryCacheMaxBytes;
+
+    @Value("${newsgears.thumbnail.memoryCacheTtlSecs}")
+    long memoryCacheTtlSecs; // bounds how long another instance's re-render can go unseen
+
+    @Value("${newsgears.thumbnail.lookupThreads}")
+    int lookupThreads; // for batched lookups
+
+    private ExecutorService renderExecutor;
+
+    private Cache<String, RenderedThumbnail> renderedThumbnailCache; // in front of redis
+
+    private ExecutorService lookupExecutor;
+
+    // transport ident -> the pending render, and the users waiting on it
+    private final ConcurrentHashMap<String, RenderJob> renderJobs = new ConcurrentHashMap<>();
+
     public RenderedThumbnail getThumbnail(String transportIdent) throws DataAccessException {
         if (isBlank(transportIdent)) {
             return null;
         }
+        RenderedThumbnail thumbnail = renderedThumbnailCache.getIfPresent(transportIdent);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
         log.debug("Attempting to locate thumbnail at transportIdent={}", transportIdent);
-        RenderedThumbnail thumbnail = renderedThumbnailDao.findThumbnailByTransportIdent(transportIdent);
+        thumbnail = renderedThumbnailDao.findThumbnailByTransportIdent(transportIdent);
         if (thumbnail != null) {
             log.debug("Thumbnail located at transportIdent={}", transportIdent);
+            cacheThumbnail(transportIdent, thumbnail);
         } else {
             log.debug("Unable to locate thumbnail at transportIdent={}", transportIdent);
         }
@@ -45,6 +87,67 @@ public class ThumbnailService {
         return thumbnail;
     }
 
+    /**
+     * @return the thumbnails found at the given transport idents (those not found are left out), looking up all that
+     * aren't cached in-process at once, rather than one after the other
+     */
+    public Map<String, RenderedThumbnail> getThumbnails(Collection<String> transportIdents) throws DataAccessException {
+        Map<String, RenderedThumbnail> thumbnails = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String transportIdent : new LinkedHashSet<>(transportIdents)) {
+            if (isBlank(transportIdent)) {
+                continue;
+            }
+            RenderedThumbnail thumbnail = renderedThumbnailCache.getIfPresent(transportIdent);
+            if (thumbnail != null) {
+                thumbnails.put(transportIdent, thumbnail);
+            } else {
+                misses.add(transportIdent);
+            }
+        }
+        if (misses.size() == 1) {
+            RenderedThumbnail thumbnail = getThumbnail(misses.get(0));
+            if (thumbnail != null) {
+                thumbnails.put(misses.get(0), thumbnail);
+            }
+        } else if (misses.size() > 1) {
+            List<CompletableFuture<RenderedThumbnail>> lookups = new ArrayList<>(misses.size());
+            for (String transportIdent : misses) {
+                lookups.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return renderedThumbnailDao.findThumbnailByTransportIdent(transportIdent);
+                    } catch (DataAccessException e) {
+                        throw new CompletionException(e);
+                    }
+                }, lookupExecutor));
+            }
+            for (int i = 0; i < misses.size(); i++) {
+                RenderedThumbnail thumbnail;
+                try {
+                    thumbnail = lookups.get(i).join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof DataAccessException d) {
+                        throw d;
+                    }
+                    throw e;
+                }
+                if (thumbnail != null) {
+                    thumbnails.put(misses.get(i), thumbnail);
+                    cacheThumbnail(misses.get(i), thumbnail);
+                }
+            }
+            log.debug("Located thumbnails: requestedCt={}, lookupCt={}, foundCt={}", transportIdents.size(), misses.size(), thumbnails.size());
+        }
+
+        return thumbnails;
+    }
+
+    private void cacheThumbnail(String transportIdent, RenderedThumbnail thumbnail) {
+        if (thumbnail.getImage() != null) {
+            renderedThumbnailCache.put(transportIdent, thumbnail);
+        }
+    }
+
     public RenderedThumbnail refreshThumbnailFromSrc(String transportIdent, String feedImgSrc) throws DataAccessException {
         byte[] imageBytes = decodeBase64(feedImgSrc);
         if (imageBytes == null) {
@@ -52,10 +155,129 @@ public class ThumbnailService {
         }
         RenderedThumbnail thumbnail = RenderedThumbnail.from(transportIdent, imageBytes);
         renderedThumbnailDao.putThumbnailAtTransportIdent(transportIdent, thumbnail);
+        cacheThumbnail(transportIdent, thumbnail);
 
         return thumbnail;
     }
 
+    /**
+     * @return the rendered thumbnail for this queue, or null if it hasn't been rendered yet; in that case, it's rendered
+     * in the background (once per transport ident, no matter how many requests ask for it), and a ThumbnailRenderedEvent
+     * is published for each user that asked once it's ready
+     */
+    public RenderedThumbnail findOrQueueThumbnail(QueueDefinition queueDefinition) throws DataAccessException {
+        String transportIdent = queueDefinition.getQueueImgTransportIdent();
+        RenderedThumbnail thumbnail = getThumbnail(transportIdent);
+        if (thumbnail != null || isBlank(transportIdent)) {
+            return thumbnail;
+        }
+        return queueRender(queueDefinition);
+    }
+
+    /**
+     * As findOrQueueThumbnail, for several queues, looked up in one batch (see getThumbnails).
+     *
+     * @return the rendered thumbnails, keyed by transport ident
+     */
+    public Map<String, RenderedThumbnail> findOrQueueThumbnails(Collection<QueueDefinition> queueDefinitions) throws DataAccessException {
+        Map<String, RenderedThumbnail> thumbnails = getThumbnails(queueDefinitions.stream()
+                .map(QueueDefinition::getQueueImgTransportIdent)
+                .filter(Objects::nonNull)
+                .toList());
+        for (QueueDefinition queueDefinition : queueDefinitions) {
+            String transportIdent = queueDefinition.getQueueImgTransportIdent();
+            if (isBlank(transportIdent) || isBlank(queueDefinition.getQueueImgSrc()) || thumbnails.containsKey(transportIdent)) {
+                continue;
+            }
+            RenderedThumbnail thumbnail = queueRender(queueDefinition);
+            if (thumbnail != null) {
+                thumbnails.put(transportIdent, thumbnail);
+            }
+        }
+
+        return thumbnails;
+    }
+
+    private RenderedThumbnail queueRender(QueueDefinition queueDefinition) {
+        String transportIdent = queueDefinition.getQueueImgTransportIdent();
+        RenderWaiter waiter = new RenderWaiter(queueDefinition.getUsername(), queueDefinition.getId());
+        RenderJob job = new RenderJob();
+        RenderJob inFlight = renderJobs.putIfAbsent(transportIdent, job);
+        if (inFlight != null) {
+            // coalesce with the pending render, unless it finished in the meantime
+            return inFlight.addWaiter(waiter) ? null : renderedThumbnailCache.getIfPresent(transportIdent);
+        }
+        job.addWaiter(waiter);
+        String imgSrc = queueDefinition.getQueueImgSrc();
+        try {
+            renderExecutor.execute(() -> render(transportIdent, imgSrc, job));
+        } catch (RejectedExecutionException e) {
+            // (rather than render on the request thread; the next request for this thumbnail queues it again)
+            log.debug("Thumbnail render queue is full, dropping render, transportIdent={}", transportIdent);
+            renderJobs.remove(transportIdent, job);
+            job.finish();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if a thumbnail render that this user asked for hasn't finished yet
+     */
+    public boolean isRenderPending(String username) {
+        for (RenderJob job : renderJobs.values()) {
+            if (job.hasWaiter(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void render(String transportIdent, String imgSrc, RenderJob job) {
+        RenderedThumbnail thumbnail = null;
+        try {
+            thumbnail = refreshThumbnailFromSrc(transportIdent, imgSrc);
+        } catch (DataAccessException e) {
+            errorLogService.logDataAccessException("sys", new Date(), e);
+        } catch (Exception e) {
+            log.error("Thumbnail rendering failed for transportIdent={} due to: {}", transportIdent, e.getMessage());
+        } finally {
+            renderJobs.remove(transportIdent, job);
+        }
+        Set<RenderWaiter> waiters = job.finish();
+        if (thumbnail != null && thumbnail.getImage() != null) {
+            for (RenderWaiter w : waiters) {
+                applicationEventPublisher.publishEvent(ThumbnailRenderedEvent.from(w.username(), w.queueId(), transportIdent, thumbnail.getImage()));
+            }
+        }
+    }
+
+    private record RenderWaiter(String username, Long queueId) {}
+
+    private static class RenderJob {
+
+        private final Set<RenderWaiter> waiters = new HashSet<>();
+
+        private boolean isDone;
+
+        synchronized boolean addWaiter(RenderWaiter waiter) {
+            if (isDone) {
+                return false;
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        synchronized boolean hasWaiter(String username) {
+            return !isDone && waiters.stream().anyMatch(w -> StringUtils.equals(w.username(), username));
+        }
+
+        synchronized Set<RenderWaiter> finish() {
+            isDone = true;
+            return waiters;
+        }
+    }
+
     //
     //
     //
@@ -65,6 +287,27 @@ public class ThumbnailService {
 
     @PostConstruct
     public void postConstruct() {
+        log.info("Starting rendered thumbnail cache, maxBytes={}, ttlSecs={}", memoryCacheMaxBytes, memoryCacheTtlSecs);
+        this.renderedThumbnailCache = CacheBuilder.newBuilder()
+                .maximumWeight(memoryCacheMaxBytes)
+                .<String, RenderedThumbnail>weigher((k, v) -> 2 * k.length() + v.getImage().length)
+                .expireAfterWrite(memoryCacheTtlSecs, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(Metrics.globalRegistry, renderedThumbnailCache, "renderedThumbnailCache");
+        AtomicInteger lookupThreadCt = new AtomicInteger();
+        this.lookupExecutor = Executors.newFixedThreadPool(lookupThreads, r -> {
+            Thread t = new Thread(r, "thumbnail-lookup-" + lookupThreadCt.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("Starting thumbnail render pool: renderThreads={}, renderQueueSize={}", renderThreads, renderQueueSize);
+        AtomicInteger renderThreadCt = new AtomicInteger();
+        this.renderExecutor = new ThreadPoolExecutor(renderThreads, renderThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(renderQueueSize), r -> {
+            Thread t = new Thread(r, "thumbnail-render-" + renderThreadCt.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
         try {
             StopWatch stopWatch = StopWatch.createStarted();
             List<String> cache = getThumbnailCache();
@@ -76,6 +319,12 @@ public class ThumbnailService {
         }
     }
 
+    @PreDestroy
+    void preDestroy() {
+        this.renderExecutor.shutdown();
+        this.lookupExecutor.shutdown();
+    }
+
     public String getRandom() throws DataAccessException {
         List<String> cache = getThumbnailCache();
         int randIdx = nextInt(0, cache.size());
@@ -4,16 +4,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.imgscalr.Scalr;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 
 import static javax.imageio.ImageIO.createImageInputStream;
 import static javax.imageio.ImageIO.write;
+import static org.imgscalr.Scalr.Method.QUALITY;
 import static org.imgscalr.Scalr.Method.ULTRA_QUALITY;
 import static org.imgscalr.Scalr.Mode.AUTOMATIC;
+import static org.imgscalr.Scalr.Mode.FIT_TO_WIDTH;
 
 @Slf4j
 public class ThumbnailUtils {
@@ -38,4 +44,60 @@ public class ThumbnailUtils {
         write(thumbnailImage, "png", baos);
         return baos.toByteArray();
     }
+
+    /**
+     * @return the width and height of the image, read from its header (without decoding it), or null if it isn't in a
+     * format that can be read
+     */
+    public static Dimension getImageDimensions(String path, InputStream inputSrc) {
+        try (ImageInputStream imageInputStream = createImageInputStream(inputSrc)) {
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            if (!imageReaders.hasNext()) {
+                return null;
+            }
+            ImageReader imageReader = imageReaders.next();
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                return new Dimension(imageReader.getWidth(0), imageReader.getHeight(0));
+            } finally {
+                imageReader.dispose();
+            }
+        } catch (Exception e) {
+            log.warn("Image header decoding of path={} failed due to: {}", path, e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the image scaled down to targetWidth and encoded as formatName, or null if it is no wider than targetWidth,
+     * has more than maxPixels (checked before decoding), or can't be decoded
+     */
+    public static byte[] getScaledImage(String path, InputStream inputSrc, int targetWidth, long maxPixels, String formatName) {
+        try (ImageInputStream imageInputStream = createImageInputStream(inputSrc)) {
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            if (!imageReaders.hasNext()) {
+                return null;
+            }
+            ImageReader imageReader = imageReaders.next();
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                int width = imageReader.getWidth(0);
+                if (width <= targetWidth || (long) width * imageReader.getHeight(0) > maxPixels) {
+                    return null;
+                }
+                BufferedImage bufferedImage = imageReader.read(0);
+                // (QUALITY rather than ULTRA_QUALITY, as this runs while a client waits)
+                BufferedImage scaledImage = Scalr.resize(bufferedImage, QUALITY, FIT_TO_WIDTH, targetWidth);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                return write(scaledImage, formatName, baos) ? baos.toByteArray() : null;
+            } finally {
+                imageReader.dispose();
+            }
+        } catch (Exception e) {
+            log.warn("Image scaling of path={} failed due to: {}", path, e.getMessage());
+        }
+
+        return null;
+    }
 }
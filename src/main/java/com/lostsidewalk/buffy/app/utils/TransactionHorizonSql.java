@@ -0,0 +1,25 @@
+package com.lostsidewalk.buffy.app.utils;
+
+/**
+ * The transaction horizon: the start of the oldest transaction still in flight in this database (or now, if there are
+ * none), less a margin in seconds for clock reads.  Rows stamped with current_timestamp before it, and Ids drawn before
+ * it, are either committed (and visible to the queries that follow) or never will be.
+ * <p>
+ * Parameters are, in order: the comma-separated roles that write staging posts and metrics (i.e., the app and the
+ * importer; transactions of other roles, such as backups or ad-hoc sessions, don't hold the horizon back), the
+ * maximum lag in seconds (a writer transaction open longer than this no longer holds the horizon back, trading its
+ * rows for progress), and the margin in seconds.
+ * <p>
+ * Reading xact_start for sessions of other roles requires the pg_read_all_stats role (or superuser); without it those
+ * values read as NULL, and the horizon only waits for transactions of the app's own role.
+ */
+public class TransactionHorizonSql {
+
+    public static final String TRANSACTION_HORIZON_SQL = "select greatest(least(current_timestamp, " +
+            "(select min(xact_start) from pg_stat_activity where datname = current_database() " +
+            "and usename = any(string_to_array(?, ',')) " +
+            "and backend_type = 'client backend' and pid <> pg_backend_pid())), " +
+            "current_timestamp - make_interval(secs => ?)) - make_interval(secs => ?)";
+
+    private TransactionHorizonSql() {}
+}
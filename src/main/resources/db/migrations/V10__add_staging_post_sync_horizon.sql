@@ -0,0 +1,24 @@
+--
+-- last_modified maintenance for staging_posts (also on insert, so that every row's sync position is the start of the
+-- transaction that wrote it); as in V5, writing the secured columns is not a post modification
+--
+drop trigger if exists trg_staging_posts_touch_last_modified on staging_posts;
+
+create trigger trg_staging_posts_touch_last_modified before insert or update of
+    post_title, post_desc, post_contents, post_media, post_itunes, post_url, post_urls, post_img_url,
+    post_img_transport_ident, importer_id, importer_desc, subscription_id, queue_id, import_timestamp,
+    is_published, post_read_status, post_pub_status, post_hash, username, post_comment, post_rights,
+    contributors, authors, post_categories, publish_timestamp, expiration_timestamp, enclosures,
+    last_updated_timestamp, is_archived
+    on staging_posts
+    for each row execute function staging_posts_touch_last_modified();
+--
+-- indexes
+--
+drop index if exists idx_staging_post_tombstones_username;
+drop index if exists idx_staging_post_tombstones_username_deleted;
+
+create index idx_staging_post_tombstones_username_deleted on staging_post_tombstones(username, deleted, id);
+--
+-- end
+--
@@ -0,0 +1,12 @@
+--
+-- marking a queue read writes a queue_read_watermarks row rather than updating each post, so post_read_status only
+-- holds a post's own (explicitly set) read status
+--
+comment on column staging_posts.post_read_status is
+    'The read status set on this post itself. Not its effective read status: a queue_read_watermarks row on the post''s queue overrides it for posts imported at or before read_before, unless post_read_status_modified is after marked_at. See staging_posts_effective_read_status().';
+
+comment on table queue_read_watermarks is
+    'Per-queue read watermarks (mark queue read). Readers of staging_posts.post_read_status must resolve it against these.';
+--
+-- end
+--
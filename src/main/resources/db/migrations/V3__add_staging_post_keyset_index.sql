@@ -0,0 +1,9 @@
+--
+-- keyset (import_timestamp, id) index for paged staging post fetch
+--
+drop index if exists idx_staging_posts_username_import_order;
+
+create index idx_staging_posts_username_import_order on staging_posts(username, (coalesce(import_timestamp, created)) desc, id desc);
+--
+-- end
+--
@@ -0,0 +1,53 @@
+--
+-- last_modified maintenance for staging_posts
+--
+create or replace function staging_posts_touch_last_modified() returns trigger as $$
+begin
+    new.last_modified = current_timestamp;
+    return new;
+end;
+$$ language plpgsql;
+
+drop trigger if exists trg_staging_posts_touch_last_modified on staging_posts;
+
+create trigger trg_staging_posts_touch_last_modified before update on staging_posts
+    for each row execute function staging_posts_touch_last_modified();
+--
+-- staging_post_tombstones table
+--
+drop table if exists staging_post_tombstones cascade;
+
+create table staging_post_tombstones (
+    id bigserial,
+    post_id integer not null,
+    queue_id integer not null,
+    username varchar(100) not null,
+    deleted timestamp with time zone not null default current_timestamp,
+
+    primary key (id)
+);
+
+create or replace function staging_posts_record_tombstone() returns trigger as $$
+begin
+    insert into staging_post_tombstones (post_id, queue_id, username) values (old.id, old.queue_id, old.username);
+    return old;
+end;
+$$ language plpgsql;
+
+drop trigger if exists trg_staging_posts_record_tombstone on staging_posts;
+
+create trigger trg_staging_posts_record_tombstone after delete on staging_posts
+    for each row execute function staging_posts_record_tombstone();
+--
+-- indexes
+--
+drop index if exists idx_staging_posts_username_modified;
+drop index if exists idx_staging_post_tombstones_username;
+drop index if exists idx_staging_post_tombstones_deleted;
+
+create index idx_staging_posts_username_modified on staging_posts(username, (coalesce(last_modified, created)), id);
+create index idx_staging_post_tombstones_username on staging_post_tombstones(username, id);
+create index idx_staging_post_tombstones_deleted on staging_post_tombstones(deleted);
+--
+-- end
+--
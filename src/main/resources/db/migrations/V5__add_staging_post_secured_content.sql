@@ -0,0 +1,37 @@
+--
+-- secured (sanitized/proxied) post content, computed once and stored alongside the raw columns
+--
+alter table staging_posts add column if not exists secured_post json;
+alter table staging_posts add column if not exists secured_version varchar(64);
+--
+-- last_modified maintenance for staging_posts (re-defined); writing the secured columns is not a post
+-- modification, while any change to the raw content invalidates the secured copy
+--
+create or replace function staging_posts_touch_last_modified() returns trigger as $$
+begin
+    new.last_modified = current_timestamp;
+    if (new.post_title::text, new.post_desc::text, new.post_contents::text, new.post_media::text,
+        new.post_itunes::text, new.enclosures::text, new.post_url)
+        is distinct from
+       (old.post_title::text, old.post_desc::text, old.post_contents::text, old.post_media::text,
+        old.post_itunes::text, old.enclosures::text, old.post_url) then
+        new.secured_post = null;
+        new.secured_version = null;
+    end if;
+    return new;
+end;
+$$ language plpgsql;
+
+drop trigger if exists trg_staging_posts_touch_last_modified on staging_posts;
+
+create trigger trg_staging_posts_touch_last_modified before update of
+    post_title, post_desc, post_contents, post_media, post_itunes, post_url, post_urls, post_img_url,
+    post_img_transport_ident, importer_id, importer_desc, subscription_id, queue_id, import_timestamp,
+    is_published, post_read_status, post_pub_status, post_hash, username, post_comment, post_rights,
+    contributors, authors, post_categories, publish_timestamp, expiration_timestamp, enclosures,
+    last_updated_timestamp, is_archived
+    on staging_posts
+    for each row execute function staging_posts_touch_last_modified();
+--
+-- end
+--
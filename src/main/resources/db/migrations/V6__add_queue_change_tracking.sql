@@ -0,0 +1,40 @@
+--
+-- created/last_modified on the remaining tables that back GET /queues
+--
+alter table subscription_definitions add column if not exists created timestamp with time zone not null default current_timestamp;
+alter table subscription_definitions add column if not exists last_modified timestamp with time zone;
+alter table rule_set_definitions add column if not exists created timestamp with time zone not null default current_timestamp;
+alter table rule_set_definitions add column if not exists last_modified timestamp with time zone;
+--
+-- last_modified maintenance
+--
+create or replace function touch_last_modified() returns trigger as $$
+begin
+    new.last_modified = current_timestamp;
+    return new;
+end;
+$$ language plpgsql;
+
+drop trigger if exists trg_queue_definitions_touch_last_modified on queue_definitions;
+drop trigger if exists trg_subscription_definitions_touch_last_modified on subscription_definitions;
+drop trigger if exists trg_rule_set_definitions_touch_last_modified on rule_set_definitions;
+
+create trigger trg_queue_definitions_touch_last_modified before update on queue_definitions
+    for each row execute function touch_last_modified();
+create trigger trg_subscription_definitions_touch_last_modified before update on subscription_definitions
+    for each row execute function touch_last_modified();
+create trigger trg_rule_set_definitions_touch_last_modified before update on rule_set_definitions
+    for each row execute function touch_last_modified();
+--
+-- indexes
+--
+drop index if exists idx_rule_set_definitions_username;
+drop index if exists idx_queue_import_rule_sets_queue_id;
+drop index if exists idx_subscription_import_rule_sets_subscription_id;
+
+create index idx_rule_set_definitions_username on rule_set_definitions(username);
+create index idx_queue_import_rule_sets_queue_id on queue_import_rule_sets(queue_id);
+create index idx_subscription_import_rule_sets_subscription_id on subscription_import_rule_sets(subscription_id);
+--
+-- end
+--
@@ -0,0 +1,42 @@
+--
+-- per-queue read watermarks: every post in the queue imported at or before read_before takes post_read_status,
+-- unless the post's own status was set after the watermark was (marked_at)
+--
+drop table if exists queue_read_watermarks cascade;
+
+create table queue_read_watermarks (
+    queue_id integer primary key references queue_definitions(id) on delete cascade,
+    username varchar(100) not null references users(name) on delete cascade,
+    read_before timestamp with time zone not null,
+    post_read_status varchar(64),
+    marked_at timestamp with time zone not null default current_timestamp
+);
+
+drop index if exists idx_queue_read_watermarks_username;
+
+create index idx_queue_read_watermarks_username on queue_read_watermarks(username);
+--
+-- per-post override tracking (any explicit write of post_read_status counts, even if the value is unchanged,
+-- since e.g. marking a post unread under a READ watermark doesn't change the stored null)
+--
+alter table staging_posts add column if not exists post_read_status_modified timestamp with time zone;
+
+create or replace function staging_posts_touch_read_status_modified() returns trigger as $$
+begin
+    new.post_read_status_modified = current_timestamp;
+    return new;
+end;
+$$ language plpgsql;
+
+drop trigger if exists trg_staging_posts_touch_read_status_modified on staging_posts;
+
+create trigger trg_staging_posts_touch_read_status_modified before update of post_read_status on staging_posts
+    for each row execute function staging_posts_touch_read_status_modified();
+
+drop index if exists idx_staging_posts_queue_read_status_modified;
+
+create index idx_staging_posts_queue_read_status_modified on staging_posts(queue_id, post_read_status_modified)
+    where post_read_status_modified is not null;
+--
+-- end
+--
@@ -0,0 +1,106 @@
+--
+-- queue_post_counts table: per-queue counts of live (non-archived) posts by effective read status
+--
+-- (no foreign key on queue_id: rows are touched by the staging_posts triggers while a queue delete is cascading;
+-- orphans are removed on reconciliation)
+--
+drop table if exists queue_post_counts cascade;
+
+create table queue_post_counts (
+    queue_id integer not null,
+    username varchar(100) not null,
+    total_ct integer not null default 0,
+    unread_ct integer not null default 0,
+    read_later_ct integer not null default 0,
+    reconciled timestamp with time zone,
+
+    primary key (queue_id)
+);
+
+create index idx_queue_post_counts_username on queue_post_counts(username);
+--
+-- effective read status of a post, taking the queue read watermark into account (see V7)
+--
+create or replace function staging_posts_effective_read_status(q integer, imported timestamp with time zone, published boolean,
+                                                               status varchar, status_modified timestamp with time zone) returns varchar as $$
+declare
+    w queue_read_watermarks%rowtype;
+begin
+    if published then
+        return status;
+    end if;
+    select * into w from queue_read_watermarks where queue_id = q;
+    if found and imported <= w.read_before and (status_modified is null or status_modified <= w.marked_at) then
+        return w.post_read_status;
+    end if;
+    return status;
+end;
+$$ language plpgsql stable;
+--
+-- incremental maintenance
+--
+create or replace function queue_post_counts_apply(q integer, u varchar, status varchar, delta integer) returns void as $$
+begin
+    if delta > 0 then
+        insert into queue_post_counts (queue_id, username, total_ct, unread_ct, read_later_ct)
+            values (q, u, delta, case when status is null then delta else 0 end, case when status = 'READ_LATER' then delta else 0 end)
+            on conflict (queue_id) do update set
+                total_ct = queue_post_counts.total_ct + excluded.total_ct,
+                unread_ct = queue_post_counts.unread_ct + excluded.unread_ct,
+                read_later_ct = queue_post_counts.read_later_ct + excluded.read_later_ct;
+    else
+        update queue_post_counts set
+            total_ct = total_ct + delta,
+            unread_ct = unread_ct + case when status is null then delta else 0 end,
+            read_later_ct = read_later_ct + case when status = 'READ_LATER' then delta else 0 end
+            where queue_id = q;
+    end if;
+end;
+$$ language plpgsql;
+
+create or replace function staging_posts_maintain_counts() returns trigger as $$
+begin
+    if tg_op in ('UPDATE', 'DELETE') and not old.is_archived then
+        perform queue_post_counts_apply(old.queue_id, old.username,
+            staging_posts_effective_read_status(old.queue_id, coalesce(old.import_timestamp, old.created), old.is_published,
+                                                old.post_read_status, old.post_read_status_modified), -1);
+    end if;
+    if tg_op in ('INSERT', 'UPDATE') and not new.is_archived then
+        perform queue_post_counts_apply(new.queue_id, new.username,
+            staging_posts_effective_read_status(new.queue_id, coalesce(new.import_timestamp, new.created), new.is_published,
+                                                new.post_read_status, new.post_read_status_modified), 1);
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+drop trigger if exists trg_staging_posts_maintain_counts on staging_posts;
+
+create trigger trg_staging_posts_maintain_counts after insert or delete or update of queue_id, post_read_status, is_archived, is_published on staging_posts
+    for each row execute function staging_posts_maintain_counts();
+--
+-- initial population
+--
+insert into queue_post_counts (queue_id, username, total_ct, unread_ct, read_later_ct, reconciled)
+select q.id, q.username,
+       count(s.id),
+       count(s.id) filter (where s.effective_read_status is null),
+       count(s.id) filter (where s.effective_read_status = 'READ_LATER'),
+       current_timestamp
+from queue_definitions q
+left join (
+    select s.id, s.queue_id,
+           case when w.queue_id is not null and not s.is_published
+                     and coalesce(s.import_timestamp, s.created) <= w.read_before
+                     and (s.post_read_status_modified is null or s.post_read_status_modified <= w.marked_at)
+                then w.post_read_status
+                else s.post_read_status
+           end as effective_read_status
+    from staging_posts s
+    left join queue_read_watermarks w on w.queue_id = s.queue_id
+    where not s.is_archived
+) s on s.queue_id = q.id
+group by q.id, q.username;
+--
+-- end
+--
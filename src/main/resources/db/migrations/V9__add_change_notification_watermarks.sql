@@ -0,0 +1,20 @@
+--
+-- change_notification_watermarks table: the last staging post / subscription metrics Ids that change
+-- notifications have been pushed for (shared by all app instances)
+--
+drop table if exists change_notification_watermarks cascade;
+
+create table change_notification_watermarks (
+    name varchar(64) not null,
+    last_id bigint not null,
+
+    primary key (name)
+);
+
+insert into change_notification_watermarks (name, last_id)
+    select 'staging_posts', coalesce(max(id), 0) from staging_posts;
+insert into change_notification_watermarks (name, last_id)
+    select 'subscription_metrics', coalesce(max(id), 0) from subscription_metrics;
+--
+-- end
+--
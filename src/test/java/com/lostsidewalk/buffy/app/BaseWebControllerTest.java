@@ -4,8 +4,14 @@ package com.lostsidewalk.buffy.app;
 import com.lostsidewalk.buffy.FrameworkConfigDao;
 import com.lostsidewalk.buffy.ThemeConfigDao;
 import com.lostsidewalk.buffy.app.auth.AuthService;
+import com.lostsidewalk.buffy.app.broker.ChangeNotificationDao;
+import com.lostsidewalk.buffy.app.cache.ContentFingerprintDao;
 import com.lostsidewalk.buffy.app.discovery.FeedDiscoveryService;
 import com.lostsidewalk.buffy.app.mail.MailService;
+import com.lostsidewalk.buffy.app.post.QueuePostCountsDao;
+import com.lostsidewalk.buffy.app.post.StagingPostPageDao;
+import com.lostsidewalk.buffy.app.post.StagingPostReadStatusDao;
+import com.lostsidewalk.buffy.app.proxy.SecuredPostDao;
 import com.lostsidewalk.buffy.app.token.TokenService;
 import com.lostsidewalk.buffy.app.token.TokenService.JwtUtil;
 import com.lostsidewalk.buffy.app.user.LocalUserService;
@@ -101,6 +107,24 @@ class BaseWebControllerTest {
     @MockBean
     StagingPostDao stagingPostDao;
 
+    @MockBean
+    StagingPostPageDao stagingPostPageDao;
+
+    @MockBean
+    StagingPostReadStatusDao stagingPostReadStatusDao;
+
+    @MockBean
+    QueuePostCountsDao queuePostCountsDao;
+
+    @MockBean
+    SecuredPostDao securedPostDao;
+
+    @MockBean
+    ContentFingerprintDao contentFingerprintDao;
+
+    @MockBean
+    ChangeNotificationDao changeNotificationDao;
+
     @MockBean
     SubscriptionDefinitionDao subscriptionDefinitionDao;
 
@@ -0,0 +1,201 @@
+package com.lostsidewalk.buffy.app;
+
+import com.lostsidewalk.buffy.app.audit.HostUnavailableException;
+import com.lostsidewalk.buffy.app.audit.ProxyCapacityException;
+import com.lostsidewalk.buffy.app.proxy.ProxyCacheEntry;
+import com.lostsidewalk.buffy.app.proxy.ProxyFetchService;
+import com.lostsidewalk.buffy.app.proxy.ProxyService;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.http.HttpHeaders.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = ProxyController.class)
+public class ProxyControllerTest extends BaseWebControllerTest {
+
+    private static final String TEST_IMAGE_URL = "https://example.com/img/test.png";
+
+    @MockBean
+    ProxyService proxyService;
+
+    @MockBean
+    ProxyFetchService proxyFetchService;
+
+    private MvcResult performProxyRequest() throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders
+                        .get("/proxy/unsecured/testHash/")
+                        .queryParam("url", TEST_IMAGE_URL))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private MvcResult performProxyRequest(String headerName, String headerValue) throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders
+                        .get("/proxy/unsecured/testHash/")
+                        .queryParam("url", TEST_IMAGE_URL)
+                        .header(headerName, headerValue))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private static final byte[] TEST_IMAGE_CONTENT = "0123456789".getBytes(UTF_8);
+
+    private static ProxyCacheEntry testImage() throws Exception {
+        ProxyCacheEntry image = mock(ProxyCacheEntry.class);
+        when(image.getContentHash()).thenReturn("testContentHash");
+        when(image.getContentType()).thenReturn("image/png");
+        when(image.getContentLength()).thenReturn((long) TEST_IMAGE_CONTENT.length);
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(0);
+            long start = invocation.getArgument(1);
+            long count = invocation.getArgument(2);
+            outputStream.write(TEST_IMAGE_CONTENT, (int) start, (int) count);
+            return null;
+        }).when(image).transferTo(any(), anyLong(), anyLong());
+        return image;
+    }
+
+    @Test
+    void test_proxy() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        MvcResult mvcResult = mockMvc.perform(asyncDispatch(performProxyRequest()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(CONTENT_LENGTH, TEST_IMAGE_CONTENT.length))
+                .andReturn();
+        mvcResult.getAsyncResult(); // (the body is streamed after the headers)
+        assertArrayEquals(TEST_IMAGE_CONTENT, mvcResult.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    void test_proxy_range() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        MvcResult mvcResult = mockMvc.perform(asyncDispatch(performProxyRequest(RANGE, "bytes=2-5")))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().longValue(CONTENT_LENGTH, 4L))
+                .andReturn();
+        mvcResult.getAsyncResult();
+        assertArrayEquals("2345".getBytes(UTF_8), mvcResult.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    void test_proxy_rangeNotSatisfiable() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        mockMvc.perform(asyncDispatch(performProxyRequest(RANGE, "bytes=20-30")))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void test_proxy_encodedIgnoresRange() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(image.getContentEncoding()).thenReturn("gzip");
+        when(image.isGzipped()).thenReturn(true);
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/proxy/unsecured/testHash/")
+                        .queryParam("url", TEST_IMAGE_URL)
+                        .header(ACCEPT_ENCODING, "gzip")
+                        .header(RANGE, "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string(CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(VARY, ACCEPT_ENCODING))
+                .andExpect(header().longValue(CONTENT_LENGTH, TEST_IMAGE_CONTENT.length));
+    }
+
+    @Test
+    void test_proxy_headers() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        mockMvc.perform(asyncDispatch(performProxyRequest()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(CONTENT_TYPE, "image/png"))
+                .andExpect(header().string(ETAG, "\"testContentHash\""))
+                .andExpect(header().string(CACHE_CONTROL, containsString("immutable")))
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"));
+    }
+
+    @Test
+    void test_proxy_notModified() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        for (String ifNoneMatch : List.of("\"testContentHash\"", "W/\"testContentHash\"", "\"other\", \"testContentHash\"", "*")) {
+            mockMvc.perform(asyncDispatch(performProxyRequest(IF_NONE_MATCH, ifNoneMatch)))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string(ETAG, "\"testContentHash\""));
+        }
+        mockMvc.perform(asyncDispatch(performProxyRequest(IF_NONE_MATCH, "\"other\"")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_proxy_decodedETag() throws Exception {
+        ProxyCacheEntry image = testImage();
+        when(image.getContentEncoding()).thenReturn("gzip");
+        when(image.isGzipped()).thenReturn(true);
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(completedFuture(image));
+        // (a client that doesn't accept gzip gets the decoded representation, under its own ETag)
+        mockMvc.perform(asyncDispatch(performProxyRequest(IF_NONE_MATCH, "\"testContentHash\"")))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ETAG, "\"testContentHash-identity\""));
+        mockMvc.perform(asyncDispatch(performProxyRequest(IF_NONE_MATCH, "\"testContentHash-identity\"")))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void test_proxy_capacity() throws Exception {
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(failedFuture(new ProxyCapacityException(1)));
+        mockMvc.perform(asyncDispatch(performProxyRequest()))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(RETRY_AFTER, "5"));
+    }
+
+    @Test
+    void test_proxy_hostUnavailable() throws Exception {
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(failedFuture(new HostUnavailableException("example.com", 30L)));
+        mockMvc.perform(asyncDispatch(performProxyRequest()))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(RETRY_AFTER, "30"));
+    }
+
+    @Test
+    void test_proxy_timeout() throws Exception {
+        when(this.proxyFetchService.fetchCachedAsync(TEST_IMAGE_URL, 0)).thenReturn(new CompletableFuture<>()); // (never completes)
+        MvcResult mvcResult = performProxyRequest();
+        MockAsyncContext asyncContext = (MockAsyncContext) mvcResult.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(null);
+        }
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isGatewayTimeout());
+    }
+}
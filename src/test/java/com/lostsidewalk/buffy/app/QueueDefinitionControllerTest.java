@@ -2,12 +2,14 @@ package com.lostsidewalk.buffy.app;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.lostsidewalk.buffy.app.cache.ContentFingerprintService;
 import com.lostsidewalk.buffy.app.model.request.QueueConfigRequest;
 import com.lostsidewalk.buffy.queue.QueueDefinition;
 import com.lostsidewalk.buffy.subscription.SubscriptionDefinition;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
@@ -20,14 +22,20 @@ import static com.lostsidewalk.buffy.rss.RssImporter.RSS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(controllers = QueueDefinitionController.class)
 public class QueueDefinitionControllerTest extends BaseWebControllerTest {
 
+    @Autowired
+    ContentFingerprintService contentFingerprintService;
+
     private static final Gson GSON = new Gson();
 
     private static final Date NOW = new Date(10_000_000L);
@@ -79,6 +87,20 @@ public class QueueDefinitionControllerTest extends BaseWebControllerTest {
 
     }
 
+    @Test
+    void test_getFeeds_notModified() throws Exception {
+        when(this.contentFingerprintDao.findQueuesFingerprint("me")).thenReturn("testFingerprint");
+        String eTag = contentFingerprintService.getQueuesETag("me");
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/queues")
+                        .header("Authorization", "Bearer testToken")
+                        .header("If-None-Match", eTag)
+                        .accept(APPLICATION_JSON))
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(status().isNotModified());
+        verify(this.queueDefinitionDao, never()).findByUser("me");
+    }
+
     @Test
     void test_toggleFeed() {
 
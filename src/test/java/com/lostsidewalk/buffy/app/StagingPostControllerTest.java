@@ -2,6 +2,9 @@ package com.lostsidewalk.buffy.app;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.lostsidewalk.buffy.app.cache.ContentFingerprintService;
+import com.lostsidewalk.buffy.app.post.QueuePostCounts;
+import com.lostsidewalk.buffy.app.post.StagingPostSyncToken;
 import com.lostsidewalk.buffy.post.*;
 import com.rometools.modules.itunes.EntryInformationImpl;
 import com.rometools.modules.itunes.ITunes;
@@ -10,17 +13,31 @@ import com.rometools.modules.mediarss.types.Metadata;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.sql.Timestamp;
 import java.util.Date;
 import java.util.List;
 
 import static com.lostsidewalk.buffy.app.model.TokenType.APP_AUTH;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -133,6 +150,9 @@ public class StagingPostControllerTest extends BaseWebControllerTest {
 
     private static final List<StagingPost> TEST_STAGING_POSTS = List.of(TEST_STAGING_POST);
 
+    @Autowired
+    ContentFingerprintService contentFingerprintService;
+
     private static final Gson GSON = new Gson();
 
     @Test
@@ -151,4 +171,221 @@ public class StagingPostControllerTest extends BaseWebControllerTest {
                 })
                 .andExpect(status().isOk());
     }
+
+    @Test
+    void test_getStagingPosts_notModified() throws Exception {
+        when(this.contentFingerprintDao.findStagingPostsFingerprint("me", List.of(1L))).thenReturn("testFingerprint");
+        String eTag = contentFingerprintService.getStagingPostsETag("me", List.of(1L));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging")
+                        .queryParam("queueIds", "1")
+                        .header("Authorization", "Bearer testToken")
+                        .header("If-None-Match", eTag)
+                        .accept(APPLICATION_JSON))
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(status().isNotModified());
+        verify(this.stagingPostDao, never()).findByUserAndQueueIds("me", List.of(1L));
+    }
+
+    @Test
+    void test_getStagingPosts_modified() throws Exception {
+        when(this.contentFingerprintDao.findStagingPostsFingerprint("me", List.of(1L))).thenReturn("testFingerprint");
+        String eTag = contentFingerprintService.getStagingPostsETag("me", List.of(1L));
+        when(this.contentFingerprintDao.findStagingPostsFingerprint("me", List.of(1L))).thenReturn("testFingerprint2");
+        when(this.stagingPostDao.findByUserAndQueueIds("me", List.of(1L))).thenReturn(List.of());
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging")
+                        .queryParam("queueIds", "1")
+                        .header("Authorization", "Bearer testToken")
+                        .header("If-None-Match", eTag)
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> assertNotEquals(eTag, result.getResponse().getHeader("ETag")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_streamStagingPosts() throws Exception {
+        when(this.stagingPostPageDao.findPageByUser(eq("me"), eq(List.of(1L)), isNull(), eq(100)))
+                .thenReturn(List.of(testStagingPost(5L, null), testStagingPost(6L, null)));
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/stream")
+                        .queryParam("queueIds", "1")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    JsonObject responseObj = GSON.fromJson(responseContent, JsonObject.class);
+                    assertEquals(2, responseObj.getAsJsonArray("stagingPosts").size());
+                })
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_getStagingPostPage() throws Exception {
+        when(this.stagingPostPageDao.findPageByUser(eq("me"), eq(List.of(1L)), isNull(), eq(101))).thenReturn(TEST_STAGING_POSTS);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/page")
+                        .queryParam("queueIds", "1")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    JsonObject responseObj = GSON.fromJson(responseContent, JsonObject.class);
+                    assertEquals(1, responseObj.getAsJsonArray("stagingPosts").size());
+                    assertFalse(responseObj.has("nextCursor"));
+                })
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_getStagingPostPage_invalidCursor() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/page")
+                        .queryParam("cursor", "not-a-cursor")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static StagingPost testStagingPost(Long id, Date lastModified) {
+        StagingPost stagingPost = StagingPost.from(
+                "testImporterId",
+                1L,
+                "testImporterDesc",
+                2L,
+                null, // post title
+                null, // post description
+                null, // post contents
+                null, // post media
+                null, // post iTunes
+                "testPostUrl",
+                null, // post URLs
+                null, // post image URL
+                null, // import timestamp
+                "testPostHash" + id,
+                "me",
+                null, // post comment
+                null, // post rights
+                null, // contributors
+                null, // authors
+                null, // post categories
+                null, // publish timestamp
+                null, // expiration timestamp
+                null, // enclosures
+                null // last updated timestamp
+        );
+        stagingPost.setId(id);
+        stagingPost.setCreated(NOW);
+        stagingPost.setLastModified(lastModified);
+        return stagingPost;
+    }
+
+    private static final Timestamp FUTURE_SYNC_HORIZON = Timestamp.valueOf("2100-01-01 00:00:00");
+
+    @Test
+    void test_getStagingPostChanges() throws Exception {
+        when(this.stagingPostPageDao.findSyncHorizon(1)).thenReturn(FUTURE_SYNC_HORIZON);
+        when(this.stagingPostPageDao.findModifiedSince(eq("me"), eq(List.of(1L)), any(), eq(101)))
+                .thenReturn(List.of(testStagingPost(5L, new Date(20_000_000L))));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/changes")
+                        .queryParam("queueIds", "1")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    JsonObject responseObj = GSON.fromJson(responseContent, JsonObject.class);
+                    assertEquals(1, responseObj.getAsJsonArray("stagingPosts").size());
+                    assertEquals(0, responseObj.getAsJsonArray("tombstones").size());
+                    assertFalse(responseObj.get("hasMore").getAsBoolean());
+                    StagingPostSyncToken watermark = StagingPostSyncToken.decode(responseObj.get("watermark").getAsString());
+                    assertEquals(5L, watermark.getPostId());
+                    assertEquals(20_000_000L, watermark.getModified().getTime());
+                })
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_getStagingPostChanges_hasMore() throws Exception {
+        when(this.stagingPostPageDao.findSyncHorizon(1)).thenReturn(FUTURE_SYNC_HORIZON);
+        when(this.stagingPostPageDao.findModifiedSince(eq("me"), isNull(), any(), eq(2)))
+                .thenReturn(List.of(testStagingPost(5L, new Date(20_000_000L)), testStagingPost(6L, new Date(20_000_001L))));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/changes")
+                        .queryParam("limit", "1")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    JsonObject responseObj = GSON.fromJson(responseContent, JsonObject.class);
+                    assertEquals(1, responseObj.getAsJsonArray("stagingPosts").size());
+                    assertTrue(responseObj.get("hasMore").getAsBoolean());
+                    assertEquals(5L, StagingPostSyncToken.decode(responseObj.get("watermark").getAsString()).getPostId());
+                })
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_getStagingPostChanges_tombstones() throws Exception {
+        when(this.stagingPostPageDao.findSyncHorizon(1)).thenReturn(FUTURE_SYNC_HORIZON);
+        StagingPost archived = testStagingPost(7L, new Date(20_000_000L));
+        archived.setArchived(true);
+        when(this.stagingPostPageDao.findModifiedSince(eq("me"), isNull(), any(), eq(101))).thenReturn(List.of(archived));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/changes")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    JsonObject responseObj = GSON.fromJson(responseContent, JsonObject.class);
+                    assertEquals(0, responseObj.getAsJsonArray("stagingPosts").size());
+                    assertEquals(7L, responseObj.getAsJsonArray("tombstones").get(0).getAsLong());
+                })
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_getStagingPostChanges_invalidSince() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/changes")
+                        .queryParam("since", "not-a-token")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void test_getQueuePostCounts() throws Exception {
+        when(this.queuePostCountsDao.findByUser("me")).thenReturn(List.of(QueuePostCounts.from(1L, 10, 4, 1)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/staging/counts")
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    assertEquals(GSON.fromJson("{\"queuePostCounts\":[{\"queueId\":1,\"totalCt\":10,\"unreadCt\":4,\"readLaterCt\":1}]}", JsonObject.class),
+                            GSON.fromJson(responseContent, JsonObject.class));
+                })
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void test_updatePostReadStatus_bulk() throws Exception {
+        when(this.stagingPostReadStatusDao.updatePostReadStatus("me", List.of(1L, 2L, 3L), StagingPost.PostReadStatus.READ)).thenReturn(List.of(1L, 3L));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/staging/read-status/posts")
+                        .servletPath("/staging/read-status/posts")
+                        .content("{\"ids\":[1,2,3],\"newStatus\":\"READ\"}")
+                        .contentType(APPLICATION_JSON)
+                        .header("Authorization", "Bearer testToken")
+                        .accept(APPLICATION_JSON))
+                .andExpect(result -> {
+                    String responseContent = result.getResponse().getContentAsString();
+                    assertEquals(GSON.fromJson("{\"updated\":[1,3],\"notFound\":[2]}", JsonObject.class), GSON.fromJson(responseContent, JsonObject.class));
+                })
+                .andExpect(status().isOk());
+    }
 }
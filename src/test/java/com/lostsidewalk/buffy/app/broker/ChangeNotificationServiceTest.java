@@ -0,0 +1,72 @@
+package com.lostsidewalk.buffy.app.broker;
+
+import com.lostsidewalk.buffy.LockDao;
+import com.lostsidewalk.buffy.app.audit.ErrorLogService;
+import com.lostsidewalk.buffy.app.broker.ChangeNotificationDao.IdMark;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.Map;
+
+import static com.lostsidewalk.buffy.app.broker.ChangeNotificationDao.STAGING_POSTS_WATERMARK;
+import static com.lostsidewalk.buffy.app.broker.ChangeNotificationService.NEW_STAGING_POSTS;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ChangeNotificationServiceTest {
+
+    private static final Timestamp MARK_TAKEN = new Timestamp(10_000_000L);
+
+    private ChangeNotificationService changeNotificationService;
+
+    private ChangeNotificationDao changeNotificationDao;
+
+    private BrokerHandler brokerHandler;
+
+    @BeforeEach
+    void test_setup() throws Exception {
+        changeNotificationDao = mock(ChangeNotificationDao.class);
+        brokerHandler = mock(BrokerHandler.class);
+        LockDao lockDao = mock(LockDao.class);
+        when(lockDao.acquireLock(eq("changeNotifications"), anyString())).thenReturn(true);
+        when(lockDao.releaseLock(eq("changeNotifications"), anyString())).thenReturn(true);
+        changeNotificationService = new ChangeNotificationService();
+        changeNotificationService.errorLogService = mock(ErrorLogService.class);
+        changeNotificationService.changeNotificationDao = changeNotificationDao;
+        changeNotificationService.lockDao = lockDao;
+        changeNotificationService.brokerHandler = brokerHandler;
+        changeNotificationService.horizonMarginSecs = 1;
+        when(changeNotificationDao.findMaxPostId()).thenReturn(new IdMark(100L, MARK_TAKEN));
+        when(changeNotificationDao.findWatermark(STAGING_POSTS_WATERMARK)).thenReturn(50L);
+        when(changeNotificationDao.findNewPostCounts(50L, 100L)).thenReturn(Map.of("me", Map.of(1L, 3)));
+    }
+
+    @Test
+    void test_pushChangeNotifications_waitsForHorizon() throws Exception {
+        // the first scan only takes a mark
+        when(changeNotificationDao.findHorizon(1)).thenReturn(new Timestamp(MARK_TAKEN.getTime() - 1L));
+        changeNotificationService.pushChangeNotifications();
+        // transactions in flight when the mark was taken may still commit lower Ids
+        changeNotificationService.pushChangeNotifications();
+        verify(changeNotificationDao, never()).findNewPostCounts(anyLong(), anyLong());
+        verify(changeNotificationDao, never()).updateWatermark(anyString(), anyLong());
+        // once they have all ended, the scan goes up to the mark
+        when(changeNotificationDao.findHorizon(1)).thenReturn(new Timestamp(MARK_TAKEN.getTime() + 1L));
+        changeNotificationService.pushChangeNotifications();
+        verify(brokerHandler).sendNotification("me", NEW_STAGING_POSTS, Map.of(1L, 3));
+        verify(changeNotificationDao).updateWatermark(STAGING_POSTS_WATERMARK, 100L);
+    }
+
+    @Test
+    void test_pushChangeNotifications_nothingNew() throws Exception {
+        when(changeNotificationDao.findWatermark(STAGING_POSTS_WATERMARK)).thenReturn(100L);
+        when(changeNotificationDao.findHorizon(1)).thenReturn(new Timestamp(MARK_TAKEN.getTime() + 1L));
+        changeNotificationService.pushChangeNotifications();
+        changeNotificationService.pushChangeNotifications();
+        verify(changeNotificationDao, never()).findNewPostCounts(anyLong(), anyLong());
+        verifyNoInteractions(brokerHandler);
+    }
+}
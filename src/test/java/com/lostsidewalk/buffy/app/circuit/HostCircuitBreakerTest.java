@@ -0,0 +1,114 @@
+package com.lostsidewalk.buffy.app.circuit;
+
+import io.micrometer.core.instrument.Metrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.lostsidewalk.buffy.app.circuit.HostCircuitBreaker.getHost;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostCircuitBreakerTest {
+
+    private static final String TEST_HOST = "example.com";
+
+    private static final long OPEN_MILLIS = 100L;
+
+    private HostCircuitBreaker hostCircuitBreaker;
+
+    @BeforeEach
+    void test_setup() {
+        hostCircuitBreaker = new HostCircuitBreaker();
+        hostCircuitBreaker.failureThreshold = 3;
+        hostCircuitBreaker.openMillis = OPEN_MILLIS;
+        hostCircuitBreaker.maxHostGauges = 2;
+        hostCircuitBreaker.postConstruct();
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(hostCircuitBreaker.allowRequest(TEST_HOST));
+            hostCircuitBreaker.recordFailure(TEST_HOST);
+        }
+    }
+
+    @Test
+    void test_opensAfterConsecutiveFailures() {
+        hostCircuitBreaker.recordFailure(TEST_HOST);
+        hostCircuitBreaker.recordFailure(TEST_HOST);
+        hostCircuitBreaker.recordSuccess(TEST_HOST); // (resets the count)
+        hostCircuitBreaker.recordFailure(TEST_HOST);
+        hostCircuitBreaker.recordFailure(TEST_HOST);
+        assertTrue(hostCircuitBreaker.allowRequest(TEST_HOST));
+        assertEquals(0.0, hostCircuitBreaker.getOpenHostCt());
+
+        hostCircuitBreaker.recordFailure(TEST_HOST);
+
+        assertFalse(hostCircuitBreaker.allowRequest(TEST_HOST));
+        assertTrue(hostCircuitBreaker.allowRequest("other.example.com"));
+        assertEquals(1.0, hostCircuitBreaker.getOpenHostCt());
+        assertEquals(1L, hostCircuitBreaker.getRetryAfterSecs(TEST_HOST));
+    }
+
+    @Test
+    void test_halfOpen_probeSucceeds() throws Exception {
+        openCircuit();
+        Thread.sleep(OPEN_MILLIS + 50L);
+
+        assertTrue(hostCircuitBreaker.allowRequest(TEST_HOST)); // (the probe)
+        assertFalse(hostCircuitBreaker.allowRequest(TEST_HOST)); // (one at a time)
+        hostCircuitBreaker.recordSuccess(TEST_HOST);
+
+        assertTrue(hostCircuitBreaker.allowRequest(TEST_HOST));
+        assertEquals(0.0, hostCircuitBreaker.getOpenHostCt());
+    }
+
+    @Test
+    void test_halfOpen_probeFails() throws Exception {
+        openCircuit();
+        Thread.sleep(OPEN_MILLIS + 50L);
+
+        assertTrue(hostCircuitBreaker.allowRequest(TEST_HOST));
+        hostCircuitBreaker.recordFailure(TEST_HOST); // (a single failure re-opens the circuit)
+
+        assertFalse(hostCircuitBreaker.allowRequest(TEST_HOST));
+        assertEquals(1.0, hostCircuitBreaker.getOpenHostCt());
+    }
+
+    @Test
+    void test_hostGauges() throws Exception {
+        openCircuit();
+        assertEquals(1, hostCircuitBreaker.getHostGaugeCt());
+        assertNotNull(Metrics.globalRegistry.find("hostCircuitBreaker.hostState").tag("host", TEST_HOST).gauge());
+        for (String host : List.of("a.example.com", "b.example.com")) {
+            for (int i = 0; i < 3; i++) {
+                hostCircuitBreaker.recordFailure(host);
+            }
+        }
+        assertEquals(2, hostCircuitBreaker.getHostGaugeCt()); // (capped)
+        assertEquals(3.0, hostCircuitBreaker.getOpenHostCt());
+
+        Thread.sleep(OPEN_MILLIS + 50L);
+        assertTrue(hostCircuitBreaker.allowRequest(TEST_HOST));
+        assertEquals(2, hostCircuitBreaker.getHostGaugeCt()); // (still registered while half-open)
+        hostCircuitBreaker.recordSuccess(TEST_HOST);
+
+        assertEquals(1, hostCircuitBreaker.getHostGaugeCt());
+        assertNull(Metrics.globalRegistry.find("hostCircuitBreaker.hostState").tag("host", TEST_HOST).gauge());
+    }
+
+    @Test
+    void test_unknownHost() {
+        assertTrue(hostCircuitBreaker.allowRequest(null));
+        assertEquals(0L, hostCircuitBreaker.getRetryAfterSecs(TEST_HOST));
+    }
+
+    @Test
+    void test_getHost() {
+        assertEquals("example.com", getHost("https://Example.COM/img/a b.png"));
+        assertEquals("example.com", getHost(" http://example.com:8080/ "));
+        assertNull(getHost("/img/a.png"));
+        assertNull(getHost("http://exa mple.com\\a"));
+    }
+}
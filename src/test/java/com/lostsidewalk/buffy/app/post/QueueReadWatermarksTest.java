@@ -0,0 +1,72 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static com.lostsidewalk.buffy.post.StagingPost.PostReadStatus.READ;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class QueueReadWatermarksTest {
+
+    private static final Date READ_BEFORE = new Date(10_000_000L);
+
+    private static final QueueReadWatermarks WATERMARKS = QueueReadWatermarks.from(List.of(
+            QueueReadWatermark.from(1L, READ_BEFORE, READ, new Date(10_000_500L))));
+
+    private static StagingPost stagingPost(Long id, Long queueId, Date importTimestamp) {
+        StagingPost stagingPost = mock(StagingPost.class);
+        when(stagingPost.getId()).thenReturn(id);
+        when(stagingPost.getQueueId()).thenReturn(queueId);
+        when(stagingPost.getImportTimestamp()).thenReturn(importTimestamp);
+        return stagingPost;
+    }
+
+    @Test
+    void test_findCoveredPostIds() {
+        StagingPost before = stagingPost(1L, 1L, new Date(READ_BEFORE.getTime() - 1L));
+        StagingPost at = stagingPost(2L, 1L, READ_BEFORE);
+        StagingPost after = stagingPost(3L, 1L, new Date(READ_BEFORE.getTime() + 1L));
+        StagingPost otherQueue = stagingPost(4L, 2L, new Date(READ_BEFORE.getTime() - 1L));
+        StagingPost published = stagingPost(5L, 1L, new Date(READ_BEFORE.getTime() - 1L));
+        when(published.isPublished()).thenReturn(true);
+
+        assertEquals(List.of(1L, 2L), WATERMARKS.findCoveredPostIds(List.of(before, at, after, otherQueue, published)));
+    }
+
+    @Test
+    void test_findCoveredPostIds_fallsBackToCreated() {
+        StagingPost stagingPost = stagingPost(1L, 1L, null);
+        when(stagingPost.getCreated()).thenReturn(new Date(READ_BEFORE.getTime() - 1L));
+
+        assertEquals(List.of(1L), WATERMARKS.findCoveredPostIds(List.of(stagingPost)));
+    }
+
+    @Test
+    void test_applyTo() {
+        StagingPost covered = stagingPost(1L, 1L, new Date(READ_BEFORE.getTime() - 1L));
+        StagingPost overridden = stagingPost(2L, 1L, new Date(READ_BEFORE.getTime() - 1L));
+        StagingPost after = stagingPost(3L, 1L, new Date(READ_BEFORE.getTime() + 1L));
+
+        WATERMARKS.applyTo(List.of(covered, overridden, after), Set.of(2L));
+
+        verify(covered).setPostReadStatus(READ);
+        verify(overridden, never()).setPostReadStatus(any());
+        verify(after, never()).setPostReadStatus(any());
+    }
+
+    @Test
+    void test_none() {
+        StagingPost stagingPost = stagingPost(1L, 1L, new Date(READ_BEFORE.getTime() - 1L));
+
+        assertTrue(QueueReadWatermarks.NONE.findCoveredPostIds(List.of(stagingPost)).isEmpty());
+        QueueReadWatermarks.NONE.applyTo(List.of(stagingPost), Set.of());
+        verify(stagingPost, never()).setPostReadStatus(any());
+    }
+}
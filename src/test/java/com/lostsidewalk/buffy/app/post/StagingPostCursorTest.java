@@ -0,0 +1,57 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import jakarta.validation.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StagingPostCursorTest {
+
+    @Test
+    void test_encodeDecode() {
+        Timestamp importTimestamp = new Timestamp(1_690_000_000_123L);
+        importTimestamp.setNanos(123_456_789); // (sub-millisecond precision survives the round trip)
+        StagingPost stagingPost = mock(StagingPost.class);
+        when(stagingPost.getImportTimestamp()).thenReturn(importTimestamp);
+        when(stagingPost.getId()).thenReturn(42L);
+
+        StagingPostCursor cursor = StagingPostCursor.decode(StagingPostCursor.after(stagingPost).encode());
+
+        assertEquals(importTimestamp, cursor.getImportTimestamp());
+        assertEquals(42L, cursor.getId());
+    }
+
+    @Test
+    void test_after_fallsBackToCreated() {
+        Date created = new Date(1_690_000_000_000L);
+        StagingPost stagingPost = mock(StagingPost.class);
+        when(stagingPost.getCreated()).thenReturn(created);
+        when(stagingPost.getId()).thenReturn(7L);
+
+        StagingPostCursor cursor = StagingPostCursor.after(stagingPost);
+
+        assertEquals(created.getTime(), cursor.getImportTimestamp().getTime());
+        assertEquals(7L, cursor.getId());
+    }
+
+    @Test
+    void test_decode_blank() {
+        assertNull(StagingPostCursor.decode(null));
+        assertNull(StagingPostCursor.decode(""));
+    }
+
+    @Test
+    void test_decode_invalid() {
+        assertThrows(ValidationException.class, () -> StagingPostCursor.decode("not-a-cursor"));
+        assertThrows(ValidationException.class, () -> StagingPostCursor.decode(encodeBase64URLSafeString("1:2".getBytes(UTF_8))));
+        assertThrows(ValidationException.class, () -> StagingPostCursor.decode(encodeBase64URLSafeString("1:x:3".getBytes(UTF_8))));
+    }
+}
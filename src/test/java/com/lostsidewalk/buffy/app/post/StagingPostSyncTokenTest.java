@@ -0,0 +1,82 @@
+package com.lostsidewalk.buffy.app.post;
+
+import com.lostsidewalk.buffy.post.StagingPost;
+import jakarta.validation.ValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StagingPostSyncTokenTest {
+
+    private static final Timestamp HORIZON = new Timestamp(1_690_000_100_000L);
+
+    private static StagingPost stagingPost(Long id, Date lastModified) {
+        StagingPost stagingPost = mock(StagingPost.class);
+        when(stagingPost.getId()).thenReturn(id);
+        when(stagingPost.getLastModified()).thenReturn(lastModified);
+        return stagingPost;
+    }
+
+    @Test
+    void test_encodeDecode() {
+        StagingPostSyncToken token = StagingPostSyncToken.INITIAL.advance(
+                List.of(stagingPost(5L, new Timestamp(1_690_000_000_001L))),
+                List.of(StagingPostTombstone.from(9L, 3L, 1L, new Timestamp(1_690_000_000_002L))),
+                HORIZON);
+
+        StagingPostSyncToken decoded = StagingPostSyncToken.decode(token.encode());
+
+        assertEquals(token, decoded);
+        assertEquals(5L, decoded.getPostId());
+        assertEquals(9L, decoded.getTombstoneId());
+    }
+
+    @Test
+    void test_decode_blank() {
+        assertEquals(StagingPostSyncToken.INITIAL, StagingPostSyncToken.decode(null));
+        assertEquals(StagingPostSyncToken.INITIAL, StagingPostSyncToken.decode(""));
+    }
+
+    @Test
+    void test_decode_invalid() {
+        assertThrows(ValidationException.class, () -> StagingPostSyncToken.decode("not-a-token"));
+        // (the page cursor's format isn't a sync token)
+        assertThrows(ValidationException.class, () -> StagingPostSyncToken.decode(encodeBase64URLSafeString("1:2:3".getBytes(UTF_8))));
+        assertThrows(ValidationException.class, () -> StagingPostSyncToken.decode(encodeBase64URLSafeString("1:2:3:4:5:x".getBytes(UTF_8))));
+    }
+
+    @Test
+    void test_advance_stopsAtHorizon() {
+        StagingPost before = stagingPost(1L, new Timestamp(HORIZON.getTime() - 1L));
+        StagingPost at = stagingPost(2L, HORIZON);
+        StagingPost after = stagingPost(3L, new Timestamp(HORIZON.getTime() + 1L));
+        StagingPostTombstone tombstoneBefore = StagingPostTombstone.from(10L, 4L, 1L, new Timestamp(HORIZON.getTime() - 1L));
+        StagingPostTombstone tombstoneAfter = StagingPostTombstone.from(11L, 5L, 1L, new Timestamp(HORIZON.getTime() + 1L));
+
+        StagingPostSyncToken token = StagingPostSyncToken.INITIAL.advance(List.of(before, at, after), List.of(tombstoneBefore, tombstoneAfter), HORIZON);
+
+        assertEquals(1L, token.getPostId());
+        assertTrue(token.isPast(before));
+        assertFalse(token.isPast(at));
+        assertFalse(token.isPast(after));
+        assertEquals(10L, token.getTombstoneId());
+        assertTrue(token.isPast(tombstoneBefore));
+        assertFalse(token.isPast(tombstoneAfter));
+    }
+
+    @Test
+    void test_advance_nothingBeforeHorizon() {
+        StagingPostSyncToken token = StagingPostSyncToken.INITIAL.advance(
+                List.of(stagingPost(1L, HORIZON)), null, HORIZON);
+
+        assertEquals(StagingPostSyncToken.INITIAL, token);
+    }
+}
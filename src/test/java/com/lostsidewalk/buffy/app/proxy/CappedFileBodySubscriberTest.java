@@ -0,0 +1,72 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CappedFileBodySubscriberTest {
+
+    private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of(), (name, value) -> true);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void test_complete() throws Exception {
+        CappedFileBodySubscriber subscriber = new CappedFileBodySubscriber(dir, 100L, 5_000L, NO_HEADERS, null);
+        subscriber.onSubscribe(mock(Flow.Subscription.class));
+        subscriber.onNext(List.of(ByteBuffer.wrap("0123456789".getBytes(UTF_8))));
+        subscriber.onComplete();
+
+        ProxyDownload download = subscriber.getBody().toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+        assertEquals(10L, download.getContentLength());
+        assertEquals("0123456789", Files.readString(download.getPath(), UTF_8));
+    }
+
+    @Test
+    void test_tooLarge() throws Exception {
+        Flow.Subscription subscription = mock(Flow.Subscription.class);
+        CappedFileBodySubscriber subscriber = new CappedFileBodySubscriber(dir, 5L, 5_000L, NO_HEADERS, null);
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(ByteBuffer.wrap("0123456789".getBytes(UTF_8))));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> subscriber.getBody().toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(CappedFileBodySubscriber.ContentTooLargeException.class, e.getCause());
+        verify(subscription).cancel();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0L, files.count()); // (the partial download is removed)
+        }
+    }
+
+    @Test
+    void test_idleTimeout() throws Exception {
+        Flow.Subscription subscription = mock(Flow.Subscription.class);
+        CappedFileBodySubscriber subscriber = new CappedFileBodySubscriber(dir, 100L, 50L, NO_HEADERS, null);
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(List.of(ByteBuffer.wrap("01234".getBytes(UTF_8))));
+        // (the origin stops sending)
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> subscriber.getBody().toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        verify(subscription).cancel();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0L, files.count());
+        }
+    }
+}
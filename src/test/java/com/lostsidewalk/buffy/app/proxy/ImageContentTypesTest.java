@@ -0,0 +1,53 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ImageContentTypesTest {
+
+    private static String sniff(int... head) {
+        byte[] bytes = new byte[head.length];
+        for (int i = 0; i < head.length; i++) {
+            bytes[i] = (byte) head[i];
+        }
+        return ImageContentTypes.sniff(bytes, bytes.length);
+    }
+
+    private static String sniff(String head) {
+        byte[] bytes = head.getBytes(ISO_8859_1);
+        return ImageContentTypes.sniff(bytes, bytes.length);
+    }
+
+    @Test
+    void test_sniff() {
+        assertEquals("image/png", sniff(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00));
+        assertEquals("image/jpeg", sniff(0xFF, 0xD8, 0xFF, 0xE0));
+        assertEquals("image/gif", sniff("GIF89a"));
+        assertEquals("image/webp", sniff("RIFF\u0000\u0000\u0000\u0000WEBPVP8 "));
+        assertEquals("image/avif", sniff("\u0000\u0000\u0000\u001CftypavifXXXX"));
+        assertEquals("image/x-icon", sniff(0x00, 0x00, 0x01, 0x00, 0x01));
+        assertEquals("image/bmp", sniff("BM\u0000\u0000"));
+        assertEquals("image/svg+xml", sniff("<?xml version=\"1.0\"?>\n<SVG xmlns=\"http://www.w3.org/2000/svg\">"));
+    }
+
+    @Test
+    void test_sniff_unknown() {
+        assertNull(sniff("<html><body></body></html>"));
+        assertNull(sniff("RIFF\u0000\u0000\u0000\u0000WAVE"));
+        assertNull(sniff(0x89, 'P', 'N')); // (truncated)
+        assertNull(ImageContentTypes.sniff(new byte[ImageContentTypes.SNIFF_BYTES], 0));
+    }
+
+    @Test
+    void test_resolve() {
+        byte[] png = { (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A };
+
+        assertEquals("image/jpeg", ImageContentTypes.resolve(" image/jpeg ", png, png.length)); // (declared image types are trusted)
+        assertEquals("image/png", ImageContentTypes.resolve("application/octet-stream", png, png.length));
+        assertEquals("image/png", ImageContentTypes.resolve(null, png, png.length));
+        assertNull(ImageContentTypes.resolve("text/html", new byte[0], 0));
+    }
+}
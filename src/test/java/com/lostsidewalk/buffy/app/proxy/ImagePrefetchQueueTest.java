@@ -0,0 +1,80 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ImagePrefetchQueueTest {
+
+    private final List<String> prefetched = new ArrayList<>();
+
+    private final List<CompletableFuture<Object>> pending = new ArrayList<>();
+
+    private ImagePrefetchQueue prefetchQueue(int maxQueued, int maxConcurrent) {
+        return new ImagePrefetchQueue(maxQueued, maxConcurrent, 600, Runnable::run, (url, width) -> {
+            prefetched.add(url);
+            CompletableFuture<Object> f = new CompletableFuture<>();
+            pending.add(f);
+            return f;
+        });
+    }
+
+    @Test
+    void test_offer_dropsLowestPriority() {
+        ImagePrefetchQueue prefetchQueue = prefetchQueue(2, 0); // (nothing starts)
+        prefetchQueue.offer("a", 0, 1L);
+        prefetchQueue.offer("b", 0, 2L);
+        prefetchQueue.offer("c", 0, 3L);
+
+        assertEquals(2, prefetchQueue.getQueued());
+        assertEquals(1L, prefetchQueue.getDropped());
+        // a lower priority image doesn't displace anything
+        prefetchQueue.offer("d", 0, 0L);
+        assertEquals(2, prefetchQueue.getQueued());
+        assertEquals(2L, prefetchQueue.getDropped());
+    }
+
+    @Test
+    void test_offer_droppedMayBeQueuedAgain() {
+        ImagePrefetchQueue prefetchQueue = prefetchQueue(1, 0);
+        prefetchQueue.offer("a", 0, 1L);
+        prefetchQueue.offer("b", 0, 2L); // (drops a)
+        // a was never fetched, so it isn't 'recently queued'
+        prefetchQueue.offer("a", 0, 3L);
+
+        assertEquals(1, prefetchQueue.getQueued());
+        assertEquals(2L, prefetchQueue.getDropped());
+    }
+
+    @Test
+    void test_offer_recentlyQueued() {
+        ImagePrefetchQueue prefetchQueue = prefetchQueue(2, 1);
+        prefetchQueue.offer("a", 0, 1L);
+        pending.get(0).complete(null);
+        prefetchQueue.offer("a", 0, 1L);
+        // (a different variant of the same image is a different item)
+        prefetchQueue.offer("a", 320, 1L);
+
+        assertEquals(List.of("a", "a"), prefetched);
+    }
+
+    @Test
+    void test_maxConcurrent() {
+        ImagePrefetchQueue prefetchQueue = prefetchQueue(10, 1);
+        prefetchQueue.offer("a", 0, 1L);
+        prefetchQueue.offer("b", 0, 1L);
+        prefetchQueue.offer("c", 0, 2L);
+
+        assertEquals(List.of("a"), prefetched);
+        // the highest priority image goes next, even if the last one failed
+        pending.get(0).completeExceptionally(new RuntimeException());
+        assertEquals(List.of("a", "c"), prefetched);
+        pending.get(1).complete(null);
+        assertEquals(List.of("a", "c", "b"), prefetched);
+        assertEquals(0, prefetchQueue.getQueued());
+    }
+}
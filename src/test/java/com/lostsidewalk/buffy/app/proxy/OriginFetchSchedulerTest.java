@@ -0,0 +1,110 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.app.audit.ProxyCapacityException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OriginFetchSchedulerTest {
+
+    @Test
+    void test_limits() {
+        OriginFetchScheduler scheduler = new OriginFetchScheduler(2, 1, 2, 0);
+
+        CompletableFuture<Void> a1 = scheduler.acquire("a", false);
+        CompletableFuture<Void> a2 = scheduler.acquire("a", false); // (over the per-host limit)
+        CompletableFuture<Void> b1 = scheduler.acquire("b", false);
+        CompletableFuture<Void> c1 = scheduler.acquire("c", false); // (over the overall limit)
+
+        assertTrue(a1.isDone());
+        assertFalse(a2.isDone());
+        assertTrue(b1.isDone());
+        assertFalse(c1.isDone());
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(2, scheduler.getQueued());
+        // the queue is full
+        CompletableFuture<Void> d1 = scheduler.acquire("d", false);
+        ExecutionException e = assertThrows(ExecutionException.class, d1::get);
+        assertInstanceOf(ProxyCapacityException.class, e.getCause());
+
+        scheduler.release("a");
+
+        assertTrue(a2.isDone());
+        assertFalse(c1.isDone());
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(1, scheduler.getQueued());
+
+        scheduler.release("b");
+
+        assertTrue(c1.isDone());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    void test_roundRobin() {
+        OriginFetchScheduler scheduler = new OriginFetchScheduler(1, 10, 10, 0);
+        scheduler.acquire("a", false);
+        CompletableFuture<Void> a2 = scheduler.acquire("a", false);
+        CompletableFuture<Void> a3 = scheduler.acquire("a", false);
+        CompletableFuture<Void> b1 = scheduler.acquire("b", false);
+
+        scheduler.release("a");
+        assertTrue(a2.isDone());
+        assertFalse(b1.isDone());
+
+        // (a busy host goes to the back of the line)
+        scheduler.release("a");
+        assertTrue(b1.isDone());
+        assertFalse(a3.isDone());
+
+        scheduler.release("b");
+        assertTrue(a3.isDone());
+    }
+
+    @Test
+    void test_firstComeFirstServedWithinHost() {
+        OriginFetchScheduler scheduler = new OriginFetchScheduler(1, 1, 10, 0);
+        scheduler.acquire("a", false);
+        CompletableFuture<Void> a2 = scheduler.acquire("a", false);
+        CompletableFuture<Void> a3 = scheduler.acquire("a", false);
+
+        scheduler.release("a");
+
+        assertTrue(a2.isDone());
+        assertFalse(a3.isDone());
+
+        scheduler.release("a");
+
+        assertTrue(a3.isDone());
+    }
+
+    @Test
+    void test_prefetchBudget() {
+        OriginFetchScheduler scheduler = new OriginFetchScheduler(1, 1, 1, 1);
+        scheduler.acquire("a", false);
+        CompletableFuture<Void> b1 = scheduler.acquire("b", true);
+        CompletableFuture<Void> c1 = scheduler.acquire("c", true);
+        // (a full prefetch queue doesn't take the client queue slots)
+        CompletableFuture<Void> d1 = scheduler.acquire("d", false);
+        CompletableFuture<Void> e1 = scheduler.acquire("e", false);
+
+        assertFalse(b1.isDone());
+        assertInstanceOf(ProxyCapacityException.class, assertThrows(ExecutionException.class, c1::get).getCause());
+        assertFalse(d1.isDone());
+        assertInstanceOf(ProxyCapacityException.class, assertThrows(ExecutionException.class, e1::get).getCause());
+        assertEquals(2, scheduler.getQueued());
+    }
+
+    @Test
+    void test_nullHost() {
+        OriginFetchScheduler scheduler = new OriginFetchScheduler(1, 1, 1, 0);
+
+        assertTrue(scheduler.acquire(null, false).isDone());
+        scheduler.release(null);
+
+        assertEquals(0, scheduler.getRunning());
+    }
+}
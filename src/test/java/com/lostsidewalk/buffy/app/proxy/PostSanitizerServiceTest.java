@@ -0,0 +1,260 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.post.ContentObject;
+import com.lostsidewalk.buffy.post.StagingPost;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.lostsidewalk.buffy.app.proxy.PostSanitizerService.SANITIZER_VERSION;
+import static com.lostsidewalk.buffy.app.proxy.PostSanitizerService.sanitizedHtmlCacheKey;
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class PostSanitizerServiceTest {
+
+    private static final String TEST_PROXY_URL_TEMPLATE = "https://localhost/proxy/unsecured/%s/?url=%s";
+
+    private final List<String> prefetchThreads = new CopyOnWriteArrayList<>();
+
+    private ProxyFetchService proxyFetchService;
+
+    private PostSanitizerService postSanitizerService;
+
+    @BeforeEach
+    void test_setup() {
+        ProxyService proxyService = new ProxyService();
+        proxyService.imageProxyUrlTemplate = TEST_PROXY_URL_TEMPLATE;
+        proxyService.rewrittenUrlCacheSize = 1_000L;
+        proxyService.postConstruct();
+        proxyFetchService = mock(ProxyFetchService.class);
+        doAnswer(invocation -> prefetchThreads.add(Thread.currentThread().getName()))
+                .when(proxyFetchService).prefetchImage(anyString(), any(), anyInt(), anyLong());
+        postSanitizerService = new PostSanitizerService();
+        postSanitizerService.proxyService = proxyService;
+        postSanitizerService.proxyFetchService = proxyFetchService;
+        postSanitizerService.imageProxyUrlTemplate = TEST_PROXY_URL_TEMPLATE;
+        postSanitizerService.sanitizedHtmlCacheMaxBytes = 1_048_576L;
+        postSanitizerService.sanitizerParallelism = 2;
+        postSanitizerService.sanitizerParallelThreshold = 4;
+        postSanitizerService.inlineImageWidth = 0;
+        postSanitizerService.postConstruct();
+    }
+
+    @AfterEach
+    void test_teardown() {
+        postSanitizerService.preDestroy();
+    }
+
+    static StagingPost stagingPost(long id, String html) {
+        return stagingPost(id, "https://example.com/posts/" + id, html);
+    }
+
+    static StagingPost stagingPost(long id, String postUrl, String html) {
+        ContentObject postDesc = new ContentObject();
+        postDesc.setType("html");
+        postDesc.setValue(html);
+        StagingPost stagingPost = StagingPost.from(
+                "testImporterId",
+                1L,
+                "testImporterDesc",
+                2L,
+                null, // post title
+                postDesc,
+                List.of(),
+                null, // post media
+                null, // post iTunes
+                postUrl,
+                List.of(),
+                null, // post image URL
+                null, // import timestamp
+                "testPostHash" + id,
+                "me",
+                null, // post comment
+                null, // post rights
+                List.of(),
+                List.of(),
+                List.of(),
+                null, // publish timestamp
+                null, // expiration timestamp
+                List.of(),
+                null // last updated timestamp
+        );
+        stagingPost.setId(id);
+        return stagingPost;
+    }
+
+    private static List<StagingPost> stagingPosts(int ct) {
+        List<StagingPost> stagingPosts = new ArrayList<>(ct);
+        for (long i = 0; i < ct; i++) {
+            stagingPosts.add(stagingPost(i, "<p>post " + i + "</p><img src=\"https://example.com/img/" + i + ".png\">"));
+        }
+        return stagingPosts;
+    }
+
+    private static void assertSecuredInOrder(List<StagingPost> stagingPosts) {
+        for (int i = 0; i < stagingPosts.size(); i++) {
+            String securedHtml = stagingPosts.get(i).getPostDesc().getValue();
+            assertTrue(securedHtml.contains("post " + i + "</p>"));
+            assertTrue(securedHtml.contains(encode("https://example.com/img/" + i + ".png", UTF_8)));
+        }
+    }
+
+    @Test
+    void test_secureStagingPosts_parallel() {
+        List<StagingPost> stagingPosts = stagingPosts(20);
+
+        assertSame(stagingPosts, postSanitizerService.secureStagingPosts(stagingPosts));
+
+        assertEquals(20, stagingPosts.size());
+        assertSecuredInOrder(stagingPosts);
+        assertEquals(20, prefetchThreads.size());
+        assertTrue(prefetchThreads.stream().allMatch(t -> t.startsWith("post-sanitizer-")));
+    }
+
+    @Test
+    void test_secureStagingPosts_serialBelowThreshold() {
+        List<StagingPost> stagingPosts = stagingPosts(3);
+
+        postSanitizerService.secureStagingPosts(stagingPosts);
+
+        assertSecuredInOrder(stagingPosts);
+        assertEquals(List.of(Thread.currentThread().getName()), prefetchThreads.stream().distinct().toList());
+    }
+
+    @Test
+    void test_secureStagingPostsForStorage_pendingImageUrls() {
+        List<StagingPost> stagingPosts = stagingPosts(8);
+
+        Map<Long, Set<String>> pendingImageUrls = postSanitizerService.secureStagingPostsForStorage(stagingPosts);
+
+        assertEquals(8, pendingImageUrls.size());
+        assertEquals(Set.of("https://example.com/img/5.png"), pendingImageUrls.get(5L));
+    }
+
+    @Test
+    void test_getSecuredVersion() {
+        String securedVersion = postSanitizerService.getSecuredVersion();
+        assertTrue(securedVersion.startsWith(SANITIZER_VERSION + "-"));
+        postSanitizerService.preDestroy();
+        // stored secured content is recomputed when the proxy URL template or the inline image width changes
+        postSanitizerService.inlineImageWidth = 640;
+        postSanitizerService.postConstruct();
+        assertNotEquals(securedVersion, postSanitizerService.getSecuredVersion());
+        postSanitizerService.preDestroy();
+        postSanitizerService.inlineImageWidth = 0;
+        postSanitizerService.imageProxyUrlTemplate = "https://proxy.example.com/%s/?url=%s";
+        postSanitizerService.postConstruct();
+        assertNotEquals(securedVersion, postSanitizerService.getSecuredVersion());
+    }
+
+    @Test
+    void test_sanitizedHtmlCacheKey() {
+        String key = sanitizedHtmlCacheKey(SANITIZER_VERSION, "<p>test</p>", "https://example.com/posts/1");
+
+        assertEquals(key, sanitizedHtmlCacheKey(SANITIZER_VERSION, "<p>test</p>", "https://example.com/posts/1"));
+        // a new sanitizer version invalidates everything cached
+        assertNotEquals(key, sanitizedHtmlCacheKey(SANITIZER_VERSION + 1, "<p>test</p>", "https://example.com/posts/1"));
+        assertNotEquals(key, sanitizedHtmlCacheKey(SANITIZER_VERSION, "<p>test</p>", "https://example.org/posts/1"));
+        assertNotEquals(key, sanitizedHtmlCacheKey(SANITIZER_VERSION, "<p>test</p>", null));
+        // (the base URL and the HTML don't run together)
+        assertNotEquals(sanitizedHtmlCacheKey(SANITIZER_VERSION, "b<p>", "a"), sanitizedHtmlCacheKey(SANITIZER_VERSION, "<p>", "ab"));
+    }
+
+    @Test
+    void test_sanitizedHtmlCache() {
+        when(proxyFetchService.isRecentlyFailed(anyString())).thenReturn(true); // (no dimensions pending, so cacheable)
+        String rawHtml = "<p>test</p><img src=\"https://example.com/img/a.png\">";
+        StagingPost first = stagingPost(1L, rawHtml);
+        StagingPost same = stagingPost(1L, rawHtml);
+        StagingPost otherBaseUrl = stagingPost(2L, "https://example.org/posts/2", rawHtml);
+
+        postSanitizerService.secureStagingPosts(List.of(first, same, otherBaseUrl));
+
+        assertEquals(2L, postSanitizerService.getSanitizedHtmlCacheSize());
+        assertEquals(first.getPostDesc().getValue(), same.getPostDesc().getValue());
+        // (the cache hit isn't sanitized again; the other base URL is, and is cached separately)
+        assertEquals(2, prefetchThreads.size());
+        assertEquals(first.getPostDesc().getValue(), otherBaseUrl.getPostDesc().getValue());
+    }
+
+    @Test
+    void test_sanitizedHtmlCache_pendingDimensionsNotCached() {
+        postSanitizerService.secureStagingPosts(stagingPosts(2));
+
+        assertEquals(0L, postSanitizerService.getSanitizedHtmlCacheSize());
+    }
+
+    @Test
+    void test_sanitizedHtmlCache_weightBound() {
+        postSanitizerService.preDestroy();
+        postSanitizerService.sanitizedHtmlCacheMaxBytes = 4_096L;
+        postSanitizerService.postConstruct();
+        List<StagingPost> stagingPosts = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            stagingPosts.add(stagingPost(i, "<p>post " + i + "</p>"));
+        }
+
+        postSanitizerService.secureStagingPosts(stagingPosts);
+
+        long size = postSanitizerService.getSanitizedHtmlCacheSize();
+        assertTrue(size > 0L);
+        // (each entry weighs at least twice its 64-character key)
+        assertTrue(size * 2 * 64 <= 4_096L);
+    }
+
+    @Test
+    void test_imageAttributes() throws Exception {
+        postSanitizerService.inlineImageWidth = 1300;
+        when(proxyFetchService.getVariantWidth(1300)).thenReturn(1600);
+        when(proxyFetchService.peekCached("https://example.com/img/large.png")).thenReturn(ProxyCacheIndexEntry.from(
+                "testContentHash", "image/png", null, 2000, 1000, ProxyValidators.from(null, null, 0L), null));
+        when(proxyFetchService.peekCached("https://example.com/img/small.png")).thenReturn(ProxyCacheIndexEntry.from(
+                "testContentHash", "image/png", null, 320, 240, ProxyValidators.from(null, null, 0L), null));
+        StagingPost stagingPost = stagingPost(1L, "<img src=\"https://example.com/img/large.png\">" +
+                "<img src=\"https://example.com/img/small.png\">" +
+                "<img src=\"https://example.com/img/sized.png\" width=\"10\" height=\"20\">" +
+                "<img src=\"https://example.com/img/pending.png\">");
+
+        Map<Long, Set<String>> pendingImageUrls = postSanitizerService.secureStagingPostsForStorage(List.of(stagingPost));
+
+        Elements images = Jsoup.parse(stagingPost.getPostDesc().getValue()).getElementsByTag("img");
+        assertEquals(4, images.size());
+        // (served scaled down to the variant width)
+        assertEquals("1600", images.get(0).attr("width"));
+        assertEquals("800", images.get(0).attr("height"));
+        assertEquals("320", images.get(1).attr("width"));
+        assertEquals("240", images.get(1).attr("height"));
+        // (the post's own dimensions are kept)
+        assertEquals("10", images.get(2).attr("width"));
+        assertEquals("20", images.get(2).attr("height"));
+        assertFalse(images.get(3).hasAttr("width"));
+        assertEquals(Map.of(1L, Set.of("https://example.com/img/pending.png")), pendingImageUrls);
+        for (Element image : images) {
+            assertEquals("lazy", image.attr("loading"));
+            assertEquals("async", image.attr("decoding"));
+        }
+    }
+
+    @Test
+    void test_secureStagingPosts_failure() {
+        List<StagingPost> stagingPosts = stagingPosts(8);
+        doThrow(new IllegalArgumentException("testException"))
+                .when(proxyFetchService).prefetchImage(eq("https://example.com/img/6.png"), any(), anyInt(), anyLong());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> postSanitizerService.secureStagingPosts(stagingPosts));
+        assertEquals("testException", e.getMessage());
+    }
+}
@@ -0,0 +1,45 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyCacheIndexEntryTest {
+
+    @Test
+    void test_formatParse() {
+        ProxyCacheIndexEntry entry = ProxyCacheIndexEntry.from("testContentHash", "image/png", "gzip", 640, 480,
+                ProxyValidators.from("\"testETag\"", "Wed, 21 Oct 2015 07:28:00 GMT", 1_690_000_000_000L), "testSourceHash");
+
+        ProxyCacheIndexEntry parsed = ProxyCacheIndexEntry.parse(entry.format());
+
+        assertEquals(entry, parsed);
+        assertTrue(parsed.hasDimensions());
+    }
+
+    @Test
+    void test_formatParse_minimal() {
+        ProxyCacheIndexEntry entry = ProxyCacheIndexEntry.from("testContentHash", null, null, 0, 0,
+                ProxyValidators.from(null, null, 0L), null);
+
+        String formatted = entry.format();
+        ProxyCacheIndexEntry parsed = ProxyCacheIndexEntry.parse(formatted);
+
+        assertEquals("testContentHash\nExpires-At: 0\n", formatted);
+        assertEquals(entry, parsed);
+        assertFalse(parsed.hasDimensions());
+    }
+
+    @Test
+    void test_parse_unknownAndMissingHeaders() {
+        // (index files written before a header existed, or after one was dropped)
+        ProxyCacheIndexEntry parsed = ProxyCacheIndexEntry.parse("testContentHash\nContent-Type: image/jpeg\nX-Unknown: value\n");
+
+        assertEquals("testContentHash", parsed.getContentHash());
+        assertEquals("image/jpeg", parsed.getContentType());
+        assertNull(parsed.getContentEncoding());
+        assertNull(parsed.getSourceHash());
+        assertEquals(0L, parsed.getValidators().getExpiresAt());
+        assertTrue(parsed.getValidators().isStale());
+    }
+}
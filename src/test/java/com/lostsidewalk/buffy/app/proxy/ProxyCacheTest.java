@@ -0,0 +1,68 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private ProxyCache proxyCache;
+
+    @BeforeEach
+    void test_setup() throws Exception {
+        proxyCache = new ProxyCache();
+        proxyCache.cacheDir = cacheDir.toString();
+        proxyCache.memoryCacheMaxBytes = 0L;
+        proxyCache.memoryCacheMaxEntryBytes = 0; // (disk tier only)
+        proxyCache.diskCacheMaxBytes = 15L;
+        proxyCache.evictedBlobGraceSecs = 0L;
+        proxyCache.postConstruct();
+    }
+
+    private ProxyDownload download(String content) throws Exception {
+        Path path = Files.createTempFile(proxyCache.getDownloadDir(), "download-", ".tmp");
+        Files.writeString(path, content, UTF_8);
+        return ProxyDownload.from(path, "hash" + content, content.length(), "image/png", null, ProxyValidators.from(null, null, 0L));
+    }
+
+    private long countIndexFiles() throws Exception {
+        try (Stream<Path> s = Files.walk(cacheDir.resolve("urls"))) {
+            return s.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void test_reapStaleIndexEntries() throws Exception {
+        proxyCache.put("https://example.com/a.png", download("aaaaaaaaaa"));
+        proxyCache.put("https://example.com/b.png", download("bbbbbbbbbb")); // (evicts a's blob)
+        assertEquals(2L, countIndexFiles());
+
+        for (int i = 0; i < 256; i++) {
+            proxyCache.reapStaleIndexEntries();
+        }
+
+        assertEquals(1L, countIndexFiles());
+        assertNull(proxyCache.peek("https://example.com/a.png"));
+        assertNotNull(proxyCache.get("https://example.com/b.png"));
+    }
+
+    @Test
+    void test_evictDiskTier() throws Exception {
+        proxyCache.put("https://example.com/a.png", download("aaaaaaaaaa"));
+        proxyCache.put("https://example.com/b.png", download("bbbbbbbbbb"));
+
+        assertEquals(10L, proxyCache.getDiskTierBytes());
+        assertNull(proxyCache.get("https://example.com/a.png"));
+        assertEquals("hashbbbbbbbbbb", proxyCache.get("https://example.com/b.png").getContentHash());
+    }
+}
@@ -0,0 +1,128 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.app.circuit.HostCircuitBreaker;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.normalizeUrl;
+import static com.lostsidewalk.buffy.app.proxy.ProxyFetchService.unwrap;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ProxyFetchServiceTest {
+
+    private static ProxyFetchService proxyFetchService(ProxyCache proxyCache) {
+        ProxyFetchService proxyFetchService = new ProxyFetchService();
+        proxyFetchService.proxyCache = proxyCache;
+        proxyFetchService.hostCircuitBreaker = mock(HostCircuitBreaker.class);
+        proxyFetchService.applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        proxyFetchService.fetchThreads = 1;
+        proxyFetchService.negativeCacheTtlSecs = 60L;
+        proxyFetchService.maxConcurrentFetches = 4;
+        proxyFetchService.maxConcurrentFetchesPerHost = 2;
+        proxyFetchService.maxQueuedFetches = 10;
+        proxyFetchService.variantWidths = new int[] { 1600, 320, 640 }; // (sorted on startup)
+        proxyFetchService.scalerThreads = 1;
+        proxyFetchService.scalerQueueSize = 1;
+        proxyFetchService.scalerMaxPixels = 1_000_000L;
+        proxyFetchService.prefetchQueueSize = 10;
+        proxyFetchService.prefetchConcurrency = 1;
+        proxyFetchService.prefetchRecentTtlSecs = 60L;
+        proxyFetchService.postConstruct();
+        return proxyFetchService;
+    }
+
+    @Test
+    void test_getVariantWidth() {
+        ProxyFetchService proxyFetchService = proxyFetchService(mock(ProxyCache.class));
+
+        assertEquals(0, proxyFetchService.getVariantWidth(0));
+        assertEquals(320, proxyFetchService.getVariantWidth(1));
+        assertEquals(320, proxyFetchService.getVariantWidth(320));
+        assertEquals(640, proxyFetchService.getVariantWidth(321));
+        assertEquals(1600, proxyFetchService.getVariantWidth(1600));
+        // (wider than the widest variant: the original is served)
+        assertEquals(0, proxyFetchService.getVariantWidth(1601));
+        proxyFetchService.preDestroy();
+    }
+
+    @Test
+    void test_fetchCachedAsync_unscaledWhenScalerSaturated() throws Exception {
+        ProxyCache proxyCache = mock(ProxyCache.class);
+        CountDownLatch scaling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ProxyCacheEntry running = original("running");
+        when(running.openDecodedStream()).thenAnswer(invocation -> {
+            scaling.countDown();
+            release.await();
+            return new ByteArrayInputStream(new byte[0]);
+        });
+        ProxyCacheEntry queued = original("queued");
+        ProxyCacheEntry rejected = original("rejected");
+        when(proxyCache.get("https://example.com/running.png")).thenReturn(running);
+        when(proxyCache.get("https://example.com/queued.png")).thenReturn(queued);
+        when(proxyCache.get("https://example.com/rejected.png")).thenReturn(rejected);
+        ProxyFetchService proxyFetchService = proxyFetchService(proxyCache);
+
+        CompletableFuture<ProxyCacheEntry> first = proxyFetchService.fetchCachedAsync("https://example.com/running.png", 320);
+        assertTrue(scaling.await(5, TimeUnit.SECONDS)); // (the only scaler thread is busy)
+        CompletableFuture<ProxyCacheEntry> second = proxyFetchService.fetchCachedAsync("https://example.com/queued.png", 320);
+        CompletableFuture<ProxyCacheEntry> third = proxyFetchService.fetchCachedAsync("https://example.com/rejected.png", 320);
+
+        // the scaler queue is full, so the original is served as it is, without waiting
+        assertTrue(third.isDone());
+        assertSame(rejected, third.join());
+        assertFalse(second.isDone());
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        verify(proxyCache).putAlias("https://example.com/running.png#w=320", running); // (an empty image can't be scaled)
+        verify(proxyCache, never()).putAlias("https://example.com/rejected.png#w=320", rejected);
+        proxyFetchService.preDestroy();
+    }
+
+    private static ProxyCacheEntry original(String name) {
+        ProxyCacheEntry original = mock(ProxyCacheEntry.class);
+        when(original.getContentHash()).thenReturn("testContentHash-" + name);
+        when(original.getContentType()).thenReturn("image/png");
+        when(original.getValidators()).thenReturn(ProxyValidators.from(null, null, Long.MAX_VALUE));
+        return original;
+    }
+
+    @Test
+    void test_unwrap() {
+        IOException cause = new IOException("testException");
+
+        assertSame(cause, unwrap(new CompletionException(new UncheckedIOException(cause))));
+        assertSame(cause, unwrap(cause));
+        assertNull(unwrap(null));
+    }
+
+    @Test
+    void test_normalizeUrl() {
+        assertEquals("http://example.com/img/A.png", normalizeUrl("HTTP://Example.COM/img/A.png"));
+        assertEquals("https://example.com/img/a.png?w=1&h=2", normalizeUrl("https://example.com/img/a.png?w=1&h=2#section"));
+        assertEquals("https://example.com:8443/img/a+b.png", normalizeUrl(" https://EXAMPLE.com:8443/img/a b.png "));
+        assertEquals("https://example.com", normalizeUrl("https://example.com"));
+    }
+
+    @Test
+    void test_normalizeUrl_sameKeyForSameImage() {
+        // (concurrent requests for these share one origin fetch)
+        assertEquals(normalizeUrl("https://example.com/a.png"), normalizeUrl("https://Example.com/a.png#top"));
+    }
+
+    @Test
+    void test_normalizeUrl_notAbsolute() {
+        assertEquals("/img/a.png", normalizeUrl("/img/a.png"));
+        assertEquals("not%a+url", normalizeUrl("not%a url"));
+    }
+}
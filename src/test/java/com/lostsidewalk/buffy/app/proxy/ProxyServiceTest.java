@@ -0,0 +1,91 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyServiceTest {
+
+    private static final String TEST_PROXY_URL_TEMPLATE = "https://localhost/proxy/unsecured/%s/?url=%s";
+
+    private static ProxyService proxyService(String imageProxyUrlTemplate, long rewrittenUrlCacheSize) {
+        ProxyService proxyService = new ProxyService();
+        proxyService.imageProxyUrlTemplate = imageProxyUrlTemplate;
+        proxyService.rewrittenUrlCacheSize = rewrittenUrlCacheSize;
+        proxyService.postConstruct();
+        return proxyService;
+    }
+
+    private static final List<String> TEST_IMAGE_URLS = List.of(
+            "https://example.com/img/a.png",
+            "/img/a.png",
+            "/img/a b.png",
+            "img/a.png",
+            "data:image/png;base64,AAAA"
+    );
+
+    private static final List<String> TEST_BASE_URLS = List.of(
+            "https://example.com/posts/1",
+            "https://example.org/posts/1",
+            "not a url"
+    );
+
+    @Test
+    void test_rewriteImageUrl_memoMatchesUncached() {
+        for (String template : List.of(TEST_PROXY_URL_TEMPLATE, "https://localhost/proxy/%s?url=%s&v=100%%")) {
+            ProxyService memoized = proxyService(template, 1_000L);
+            ProxyService uncached = proxyService(template, 0L);
+            // (twice over, so that the second pass is served from the memo)
+            for (int pass = 0; pass < 2; pass++) {
+                for (String imgUrl : TEST_IMAGE_URLS) {
+                    for (String baseUrl : TEST_BASE_URLS) {
+                        for (int width : new int[] { 0, 320, 640 }) {
+                            assertEquals(uncached.rewriteImageUrl(imgUrl, baseUrl, width), memoized.rewriteImageUrl(imgUrl, baseUrl, width),
+                                    "imgUrl=" + imgUrl + ", baseUrl=" + baseUrl + ", width=" + width);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_rewriteImageUrl_rootRelative() {
+        ProxyService proxyService = proxyService(TEST_PROXY_URL_TEMPLATE, 1_000L);
+
+        String fromCom = proxyService.rewriteImageUrl("/img/a.png", "https://example.com/posts/1", 0);
+        String fromOrg = proxyService.rewriteImageUrl("/img/a.png", "https://example.org/posts/1", 0);
+
+        // the same root-relative URL resolves against each base URL
+        assertTrue(fromCom.contains(encode("https://example.com/img/a.png", UTF_8)));
+        assertTrue(fromOrg.contains(encode("https://example.org/img/a.png", UTF_8)));
+        // (absolute URLs don't depend on the base URL)
+        assertEquals(proxyService.rewriteImageUrl("https://example.com/img/a.png", "https://example.com/posts/1", 0),
+                proxyService.rewriteImageUrl("https://example.com/img/a.png", "https://example.org/posts/1", 0));
+    }
+
+    @Test
+    void test_rewriteImageUrl_width() {
+        ProxyService proxyService = proxyService(TEST_PROXY_URL_TEMPLATE, 1_000L);
+
+        String original = proxyService.rewriteImageUrl("https://example.com/img/a.png", null, 0);
+
+        assertFalse(original.contains("&w="));
+        assertEquals(original + "&w=320", proxyService.rewriteImageUrl("https://example.com/img/a.png", null, 320));
+        assertEquals(original + "&w=640", proxyService.rewriteImageUrl("https://example.com/img/a.png", null, 640));
+        assertEquals(original, proxyService.rewriteImageUrl("https://example.com/img/a.png", null, 0));
+    }
+
+    @Test
+    void test_rewriteImageUrl_notAnImageUrl() {
+        ProxyService proxyService = proxyService(TEST_PROXY_URL_TEMPLATE, 1_000L);
+
+        assertEquals("", proxyService.rewriteImageUrl(null, "https://example.com/posts/1", 0));
+        assertEquals("", proxyService.rewriteImageUrl("/img/a.png", null, 0));
+        assertEquals("", proxyService.rewriteImageUrl("data:image/png;base64,AAAA", null, 0));
+    }
+}
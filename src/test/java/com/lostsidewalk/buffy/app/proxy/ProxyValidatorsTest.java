@@ -0,0 +1,39 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static java.lang.System.currentTimeMillis;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProxyValidatorsTest {
+
+    @Test
+    void test_isStale() {
+        assertTrue(ProxyValidators.NONE.isStale());
+        assertTrue(ProxyValidators.from(null, null, currentTimeMillis() - 1L).isStale());
+        assertFalse(ProxyValidators.from(null, null, currentTimeMillis() + 60_000L).isStale());
+    }
+
+    @Test
+    void test_refresh() {
+        long expiresAt = currentTimeMillis() + 60_000L;
+        ProxyValidators stale = ProxyValidators.from("\"testETag\"", "Wed, 21 Oct 2015 07:28:00 GMT", 0L);
+
+        // a 304 may leave out validators that haven't changed
+        ProxyValidators refreshed = stale.refresh(ProxyValidators.from(null, null, expiresAt));
+
+        assertEquals(ProxyValidators.from("\"testETag\"", "Wed, 21 Oct 2015 07:28:00 GMT", expiresAt), refreshed);
+        assertFalse(refreshed.isStale());
+    }
+
+    @Test
+    void test_refresh_newValidators() {
+        long expiresAt = currentTimeMillis() + 60_000L;
+        ProxyValidators stale = ProxyValidators.from("\"testETag\"", "Wed, 21 Oct 2015 07:28:00 GMT", 0L);
+
+        ProxyValidators refreshed = stale.refresh(ProxyValidators.from("\"testETag2\"", null, expiresAt));
+
+        assertEquals("\"testETag2\"", refreshed.getETag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", refreshed.getLastModified());
+    }
+}
@@ -0,0 +1,115 @@
+package com.lostsidewalk.buffy.app.proxy;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.app.audit.ErrorLogService;
+import com.lostsidewalk.buffy.post.ContentObject;
+import com.lostsidewalk.buffy.post.StagingPost;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.lostsidewalk.buffy.app.proxy.PostSanitizerServiceTest.stagingPost;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SecuredPostServiceTest {
+
+    private static final String TEST_SECURED_VERSION = "3-testVersion";
+
+    private PostSanitizerService postSanitizerService;
+
+    private SecuredPostDao securedPostDao;
+
+    private SecuredPostService securedPostService;
+
+    @BeforeEach
+    void test_setup() {
+        postSanitizerService = mock(PostSanitizerService.class);
+        when(postSanitizerService.getSecuredVersion()).thenReturn(TEST_SECURED_VERSION);
+        when(postSanitizerService.secureStagingPostsForStorage(anyList())).thenReturn(Map.of());
+        securedPostDao = mock(SecuredPostDao.class);
+        securedPostService = new SecuredPostService();
+        securedPostService.errorLogService = mock(ErrorLogService.class);
+        securedPostService.postSanitizerService = postSanitizerService;
+        securedPostService.securedPostDao = securedPostDao;
+        securedPostService.pendingImageTtlSecs = 60L;
+        securedPostService.postConstruct();
+    }
+
+    private static SecuredPostContent storedContent(String html) {
+        StagingPost stagingPost = stagingPost(0L, html);
+        return SecuredPostContent.from(stagingPost);
+    }
+
+    @Test
+    void test_secureStagingPosts_storedAndComputed() throws Exception {
+        StagingPost stored = stagingPost(1L, "<p>raw 1</p>");
+        StagingPost computed = stagingPost(2L, "<p>raw 2</p>");
+        when(securedPostDao.findByIds(List.of(1L, 2L), TEST_SECURED_VERSION)).thenReturn(Map.of(1L, storedContent("<p>secured 1</p>")));
+
+        securedPostService.secureStagingPosts(List.of(stored, computed));
+
+        // the stored (current) copy is applied as is; only the other post is secured, and stored at the current version
+        assertEquals("<p>secured 1</p>", stored.getPostDesc().getValue());
+        verify(postSanitizerService).secureStagingPostsForStorage(List.of(computed));
+        verify(securedPostDao).updateSecuredPosts(Map.of(2L, SecuredPostContent.from(computed)), TEST_SECURED_VERSION);
+    }
+
+    @Test
+    void test_secureStagingPosts_allStored() throws Exception {
+        StagingPost stored = stagingPost(1L, "<p>raw 1</p>");
+        when(securedPostDao.findByIds(List.of(1L), TEST_SECURED_VERSION)).thenReturn(Map.of(1L, storedContent("<p>secured 1</p>")));
+
+        securedPostService.secureStagingPosts(List.of(stored));
+
+        verify(postSanitizerService, never()).secureStagingPostsForStorage(anyList());
+        verify(securedPostDao, never()).updateSecuredPosts(anyMap(), anyString());
+    }
+
+    @Test
+    void test_secureStagingPosts_findFails() throws Exception {
+        StagingPost stagingPost = stagingPost(1L, "<p>raw 1</p>");
+        when(securedPostDao.findByIds(anyList(), anyString())).thenThrow(new DataAccessException("testClass", "findByIds", "testException"));
+
+        securedPostService.secureStagingPosts(List.of(stagingPost));
+
+        // (secured anyway)
+        verify(postSanitizerService).secureStagingPostsForStorage(List.of(stagingPost));
+        verify(securedPostDao).updateSecuredPosts(anyMap(), eq(TEST_SECURED_VERSION));
+    }
+
+    @Test
+    void test_pendingImages_resecured() throws Exception {
+        StagingPost stagingPost = stagingPost(1L, "<img src=\"https://example.com/a.png\">");
+        when(securedPostDao.findByIds(anyList(), anyString())).thenReturn(Map.of());
+        when(postSanitizerService.secureStagingPostsForStorage(anyList())).thenReturn(Map.of(1L, Set.of("https://example.com/a.png")));
+        securedPostService.secureStagingPosts(List.of(stagingPost));
+
+        securedPostService.clearResecuredPosts();
+        verify(securedPostDao, never()).clearSecuredVersions(anyList());
+
+        securedPostService.handleImagePrefetchedEvent(ImagePrefetchedEvent.from("https://Example.com/a.png#top"));
+        securedPostService.clearResecuredPosts();
+        securedPostService.clearResecuredPosts();
+
+        verify(securedPostDao, times(1)).clearSecuredVersions(List.of(1L));
+    }
+
+    @Test
+    void test_securedPostContent_applyTo() {
+        StagingPost stagingPost = stagingPost(1L, "<p>raw</p>");
+        SecuredPostContent content = storedContent("<p>secured</p>");
+        ContentObject postTitle = new ContentObject();
+        postTitle.setType("text");
+        postTitle.setValue("testPostTitle");
+        content.setPostTitle(postTitle);
+
+        content.applyTo(stagingPost);
+
+        assertEquals(content, SecuredPostContent.from(stagingPost));
+    }
+}
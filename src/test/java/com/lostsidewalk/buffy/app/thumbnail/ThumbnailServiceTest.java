@@ -0,0 +1,150 @@
+package com.lostsidewalk.buffy.app.thumbnail;
+
+import com.lostsidewalk.buffy.DataAccessException;
+import com.lostsidewalk.buffy.app.audit.ErrorLogService;
+import com.lostsidewalk.buffy.model.RenderedThumbnail;
+import com.lostsidewalk.buffy.model.RenderedThumbnailDao;
+import com.lostsidewalk.buffy.queue.QueueDefinition;
+import com.lostsidewalk.buffy.thumbnail.ThumbnailDao;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.codec.binary.Base64.encodeBase64String;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ThumbnailServiceTest {
+
+    private static final byte[] TEST_IMAGE = "testImage".getBytes(UTF_8);
+
+    private RenderedThumbnailDao renderedThumbnailDao;
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private ThumbnailService thumbnailService;
+
+    private final CountDownLatch rendering = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void test_setup() throws Exception {
+        renderedThumbnailDao = mock(RenderedThumbnailDao.class);
+        applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        thumbnailService = new ThumbnailService();
+        thumbnailService.errorLogService = mock(ErrorLogService.class);
+        thumbnailService.renderedThumbnailDao = renderedThumbnailDao;
+        thumbnailService.applicationEventPublisher = applicationEventPublisher;
+        thumbnailService.thumbnailDao = mock(ThumbnailDao.class);
+        when(thumbnailService.thumbnailDao.findAll()).thenReturn(List.of());
+        thumbnailService.renderThreads = 1;
+        thumbnailService.renderQueueSize = 1;
+        thumbnailService.memoryCacheMaxBytes = 1_048_576L;
+        thumbnailService.memoryCacheTtlSecs = 60L;
+        thumbnailService.lookupThreads = 2;
+        thumbnailService.postConstruct();
+    }
+
+    @AfterEach
+    void test_teardown() {
+        release.countDown();
+        thumbnailService.preDestroy();
+    }
+
+    private static QueueDefinition queueDefinition(long id, String username, String transportIdent) {
+        QueueDefinition queueDefinition = QueueDefinition.from(
+                "testQueue" + id,
+                "Test Queue Title",
+                "Test Queue Description",
+                "Test Queue Generator",
+                "testQueueTransportIdent" + id,
+                username,
+                null,
+                "Test Queue Copyright",
+                "en-US",
+                null,
+                false);
+        queueDefinition.setId(id);
+        queueDefinition.setQueueImgTransportIdent(transportIdent);
+        queueDefinition.setQueueImgSrc(encodeBase64String(TEST_IMAGE));
+        return queueDefinition;
+    }
+
+    // renders block until released
+    private void blockRenders() throws Exception {
+        doAnswer(invocation -> {
+            rendering.countDown();
+            release.await();
+            return null;
+        }).when(renderedThumbnailDao).putThumbnailAtTransportIdent(anyString(), any(RenderedThumbnail.class));
+    }
+
+    @Test
+    void test_getThumbnails_batchedAndCached() throws Exception {
+        when(renderedThumbnailDao.findThumbnailByTransportIdent("a")).thenReturn(RenderedThumbnail.from("a", TEST_IMAGE));
+        when(renderedThumbnailDao.findThumbnailByTransportIdent("b")).thenReturn(RenderedThumbnail.from("b", TEST_IMAGE));
+
+        Map<String, RenderedThumbnail> thumbnails = thumbnailService.getThumbnails(List.of("a", "b", "c", "a", " "));
+
+        assertEquals(Set.of("a", "b"), thumbnails.keySet());
+        // (found thumbnails are cached in-process; the missing one is looked up again)
+        assertEquals(2, thumbnailService.getThumbnails(List.of("a", "b", "c")).size());
+        verify(renderedThumbnailDao, times(1)).findThumbnailByTransportIdent("a");
+        verify(renderedThumbnailDao, times(1)).findThumbnailByTransportIdent("b");
+        verify(renderedThumbnailDao, times(2)).findThumbnailByTransportIdent("c");
+    }
+
+    @Test
+    void test_getThumbnails_lookupFails() throws Exception {
+        when(renderedThumbnailDao.findThumbnailByTransportIdent(anyString())).thenThrow(new DataAccessException("testClass", "findThumbnailByTransportIdent", "testException"));
+
+        assertThrows(DataAccessException.class, () -> thumbnailService.getThumbnails(List.of("a", "b")));
+    }
+
+    @Test
+    void test_findOrQueueThumbnail_coalescesWaiters() throws Exception {
+        blockRenders();
+
+        assertNull(thumbnailService.findOrQueueThumbnail(queueDefinition(1L, "me", "testImgTransportIdent")));
+        assertTrue(rendering.await(5, TimeUnit.SECONDS));
+        assertNull(thumbnailService.findOrQueueThumbnail(queueDefinition(2L, "you", "testImgTransportIdent")));
+        assertTrue(thumbnailService.isRenderPending("me"));
+        assertTrue(thumbnailService.isRenderPending("you"));
+        assertFalse(thumbnailService.isRenderPending("someone else"));
+        release.countDown();
+
+        // one render, and an event for each user that asked
+        verify(applicationEventPublisher, timeout(5_000)).publishEvent(ThumbnailRenderedEvent.from("me", 1L, "testImgTransportIdent", TEST_IMAGE));
+        verify(applicationEventPublisher, timeout(5_000)).publishEvent(ThumbnailRenderedEvent.from("you", 2L, "testImgTransportIdent", TEST_IMAGE));
+        verify(renderedThumbnailDao, times(1)).putThumbnailAtTransportIdent(eq("testImgTransportIdent"), any(RenderedThumbnail.class));
+        assertFalse(thumbnailService.isRenderPending("me"));
+        // (now served from the in-process cache)
+        assertNotNull(thumbnailService.findOrQueueThumbnail(queueDefinition(1L, "me", "testImgTransportIdent")));
+    }
+
+    @Test
+    void test_findOrQueueThumbnail_dropsWhenQueueFull() throws Exception {
+        blockRenders();
+
+        thumbnailService.findOrQueueThumbnail(queueDefinition(1L, "me", "running"));
+        assertTrue(rendering.await(5, TimeUnit.SECONDS));
+        thumbnailService.findOrQueueThumbnail(queueDefinition(2L, "me", "queued"));
+        // the render queue is full, so this render is dropped, rather than run on the calling thread
+        assertNull(thumbnailService.findOrQueueThumbnail(queueDefinition(3L, "you", "dropped")));
+
+        assertFalse(thumbnailService.isRenderPending("you"));
+        verify(renderedThumbnailDao, never()).putThumbnailAtTransportIdent(eq("dropped"), any(RenderedThumbnail.class));
+        release.countDown();
+        verify(renderedThumbnailDao, timeout(5_000)).putThumbnailAtTransportIdent(eq("queued"), any(RenderedThumbnail.class));
+    }
+}
@@ -0,0 +1,48 @@
+package com.lostsidewalk.buffy.app.utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static com.lostsidewalk.buffy.app.utils.ThumbnailUtils.getScaledImage;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThumbnailUtilsTest {
+
+    private static byte[] testImage(int width, int height) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", baos);
+        return baos.toByteArray();
+    }
+
+    @Test
+    void test_getScaledImage() throws Exception {
+        byte[] scaled = getScaledImage("testPath", new ByteArrayInputStream(testImage(100, 50)), 40, 1_000_000L, "png");
+
+        assertNotNull(scaled);
+        BufferedImage scaledImage = ImageIO.read(new ByteArrayInputStream(scaled));
+        assertEquals(40, scaledImage.getWidth());
+        assertEquals(20, scaledImage.getHeight());
+    }
+
+    @Test
+    void test_getScaledImage_noWiderThanTarget() throws Exception {
+        assertNull(getScaledImage("testPath", new ByteArrayInputStream(testImage(100, 50)), 100, 1_000_000L, "png"));
+        assertNull(getScaledImage("testPath", new ByteArrayInputStream(testImage(100, 50)), 200, 1_000_000L, "png"));
+    }
+
+    @Test
+    void test_getScaledImage_maxPixels() throws Exception {
+        // (100 x 50 is 5,000 pixels)
+        assertNull(getScaledImage("testPath", new ByteArrayInputStream(testImage(100, 50)), 40, 4_999L, "png"));
+        assertNotNull(getScaledImage("testPath", new ByteArrayInputStream(testImage(100, 50)), 40, 5_000L, "png"));
+    }
+
+    @Test
+    void test_getScaledImage_notAnImage() {
+        assertNull(getScaledImage("testPath", new ByteArrayInputStream(new byte[] { 1, 2, 3 }), 40, 1_000_000L, "png"));
+    }
+}